@@ -6,9 +6,14 @@ import com.cirestechnologies.client.service.SessionManager;
 import com.cirestechnologies.client.util.AnimationUtils;
 import com.cirestechnologies.client.util.SceneManager;
 import com.cirestechnologies.client.util.UIComponents;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.effect.DropShadow;
 import javafx.scene.layout.*;
@@ -20,12 +25,15 @@ import javafx.scene.shape.Circle;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
 import org.kordamp.ikonli.javafx.FontIcon;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Controller for the main Dashboard
@@ -49,6 +57,9 @@ public class DashboardController {
 
     private User currentUser;
 
+    private static final int STATS_RECONNECT_SECONDS = 5;
+    private ApiService.StatsSubscription statsSubscription;
+
     public DashboardController() {
         this.contentArea = new StackPane();
         this.sidebar = createSidebar();
@@ -282,6 +293,43 @@ public class DashboardController {
             }));
     }
 
+    // ========== Live Stats ==========
+    // Keeps the stats stream open while the cards are shown, reconnecting after a delay when it drops, and closes it
+    // once they leave the screen (another page) or on logout
+    private void subscribeToStats(Region cards, Consumer<UserStats> onStats, Consumer<String> onDisconnected) {
+        closeStatsStream();
+        ApiService.StatsSubscription subscription = apiService.subscribeUserStats(
+                sessionManager.getAuthorizationHeader(),
+                stats -> Platform.runLater(() -> onStats.accept(stats)),
+                error -> Platform.runLater(() -> {
+                    onDisconnected.accept(error);
+                    PauseTransition retry = new PauseTransition(Duration.seconds(STATS_RECONNECT_SECONDS));
+                    retry.setOnFinished(e -> {
+                        if (cards.getScene() != null && sessionManager.isAuthenticated()) {
+                            subscribeToStats(cards, onStats, onDisconnected);
+                        }
+                    });
+                    retry.play();
+                }));
+        statsSubscription = subscription;
+        cards.sceneProperty().addListener(new ChangeListener<>() {
+            @Override
+            public void changed(ObservableValue<? extends Scene> obs, Scene oldScene, Scene newScene) {
+                if (newScene == null) {
+                    subscription.close();
+                    cards.sceneProperty().removeListener(this);
+                }
+            }
+        });
+    }
+
+    private void closeStatsStream() {
+        if (statsSubscription != null) {
+            statsSubscription.close();
+            statsSubscription = null;
+        }
+    }
+
     // ========== Dashboard Content ==========
     private void showDashboardContent() {
         contentArea.getChildren().clear();
@@ -319,7 +367,7 @@ public class DashboardController {
         // Admin stats section - Enhanced UI
         VBox adminStatsSection = new VBox(16);
         if (sessionManager.isAdmin()) {
-            // Stats header with refresh button
+            // Stats header with live indicator
             HBox statsHeader = new HBox();
             statsHeader.setAlignment(Pos.CENTER_LEFT);
             statsHeader.setPadding(new Insets(20, 0, 0, 0));
@@ -331,14 +379,15 @@ public class DashboardController {
             Region headerSpacer = new Region();
             HBox.setHgrow(headerSpacer, Priority.ALWAYS);
 
-            Button refreshStatsBtn = new Button("Refresh");
-            refreshStatsBtn.setStyle("-fx-background-color: #334155; -fx-text-fill: white; -fx-background-radius: 6; -fx-padding: 6 12;");
-            FontIcon refreshIcon = new FontIcon("fas-sync-alt");
-            refreshIcon.setIconSize(12);
-            refreshIcon.setIconColor(Color.WHITE);
-            refreshStatsBtn.setGraphic(refreshIcon);
+            Label liveLabel = new Label("Connecting...");
+            liveLabel.setFont(Font.font("System", 12));
+            liveLabel.setTextFill(Color.web("#94A3B8"));
+            FontIcon liveIcon = new FontIcon("fas-circle");
+            liveIcon.setIconSize(8);
+            liveIcon.setIconColor(Color.web("#94A3B8"));
+            liveLabel.setGraphic(liveIcon);
 
-            statsHeader.getChildren().addAll(adminStatsLabel, headerSpacer, refreshStatsBtn);
+            statsHeader.getChildren().addAll(adminStatsLabel, headerSpacer, liveLabel);
 
             // Stats cards container with gradient background
             HBox adminStatsRow = new HBox(16);
@@ -357,51 +406,30 @@ public class DashboardController {
 
             adminStatsRow.getChildren().addAll(totalUsersCard, adminsCard, regularUsersCard, newTodayCard);
 
-            // Progress indicators for each card
-            ProgressIndicator[] spinners = new ProgressIndicator[4];
-            VBox[] cards = {totalUsersCard, adminsCard, regularUsersCard, newTodayCard};
-
-            // Load stats function
-            Runnable loadStats = () -> {
-                // Show loading state
-                for (VBox card : cards) {
-                    updateEnhancedStatCardValue(card, "...");
+            // Stats are pushed by the server as they change: the cards are updated in place, no polling
+            Consumer<UserStats> showStats = stats -> {
+                updateEnhancedStatCardValue(totalUsersCard, String.valueOf(stats.getTotalUsers()));
+                updateEnhancedStatCardValue(adminsCard, String.valueOf(stats.getTotalAdmins()));
+                updateEnhancedStatCardValue(regularUsersCard, String.valueOf(stats.getTotalRegularUsers()));
+                updateEnhancedStatCardValue(newTodayCard, String.valueOf(stats.getNewUsersToday()));
+
+                // Add percentage labels
+                if (stats.getTotalUsers() > 0) {
+                    double adminPercent = (stats.getTotalAdmins() * 100.0) / stats.getTotalUsers();
+                    double userPercent = (stats.getTotalRegularUsers() * 100.0) / stats.getTotalUsers();
+                    updateEnhancedStatCardSubtext(adminsCard, String.format("%.1f%% of total", adminPercent));
+                    updateEnhancedStatCardSubtext(regularUsersCard, String.format("%.1f%% of total", userPercent));
                 }
-
-                apiService.getUserStats(sessionManager.getAuthorizationHeader())
-                    .thenAccept(result -> Platform.runLater(() -> {
-                        if (result.isSuccess()) {
-                            UserStats stats = result.getData();
-                            updateEnhancedStatCardValue(totalUsersCard, String.valueOf(stats.getTotalUsers()));
-                            updateEnhancedStatCardValue(adminsCard, String.valueOf(stats.getTotalAdmins()));
-                            updateEnhancedStatCardValue(regularUsersCard, String.valueOf(stats.getTotalRegularUsers()));
-                            updateEnhancedStatCardValue(newTodayCard, String.valueOf(stats.getNewUsersToday()));
-
-                            // Add percentage labels
-                            if (stats.getTotalUsers() > 0) {
-                                double adminPercent = (stats.getTotalAdmins() * 100.0) / stats.getTotalUsers();
-                                double userPercent = (stats.getTotalRegularUsers() * 100.0) / stats.getTotalUsers();
-                                updateEnhancedStatCardSubtext(adminsCard, String.format("%.1f%% of total", adminPercent));
-                                updateEnhancedStatCardSubtext(regularUsersCard, String.format("%.1f%% of total", userPercent));
-                            }
-                        }
-                    }));
+                liveLabel.setText("Live");
+                liveIcon.setIconColor(Color.web("#10B981"));
             };
 
-            refreshStatsBtn.setOnAction(e -> {
-                refreshStatsBtn.setDisable(true);
-                loadStats.run();
-                // Re-enable after a short delay
-                new Thread(() -> {
-                    try { Thread.sleep(1000); } catch (InterruptedException ignored) {}
-                    Platform.runLater(() -> refreshStatsBtn.setDisable(false));
-                }).start();
-            });
-
             adminStatsSection.getChildren().addAll(statsHeader, adminStatsRow);
 
-            // Initial load
-            loadStats.run();
+            subscribeToStats(adminStatsRow, showStats, message -> {
+                liveLabel.setText("Reconnecting...");
+                liveIcon.setIconColor(Color.web("#F59E0B"));
+            });
         }
 
         // Quick actions
@@ -1278,7 +1306,7 @@ public class DashboardController {
         headerLabel.setFont(Font.font("System", FontWeight.BOLD, 28));
         headerLabel.setTextFill(Color.WHITE);
 
-        Label subLabel = new Label("Search and view user profiles by username");
+        Label subLabel = new Label("Search and view user profiles by username, or pick a suggested username or email");
         subLabel.setFont(Font.font("System", 14));
         subLabel.setTextFill(Color.web("#94A3B8"));
 
@@ -1290,7 +1318,7 @@ public class DashboardController {
         searchCard.setMaxWidth(600);
 
         TextField searchField = new TextField();
-        searchField.setPromptText("Enter username...");
+        searchField.setPromptText("Enter username or email...");
         searchField.setPrefHeight(48);
         searchField.setStyle("-fx-background-color: #0F172A; -fx-background-radius: 10; -fx-text-fill: white; " +
                 "-fx-prompt-text-fill: #64748B; -fx-padding: 0 16;");
@@ -1317,40 +1345,81 @@ public class DashboardController {
         ProgressIndicator progress = new ProgressIndicator();
         progress.setMaxSize(20, 20);
 
-        searchButton.setOnAction(e -> {
-            String username = searchField.getText().trim();
-            if (!username.isEmpty()) {
-                searchButton.setDisable(true);
-                searchButton.setText("...");
-                searchButton.setGraphic(progress);
-                resultArea.setVisible(false);
-                resultArea.setManaged(false);
+        // Shows the result of a lookup, by username or by a picked suggestion's id
+        Consumer<CompletableFuture<ApiService.ApiResult<User>>> lookup = request -> {
+            searchButton.setDisable(true);
+            searchButton.setText("...");
+            searchButton.setGraphic(progress);
+            resultArea.setVisible(false);
+            resultArea.setManaged(false);
 
-                apiService.getUserProfile(sessionManager.getAuthorizationHeader(), username)
-                    .thenAccept(result -> Platform.runLater(() -> {
-                        searchButton.setDisable(false);
-                        searchButton.setText("Search");
-                        searchButton.setGraphic(searchIcon);
+            request.thenAccept(result -> Platform.runLater(() -> {
+                searchButton.setDisable(false);
+                searchButton.setText("Search");
+                searchButton.setGraphic(searchIcon);
 
-                        resultArea.getChildren().clear();
+                resultArea.getChildren().clear();
 
-                        if (result.isSuccess()) {
-                            User user = result.getData();
-                            resultArea.getChildren().add(createUserResultCard(user));
-                        } else {
-                            Label errorLabel = new Label("✗ " + result.getError());
-                            errorLabel.setFont(Font.font("System", 14));
-                            errorLabel.setTextFill(Color.web("#EF4444"));
-                            resultArea.getChildren().add(errorLabel);
-                        }
+                if (result.isSuccess()) {
+                    User user = result.getData();
+                    resultArea.getChildren().add(createUserResultCard(user));
+                } else {
+                    Label errorLabel = new Label("✗ " + result.getError());
+                    errorLabel.setFont(Font.font("System", 14));
+                    errorLabel.setTextFill(Color.web("#EF4444"));
+                    resultArea.getChildren().add(errorLabel);
+                }
 
-                        resultArea.setVisible(true);
-                        resultArea.setManaged(true);
-                        AnimationUtils.fadeIn(resultArea, 300);
-                    }));
+                resultArea.setVisible(true);
+                resultArea.setManaged(true);
+                AnimationUtils.fadeIn(resultArea, 300);
+            }));
+        };
+
+        searchButton.setOnAction(e -> {
+            String username = searchField.getText().trim();
+            if (!username.isEmpty()) {
+                lookup.accept(apiService.getUserProfile(sessionManager.getAuthorizationHeader(), username));
             }
         });
 
+        // Autocomplete: usernames and emails starting with the typed text, looked up by id when picked
+        ContextMenu suggestionsMenu = new ContextMenu();
+        boolean[] picking = {false};
+        searchField.textProperty().addListener((obs, oldText, newText) -> {
+            String prefix = newText.trim();
+            if (prefix.isEmpty() || picking[0] || !searchField.isFocused()) {
+                suggestionsMenu.hide();
+                return;
+            }
+            apiService.suggestUsers(sessionManager.getAuthorizationHeader(), prefix)
+                .thenAccept(result -> Platform.runLater(() -> {
+                    // Answers can arrive out of order: only show those for the current text
+                    if (!result.isSuccess() || !prefix.equals(searchField.getText().trim())) {
+                        return;
+                    }
+                    suggestionsMenu.getItems().clear();
+                    for (UserSuggestion suggestion : result.getData()) {
+                        MenuItem item = new MenuItem(suggestion.getValue());
+                        item.setOnAction(event -> {
+                            if ("username".equals(suggestion.getField())) {
+                                picking[0] = true;
+                                searchField.setText(suggestion.getValue());
+                                picking[0] = false;
+                            }
+                            suggestionsMenu.hide();
+                            lookup.accept(apiService.getUserById(sessionManager.getAuthorizationHeader(), suggestion.getId()));
+                        });
+                        suggestionsMenu.getItems().add(item);
+                    }
+                    if (suggestionsMenu.getItems().isEmpty()) {
+                        suggestionsMenu.hide();
+                    } else if (!suggestionsMenu.isShowing()) {
+                        suggestionsMenu.show(searchField, Side.BOTTOM, 0, 4);
+                    }
+                }));
+        });
+
         searchField.setOnAction(e -> searchButton.fire());
 
         lookupContent.getChildren().addAll(headerLabel, subLabel, searchCard, resultArea);
@@ -1465,6 +1534,7 @@ public class DashboardController {
     }
 
     private void handleLogout() {
+        closeStatsStream();
         sessionManager.logout();
         SceneManager.logout();
     }
@@ -1750,10 +1820,13 @@ public class DashboardController {
                     if (result.isSuccess()) {
                         UserListResponse response = result.getData();
                         int totalPages = Math.max(1, response.getTotalPages());
+                        // Capped counts come back inexact, e.g. "10,000+" matches
+                        String total = String.format("%,d", response.getTotalItems()) +
+                                (response.isTotalItemsExact() ? "" : "+");
                         pageLabel.setText("Page " + (response.getCurrentPage() + 1) + " of " + totalPages +
-                                " (" + response.getTotalItems() + " total)");
+                                (response.isTotalItemsExact() ? "" : "+") + " (" + total + " total)");
                         prevButton.setDisable(response.getCurrentPage() == 0);
-                        nextButton.setDisable(response.getCurrentPage() >= response.getTotalPages() - 1);
+                        nextButton.setDisable(!response.isHasNext());
 
                         // Table header with sort callback
                         HBox headerRow = createUserTableHeader(loadUsersRef[0]);
@@ -1873,7 +1946,8 @@ public class DashboardController {
         header.setAlignment(Pos.CENTER_LEFT);
 
         String[] columns = {"Username", "Email", "Name", "Company", "Role", "Status", "Last Login", "Actions"};
-        String[] sortFields = {"username", "email", "firstName", "company", null, "enabled", "lastLogin", null};
+        // Only columns the server has a sort index for (see UserSortField)
+        String[] sortFields = {"username", "email", "firstName", "company", null, null, "lastLogin", null};
         double[] widths = {120, 160, 120, 100, 70, 70, 100, 120};
 
         for (int i = 0; i < columns.length; i++) {
@@ -1938,7 +2012,7 @@ public class DashboardController {
         usernameLabel.setFont(Font.font("System", FontWeight.MEDIUM, 13));
         usernameLabel.setPrefWidth(widths[0]);
         usernameLabel.setStyle("-fx-cursor: hand;");
-        usernameLabel.setOnMouseClicked(e -> showUserDetailsModal(user, reloadCallback));
+        usernameLabel.setOnMouseClicked(e -> openUserDetails(user, reloadCallback));
         usernameLabel.setOnMouseEntered(e -> usernameLabel.setUnderline(true));
         usernameLabel.setOnMouseExited(e -> usernameLabel.setUnderline(false));
 
@@ -1999,7 +2073,7 @@ public class DashboardController {
         editIcon.setIconColor(Color.WHITE);
         editBtn.setGraphic(editIcon);
         editBtn.setTooltip(new Tooltip("Edit User"));
-        editBtn.setOnAction(e -> showUserDetailsModal(user, reloadCallback));
+        editBtn.setOnAction(e -> openUserDetails(user, reloadCallback));
 
         // Toggle status button
         Button statusBtn = new Button();
@@ -2078,6 +2152,13 @@ public class DashboardController {
         });
     }
 
+    // Table rows only carry the listed columns, so the dialog works on the full user
+    private void openUserDetails(User user, Runnable reloadCallback) {
+        apiService.getUserById(sessionManager.getAuthorizationHeader(), user.getId())
+            .thenAccept(result -> Platform.runLater(() ->
+                showUserDetailsModal(result.isSuccess() ? result.getData() : user, reloadCallback)));
+    }
+
     private void showUserDetailsModal(User user, Runnable reloadCallback) {
         // Create modal overlay
         StackPane overlay = new StackPane();
@@ -9,8 +9,10 @@ public class UserListResponse {
     private List<User> users;
     private int currentPage;
     private long totalItems;
+    private boolean totalItemsExact = true;
     private int totalPages;
     private int size;
+    private boolean hasNext;
 
     public UserListResponse() {
     }
@@ -39,6 +41,14 @@ public class UserListResponse {
         this.totalItems = totalItems;
     }
 
+    public boolean isTotalItemsExact() {
+        return totalItemsExact;
+    }
+
+    public void setTotalItemsExact(boolean totalItemsExact) {
+        this.totalItemsExact = totalItemsExact;
+    }
+
     public int getTotalPages() {
         return totalPages;
     }
@@ -54,4 +64,12 @@ public class UserListResponse {
     public void setSize(int size) {
         this.size = size;
     }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
 }
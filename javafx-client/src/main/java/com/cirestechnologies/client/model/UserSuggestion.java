@@ -0,0 +1,37 @@
+package com.cirestechnologies.client.model;
+
+/**
+ * A user whose username or email starts with the typed prefix, from the suggest endpoint
+ */
+public class UserSuggestion {
+    private Long id;
+    private String field;
+    private String value;
+
+    public UserSuggestion() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public void setField(String field) {
+        this.field = field;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+}
@@ -3,12 +3,18 @@ package com.cirestechnologies.client.service;
 import com.cirestechnologies.client.model.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import okhttp3.*;
+import okio.BufferedSource;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service class for making API calls to the JWT User Management backend
@@ -17,10 +23,15 @@ public class ApiService {
 
     private static final String BASE_URL = "http://localhost:9090/api";
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final int CONDITIONAL_CACHE_SIZE = 100;
 
     private final OkHttpClient client;
+    private final OkHttpClient streamClient;
     private final Gson gson;
 
+    // Last ETag and body per polled URL: unchanged resources come back as empty 304s and are served from here
+    private final Map<String, CachedBody> conditionalCache = new ConcurrentHashMap<>();
+
     private static ApiService instance;
 
     private ApiService() {
@@ -29,6 +40,10 @@ public class ApiService {
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .build();
+        // Long-lived streams: the server sends a heartbeat every 15 seconds, so a longer silence is a dead connection
+        this.streamClient = client.newBuilder()
+                .readTimeout(45, TimeUnit.SECONDS)
+                .build();
 
         this.gson = new GsonBuilder()
                 .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
@@ -182,23 +197,15 @@ public class ApiService {
             try {
                 System.out.println("Getting profile with Authorization: " + token);
 
-                Request request = new Request.Builder()
-                        .url(BASE_URL + "/users/me")
-                        .header("Authorization", token)
-                        .get()
-                        .build();
+                ConditionalResponse response = getConditional(BASE_URL + "/users/me", token);
+                System.out.println("Profile response code: " + response.code);
+                System.out.println("Profile response: " + response.body);
 
-                try (Response response = client.newCall(request).execute()) {
-                    String responseBody = response.body() != null ? response.body().string() : "";
-                    System.out.println("Profile response code: " + response.code());
-                    System.out.println("Profile response: " + responseBody);
-
-                    if (response.isSuccessful()) {
-                        User user = gson.fromJson(responseBody, User.class);
-                        return ApiResult.success(user);
-                    } else {
-                        return ApiResult.error("Failed to get profile: " + getErrorMessage(responseBody, response.code()));
-                    }
+                if (response.isSuccessful()) {
+                    User user = gson.fromJson(response.body, User.class);
+                    return ApiResult.success(user);
+                } else {
+                    return ApiResult.error("Failed to get profile: " + getErrorMessage(response.body, response.code));
                 }
             } catch (IOException e) {
                 return ApiResult.error("Connection error: " + e.getMessage());
@@ -234,6 +241,36 @@ public class ApiService {
         });
     }
 
+    /**
+     * GET with {@code If-None-Match} when the URL was fetched before with the same token; a 304 is answered with the
+     * cached body.
+     */
+    private ConditionalResponse getConditional(String url, String token) throws IOException {
+        CachedBody cached = conditionalCache.get(url);
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("Authorization", token)
+                .get();
+        if (cached != null && cached.token.equals(token)) {
+            builder.header("If-None-Match", cached.etag);
+        }
+
+        try (Response response = client.newCall(builder.build()).execute()) {
+            if (response.code() == 304 && cached != null) {
+                return new ConditionalResponse(200, cached.body);
+            }
+            String responseBody = response.body() != null ? response.body().string() : "";
+            String etag = response.header("ETag");
+            if (response.isSuccessful() && etag != null) {
+                if (conditionalCache.size() >= CONDITIONAL_CACHE_SIZE) {
+                    conditionalCache.clear();
+                }
+                conditionalCache.put(url, new CachedBody(token, etag, responseBody));
+            }
+            return new ConditionalResponse(response.code(), responseBody);
+        }
+    }
+
     private String getErrorMessage(String responseBody, int code) {
         try {
             ErrorResponse error = gson.fromJson(responseBody, ErrorResponse.class);
@@ -259,6 +296,36 @@ public class ApiService {
         }
     }
 
+    private static class CachedBody {
+        private final String token;
+        private final String etag;
+        private final String body;
+
+        CachedBody(String token, String etag, String body) {
+            this.token = token;
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    private static class ConditionalResponse {
+        private final int code;
+        private final String body;
+
+        ConditionalResponse(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+    }
+
+    private static class SuggestionResponse {
+        private List<UserSuggestion> suggestions;
+    }
+
     private static class ErrorResponse {
         private String message;
         private int status;
@@ -360,17 +427,22 @@ public class ApiService {
         });
     }
 
+    // The columns of the admin user table; the details dialog loads the full user by id
+    private static final String USER_TABLE_FIELDS = "id,username,email,firstName,lastName,company,role,enabled,lastLogin";
+
     /**
-     * Get all users (Admin only) with pagination and search
+     * Get all users (Admin only) with pagination and search.
+     * Searches ask for a capped count, which stays cheap when a term matches most of the table.
      */
     public CompletableFuture<ApiResult<UserListResponse>> getAllUsers(String token, int page, int size, String sortBy, String sortDir, String search) {
         return CompletableFuture.supplyAsync(() -> {
             try {
+                boolean searching = search != null && !search.trim().isEmpty();
                 StringBuilder urlBuilder = new StringBuilder();
-                urlBuilder.append(String.format("%s/users?page=%d&size=%d&sortBy=%s&sortDir=%s",
-                        BASE_URL, page, size, sortBy, sortDir));
+                urlBuilder.append(String.format("%s/users?page=%d&size=%d&sortBy=%s&sortDir=%s&count=%s&fields=%s",
+                        BASE_URL, page, size, sortBy, sortDir, searching ? "capped" : "exact", USER_TABLE_FIELDS));
 
-                if (search != null && !search.trim().isEmpty()) {
+                if (searching) {
                     try {
                         urlBuilder.append("&search=").append(java.net.URLEncoder.encode(search.trim(), "UTF-8"));
                     } catch (Exception e) {
@@ -378,8 +450,30 @@ public class ApiService {
                     }
                 }
 
+                ConditionalResponse response = getConditional(urlBuilder.toString(), token);
+                if (response.isSuccessful()) {
+                    UserListResponse userList = gson.fromJson(response.body, UserListResponse.class);
+                    return ApiResult.success(userList);
+                } else {
+                    return ApiResult.error("Failed to get users: " + getErrorMessage(response.body, response.code));
+                }
+            } catch (IOException e) {
+                return ApiResult.error("Connection error: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Users whose username or email starts with the prefix, for autocompletion (Admin only)
+     */
+    public CompletableFuture<ApiResult<List<UserSuggestion>>> suggestUsers(String token, String prefix) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpUrl url = HttpUrl.get(BASE_URL + "/users/suggest").newBuilder()
+                        .addQueryParameter("prefix", prefix)
+                        .build();
                 Request request = new Request.Builder()
-                        .url(urlBuilder.toString())
+                        .url(url)
                         .header("Authorization", token)
                         .get()
                         .build();
@@ -388,10 +482,10 @@ public class ApiService {
                     String responseBody = response.body() != null ? response.body().string() : "";
 
                     if (response.isSuccessful()) {
-                        UserListResponse userList = gson.fromJson(responseBody, UserListResponse.class);
-                        return ApiResult.success(userList);
+                        SuggestionResponse suggestions = gson.fromJson(responseBody, SuggestionResponse.class);
+                        return ApiResult.success(suggestions.suggestions);
                     } else {
-                        return ApiResult.error("Failed to get users: " + getErrorMessage(responseBody, response.code()));
+                        return ApiResult.error("Failed to get suggestions: " + getErrorMessage(responseBody, response.code()));
                     }
                 }
             } catch (IOException e) {
@@ -568,6 +662,90 @@ public class ApiService {
         });
     }
 
+    /**
+     * Subscribe to the live user stats (Admin only). The server sends every figure first, then the ones that changed,
+     * at most once a second; {@code onStats} gets the merged stats after each event and {@code onError} is called once
+     * if the stream can't be opened or drops. Both run on an OkHttp thread. Close the subscription to stop.
+     */
+    public StatsSubscription subscribeUserStats(String token, Consumer<UserStats> onStats, Consumer<String> onError) {
+        Request request = new Request.Builder()
+                .url(BASE_URL + "/stats/users/stream")
+                .header("Authorization", token)
+                .header("Accept", "text/event-stream")
+                .get()
+                .build();
+        Call call = streamClient.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (!call.isCanceled()) {
+                    onError.accept("Connection error: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        String responseBody = response.body() != null ? response.body().string() : "";
+                        onError.accept("Failed to get stats: " + getErrorMessage(responseBody, response.code()));
+                        return;
+                    }
+                    readStatsEvents(response.body().source(), onStats);
+                    if (!call.isCanceled()) {
+                        onError.accept("Stats stream closed by the server");
+                    }
+                } catch (IOException e) {
+                    if (!call.isCanceled()) {
+                        onError.accept("Connection error: " + e.getMessage());
+                    }
+                }
+            }
+        });
+        return new StatsSubscription(call);
+    }
+
+    // Server-Sent Events: "field:value" lines, an empty line ending each event; comments (heartbeats) start with ':'
+    private void readStatsEvents(BufferedSource source, Consumer<UserStats> onStats) throws IOException {
+        JsonObject merged = new JsonObject();
+        String event = null;
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (line.isEmpty()) {
+                if ("stats".equals(event) && data.length() > 0) {
+                    gson.fromJson(data.toString(), JsonObject.class).entrySet()
+                            .forEach(field -> merged.add(field.getKey(), field.getValue()));
+                    onStats.accept(gson.fromJson(merged, UserStats.class));
+                }
+                event = null;
+                data.setLength(0);
+            } else if (line.startsWith("event:")) {
+                event = line.substring(6).trim();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring(5).trim());
+            }
+        }
+    }
+
+    /**
+     * An open stats stream, see {@link #subscribeUserStats}.
+     */
+    public static class StatsSubscription {
+        private final Call call;
+
+        private StatsSubscription(Call call) {
+            this.call = call;
+        }
+
+        public void close() {
+            call.cancel();
+        }
+    }
+
     /**
      * Inner class to hold API result (success or error)
      */
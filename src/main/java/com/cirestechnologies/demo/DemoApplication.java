@@ -1,8 +1,10 @@
 package com.cirestechnologies.demo;
 
+import com.cirestechnologies.demo.config.SeedRunner;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.info.Info;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 @SpringBootApplication
@@ -10,7 +12,16 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class DemoApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(DemoApplication.class, args);
+        SpringApplication application = new SpringApplication(DemoApplication.class);
+
+        // Seeder mode: no web server, only the beans the runners need, run the seeder and exit
+        if (SeedRunner.isSeedMode(args)) {
+            application.setWebApplicationType(WebApplicationType.NONE);
+            application.setLazyInitialization(true);
+            System.exit(SpringApplication.exit(application.run(args)));
+        }
+
+        application.run(args);
     }
 
 }
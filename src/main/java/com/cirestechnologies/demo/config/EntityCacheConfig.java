@@ -0,0 +1,78 @@
+package com.cirestechnologies.demo.config;
+
+import com.cirestechnologies.demo.model.Role;
+import com.cirestechnologies.demo.model.User;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hibernate's second-level cache, on JCache with Caffeine behind it. Regions:
+ * <ul>
+ *     <li>{@link User#CACHE_REGION}: users by id, read-write: an update through Hibernate replaces the entry once its
+ *     transaction has committed, a delete evicts it</li>
+ *     <li>{@link User#NATURAL_ID_CACHE_REGION}: user ids by username, for {@code UserRepository#findByUsername}</li>
+ *     <li>{@link Role#CACHE_REGION}: roles, read-only</li>
+ * </ul>
+ * The user regions hold up to {@code cirestechnologies.demo.entity-cache.max-users} entries each and drop them
+ * {@code cirestechnologies.demo.entity-cache.expire-after-write-ms} after they were written, which bounds how long a
+ * change made around Hibernate (SQL, the seeder) goes unseen. Entries are kept by reference, Hibernate already caches
+ * disassembled copies. Statistics are on for {@code EntityCacheStatistics}.
+ */
+@Configuration
+public class EntityCacheConfig {
+    private static final long MAX_ROLES = 100;
+
+    @Value("${cirestechnologies.demo.entity-cache.max-users:100000}")
+    private long maxUsers = 100000;
+
+    @Value("${cirestechnologies.demo.entity-cache.expire-after-write-ms:600000}")
+    private long expireAfterWriteMs = 600000;
+
+    // A cache manager of its own: several application contexts of one JVM (tests) must not share regions
+    @Bean
+    public CacheManager entityCacheManager() {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("entity-cache-" + UUID.randomUUID()), getClass().getClassLoader());
+        cacheManager.createCache(User.CACHE_REGION, region(maxUsers, expireAfterWriteMs));
+        cacheManager.createCache(User.NATURAL_ID_CACHE_REGION, region(maxUsers, expireAfterWriteMs));
+        cacheManager.createCache(Role.CACHE_REGION, region(MAX_ROLES, 0));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheProperties(CacheManager entityCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, JCacheRegionFactory.class.getName());
+            properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+            // Every region is created above, with its bounds
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+            properties.put(AvailableSettings.LOG_SESSION_METRICS, false);
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maximumSize, long expireAfterWriteMs) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        if (expireAfterWriteMs > 0) {
+            configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.MILLISECONDS.toNanos(expireAfterWriteMs)));
+        }
+        configuration.setStoreByValue(false);
+        return configuration;
+    }
+}
@@ -0,0 +1,97 @@
+package com.cirestechnologies.demo.config;
+
+import com.cirestechnologies.demo.service.RecentWriters;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read/write splitting, enabled by listing replica JDBC URLs in {@code cirestechnologies.demo.datasource.replica-urls}
+ * (comma separated). Read-only transactions ({@code @Transactional(readOnly = true)}, Spring Data's repository reads,
+ * read-only {@code TransactionTemplate}s) get their connection from a replica through {@link ReplicaRoutingDataSource};
+ * everything else, including statements outside a transaction, from the primary of {@code spring.datasource.*}.
+ * <p>
+ * The data source is a {@link LazyConnectionDataSourceProxy}: transaction managers take their connection before the
+ * transaction is marked read-only, so the real one is only taken from the matching pool at the first statement. With
+ * the entity manager held open for the whole request, Hibernate would keep the connection of the first transaction
+ * for all of them; it releases it after each transaction instead.
+ * <p>
+ * Options:
+ * <ul>
+ *     <li>{@code replica-urls}: JDBC URLs of the replicas, used in turn</li>
+ *     <li>{@code replica-username}, {@code replica-password}: credentials (default: those of the primary)</li>
+ *     <li>{@code replica-pool-size}: connections per replica (default 10)</li>
+ *     <li>{@code read-your-writes-ms}: how long a user's reads stay on the primary after its own write (default 5000),
+ *     see {@link RecentWriters}</li>
+ * </ul>
+ */
+@Configuration
+@ConditionalOnProperty(name = "cirestechnologies.demo.datasource.replica-urls")
+public class ReplicaDataSourceConfig {
+
+    @Value("${cirestechnologies.demo.datasource.replica-urls}")
+    private List<String> replicaUrls;
+
+    @Value("${cirestechnologies.demo.datasource.replica-username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${cirestechnologies.demo.datasource.replica-password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${cirestechnologies.demo.datasource.replica-pool-size:10}")
+    private int replicaPoolSize;
+
+    // Not candidates for injection: the rest of the application only sees the routing data source
+    @Bean(autowireCandidate = false)
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean(autowireCandidate = false)
+    public ReplicaRoutingDataSource routingDataSource(DataSourceProperties properties, RecentWriters recentWriters) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (replicas.size() + 1));
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(replicaUsername);
+            replica.setPassword(replicaPassword);
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource(properties), replicas, recentWriters);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, RecentWriters recentWriters) {
+        return new LazyConnectionDataSourceProxy(routingDataSource(properties, recentWriters));
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+}
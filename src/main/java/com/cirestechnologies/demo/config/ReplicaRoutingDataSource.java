@@ -0,0 +1,57 @@
+package com.cirestechnologies.demo.config;
+
+import com.cirestechnologies.demo.service.RecentWriters;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections for read-only transactions from each replica in turn, and for everything else from the primary. A user
+ * who wrote within the read-your-writes window of {@link RecentWriters} reads from the primary as well. The decision is
+ * made when the connection is taken, so it has to be taken once the transaction has started (see
+ * {@link ReplicaDataSourceConfig}). Closes the replica pools on shutdown; the primary belongs to its own bean.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+    static final String PRIMARY = "primary";
+
+    private final List<DataSource> replicas;
+    private final RecentWriters recentWriters;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, RecentWriters recentWriters) {
+        this.replicas = List.copyOf(replicas);
+        this.recentWriters = recentWriters;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || recentWriters.isCurrentUserRecentWriter()) {
+            return PRIMARY;
+        }
+        return Math.floorMod(next.getAndIncrement(), replicas.size());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.cirestechnologies.demo.config;
+
+import com.cirestechnologies.demo.service.UserSeedService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Bulk seeder run mode, e.g. {@code java -jar app.jar --seed=10000000 --seed-value=42}.
+ * The application starts without the web server, loads the users and exits (see {@link com.cirestechnologies.demo.DemoApplication}).
+ * <p>
+ * Options:
+ * <ul>
+ *     <li>{@code --seed}: number of users to insert</li>
+ *     <li>{@code --seed-value}: random seed, the same value always produces the same users (default 42)</li>
+ *     <li>{@code --seed-admin-ratio}: fraction of admins between 0 and 1 (default 0.05)</li>
+ *     <li>{@code --seed-offset}: index of the first generated user, to append to an already seeded table (default 0)</li>
+ *     <li>{@code --seed-reference-date}: birth and creation dates are relative to this day (default 2025-01-01)</li>
+ *     <li>{@code --seed-batch-size}: rows per COPY/commit (default 100000)</li>
+ * </ul>
+ */
+@Component
+@ConditionalOnProperty(name = "seed")
+@Order // after DataInitializer has created the roles
+public class SeedRunner implements CommandLineRunner {
+    private static final Logger logger = LoggerFactory.getLogger(SeedRunner.class);
+
+    public static final String SEED_ARGUMENT = "--seed=";
+
+    @Autowired
+    private UserSeedService userSeedService;
+
+    @Value("${seed}")
+    private long count;
+
+    @Value("${seed-value:42}")
+    private long seedValue;
+
+    @Value("${seed-admin-ratio:0.05}")
+    private double adminRatio;
+
+    @Value("${seed-offset:0}")
+    private long offset;
+
+    @Value("${seed-reference-date:2025-01-01}")
+    private LocalDate referenceDate;
+
+    @Value("${seed-batch-size:100000}")
+    private int batchSize;
+
+    public static boolean isSeedMode(String... args) {
+        for (String arg : args) {
+            if (arg.startsWith(SEED_ARGUMENT)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        if (adminRatio < 0 || adminRatio > 1) {
+            throw new IllegalArgumentException("--seed-admin-ratio must be between 0 and 1");
+        }
+
+        logger.info("Seeding {} users (seed={}, adminRatio={}, offset={}, referenceDate={})",
+                count, seedValue, adminRatio, offset, referenceDate);
+
+        long inserted = userSeedService.seed(count, offset, seedValue, adminRatio, referenceDate, batchSize);
+
+        logger.info("Seeding complete: {} users inserted", inserted);
+    }
+}
@@ -0,0 +1,83 @@
+package com.cirestechnologies.demo.controller;
+
+import com.cirestechnologies.demo.exception.ExportJobNotFoundException;
+import com.cirestechnologies.demo.export.ExportFormat;
+import com.cirestechnologies.demo.export.ExportJob;
+import com.cirestechnologies.demo.export.ExportJobService;
+import com.cirestechnologies.demo.export.ZeroCopyFileSender;
+import com.cirestechnologies.demo.payload.response.MessageResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Background export jobs - Admin only
+ */
+@RestController
+@RequestMapping("/api/users/export/jobs")
+public class ExportController {
+    @Autowired
+    private ExportJobService exportJobService;
+
+    /**
+     * Start an export, or get the existing one if no user has changed since it was produced
+     */
+    @PostMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> createExportJob(@RequestParam(required = false) String search,
+                                             @RequestParam(defaultValue = "csv") String format) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: Invalid format. Use csv or arrow"));
+        }
+
+        ExportJob job = exportJobService.submit(search, exportFormat);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    /**
+     * Get the status and progress of an export
+     */
+    @GetMapping("/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ExportJob> getExportJob(@PathVariable String id) throws ExportJobNotFoundException {
+        return ResponseEntity.ok(findJob(id));
+    }
+
+    /**
+     * Download a finished export (gzip-compressed CSV, or Arrow stream); supports Range requests to resume interrupted downloads
+     */
+    @RequestMapping(value = "/{id}/download", method = {RequestMethod.GET, RequestMethod.HEAD})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> downloadExport(@PathVariable String id,
+                                            HttpServletRequest request,
+                                            HttpServletResponse response) throws ExportJobNotFoundException, IOException {
+        ExportJob job = findJob(id);
+        if (job.getStatus() != ExportJob.Status.COMPLETED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new MessageResponse("Export is " + job.getStatus().name().toLowerCase() + ", not ready for download"));
+        }
+
+        ExportFormat format = job.getFormat();
+        String filename = format.isCompressed() ? format.getFilename() : format.getFilename() + ".gz";
+        String contentType = format.isCompressed() ? format.getContentType() : "application/gzip";
+        ZeroCopyFileSender.send(job.getFile(), job.getSizeBytes(), "\"" + job.getId() + "\"",
+                filename, contentType, request, response);
+        return null;
+    }
+
+    private ExportJob findJob(String id) {
+        return exportJobService.findJob(id)
+                .orElseThrow(() -> new ExportJobNotFoundException("Export job not found: " + id));
+    }
+}
@@ -1,28 +1,58 @@
 package com.cirestechnologies.demo.controller;
 
 import com.cirestechnologies.demo.exception.AccessDeniedException;
+import com.cirestechnologies.demo.export.ExportFormat;
+import com.cirestechnologies.demo.export.UserExportWriter;
 import com.cirestechnologies.demo.exception.InvalidPasswordException;
 import com.cirestechnologies.demo.exception.UserNotFoundException;
 import com.cirestechnologies.demo.model.ERole;
 import com.cirestechnologies.demo.model.Role;
 import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.model.UserStatsMetric;
 import com.cirestechnologies.demo.payload.request.LoginRequest;
 import com.cirestechnologies.demo.payload.request.PasswordChangeRequest;
 import com.cirestechnologies.demo.payload.request.ProfileUpdateRequest;
 import com.cirestechnologies.demo.payload.request.SignupRequest;
 import com.cirestechnologies.demo.payload.response.JwtResponse;
 import com.cirestechnologies.demo.payload.response.MessageResponse;
+import com.cirestechnologies.demo.payload.response.UserField;
+import com.cirestechnologies.demo.payload.response.UserFieldSet;
+import com.cirestechnologies.demo.payload.response.UserRow;
+import com.cirestechnologies.demo.payload.response.UserView;
+import com.cirestechnologies.demo.repository.CursorPage;
+import com.cirestechnologies.demo.repository.UserCursor;
+import com.cirestechnologies.demo.repository.UserFacetFilter;
+import com.cirestechnologies.demo.repository.UserSortField;
+import com.cirestechnologies.demo.repository.UserVersion;
 import com.cirestechnologies.demo.security.jwt.JwtUtils;
 import com.cirestechnologies.demo.security.services.UserDetailsImpl;
+import com.cirestechnologies.demo.service.ActiveUserService;
+import com.cirestechnologies.demo.service.CountStrategy;
+import com.cirestechnologies.demo.service.EntityCacheStatistics;
+import com.cirestechnologies.demo.service.FacetCounts;
 import com.cirestechnologies.demo.service.FakeDataService;
+import com.cirestechnologies.demo.service.HyperLogLog;
 import com.cirestechnologies.demo.service.RoleService;
+import com.cirestechnologies.demo.service.StatsGranularity;
+import com.cirestechnologies.demo.service.StatsPoint;
+import com.cirestechnologies.demo.service.StreamedUserPage;
+import com.cirestechnologies.demo.service.UserBreakdownDimension;
+import com.cirestechnologies.demo.service.UserBreakdownService;
+import com.cirestechnologies.demo.service.UserCount;
+import com.cirestechnologies.demo.service.UserListPage;
+import com.cirestechnologies.demo.service.UserPageCache;
 import com.cirestechnologies.demo.service.UserService;
+import com.cirestechnologies.demo.service.UserStatsCounters;
+import com.cirestechnologies.demo.service.UserStatsPublisher;
+import com.cirestechnologies.demo.service.UserStatsRollup;
+import com.cirestechnologies.demo.service.UserSuggestion;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -37,16 +67,29 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api")
@@ -69,12 +112,42 @@ public class UserController {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserPageCache userPageCache;
+
+    @Autowired
+    private EntityCacheStatistics entityCacheStatistics;
+
+    @Autowired
+    private UserStatsCounters userStatsCounters;
+
+    @Autowired
+    private UserStatsRollup userStatsRollup;
+
+    @Autowired
+    private UserStatsPublisher userStatsPublisher;
+
+    @Autowired
+    private ActiveUserService activeUserService;
+
+    @Autowired
+    private UserBreakdownService userBreakdownService;
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FACET_VALUES = 1000;
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int IMPORT_CHUNK_SIZE = 500;
+
     @GetMapping("/users/generate/{count}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<FileSystemResource> generateUsers(
+    public ResponseEntity<StreamingResponseBody> generateUsers(
             @PathVariable int count,
             @RequestParam(defaultValue = "0") int adminCount,
-            HttpServletResponse response) throws IOException {
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) Long seed) {
 
         // Validate adminCount
         if (adminCount > count) {
@@ -83,42 +156,46 @@ public class UserController {
         if (adminCount < 0) {
             adminCount = 0;
         }
+        final int admins = adminCount;
+        final long generationSeed = seed != null ? seed : ThreadLocalRandom.current().nextLong();
+
+        // Users are serialized one at a time as they are generated, so memory use does not depend on count
+        ObjectWriter userWriter = objectMapper.writerFor(User.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = outputStream -> {
+            GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(outputStream, STREAM_BUFFER_SIZE) : null;
+            OutputStream out = gzipStream != null ? gzipStream : outputStream;
+
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                generator.writeStartArray();
+
+                // Admin users come first, then regular users; chunks are generated in parallel and written in order
+                fakeDataService.generateUsers(count, admins, generationSeed, FakeDataService.DEFAULT_CHUNK_SIZE, chunk -> {
+                    try {
+                        for (User user : chunk) {
+                            userWriter.writeValue(generator, user);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+                generator.writeEndArray();
+            }
 
-        // Generate user data
-        List<User> users = new ArrayList<>();
-
-        // Generate admin users first
-        for (int i = 0; i < adminCount; i++) {
-            User adminUser = fakeDataService.generateFakeUser();
-            adminUser.setRole(new Role(ERole.ROLE_ADMIN));
-            users.add(adminUser);
-        }
-
-        // Generate regular users
-        for (int i = 0; i < count - adminCount; i++) {
-            User regularUser = fakeDataService.generateFakeUser();
-            regularUser.setRole(new Role(ERole.ROLE_USER));
-            users.add(regularUser);
-        }
-
-        // Convert the list of users to JSON
-        ObjectMapper objectMapper = new ObjectMapper();
-        String json = objectMapper.writeValueAsString(users);
-
-        // Write the JSON to a file
-        Path path = Paths.get("users.json");
-        Files.write(path, json.getBytes());
-
-        // Create a resource from the file
-        FileSystemResource resource = new FileSystemResource(path.toFile());
+            if (gzipStream != null) {
+                gzipStream.finish();
+            }
+        };
 
-        // Set the response headers
-        response.setHeader("Content-Disposition", "attachment; filename=users.json");
+        String filename = gzip ? "users.json.gz" : "users.json";
 
-        // Return the file as a response
         return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
     }
 
     @PostMapping("/users/batch")
@@ -139,21 +216,35 @@ public class UserController {
         User[] users = mapper.readValue(file.getInputStream(), User[].class);
         totalRecords = users.length;
 
-        // Save each user to the database
+        // Save the users in chunks, each in one transaction so its inserts are batched. Duplicates within the file
+        // are rejected like the ones already in the database
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<User> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
         for (User user : users) {
-            if (!userService.existsByUsername(user.getUsername()) && !userService.existsByEmail(user.getEmail())) {
+            if (!usernames.contains(user.getUsername()) && !emails.contains(user.getEmail())
+                    && !userService.existsByUsername(user.getUsername()) && !userService.existsByEmail(user.getEmail())) {
                 user.setPassword(user.getPassword());
 
                 // Replace the role in the user object with the role from the database
                 Role savedRole = user.getRole().getName() == ERole.ROLE_ADMIN ? adminRole : userRole;
                 user.setRole(savedRole);
 
-                userService.save(user);
+                usernames.add(user.getUsername());
+                emails.add(user.getEmail());
+                chunk.add(user);
+                if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                    userService.createAll(chunk);
+                    chunk.clear();
+                }
                 successfulImports++;
             } else {
                 failedImports++;
             }
         }
+        if (!chunk.isEmpty()) {
+            userService.createAll(chunk);
+        }
 
         // Return the response
         Map<String, Integer> response = new HashMap<>();
@@ -180,6 +271,7 @@ public class UserController {
         // Update last login time
         user.setLastLogin(new Date());
         userService.save(user);
+        activeUserService.record(user.getId());
 
         // Generate a JWT token
         String jwt = jwtUtils.generateJwtToken(authentication);
@@ -198,38 +290,107 @@ public class UserController {
                 roles));
     }
 
+    /**
+     * Get My Profile. {@code fields} (e.g. {@code username,email}) limits the response to those fields.
+     */
     @GetMapping("/users/me")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<?> getMyProfile() throws UserNotFoundException {
+    public ResponseEntity<?> getMyProfile(@RequestParam(required = false) String fields,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws UserNotFoundException {
+        UserFieldSet fieldSet;
+        try {
+            fieldSet = fields != null ? UserFieldSet.parse(fields) : null;
+        } catch (IllegalArgumentException e) {
+            return invalidFields();
+        }
+
         // Fetch the user details from the SecurityContext
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
         // Get the UserDetailsImpl object from the authentication object
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
 
-        // Find the user in the database
-        User user = userService.findByUsername(userDetails.getUsername())
-                .orElseThrow(() -> new UserNotFoundException("User not found!"));
-
-        return ResponseEntity.ok(user);
+        return getUserView(userDetails.getUsername(), fieldSet, ifNoneMatch);
     }
 
+    /**
+     * Get a user profile. With {@code fields}, answers with those user fields instead of the account details.
+     */
     @GetMapping("/users/{username}")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<?> getUserProfile(@PathVariable String username) throws UserNotFoundException, AccessDeniedException { Authentication authentication = SecurityContextHolder.getContext().getAuthentication(); UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        // Find the user in the database
-        User user = userService.findByUsername(username)
-                .orElseThrow(() -> new UserNotFoundException("User not found!"));
+    public ResponseEntity<?> getUserProfile(@PathVariable String username,
+                                            @RequestParam(required = false) String fields,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws UserNotFoundException, AccessDeniedException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
 
         // Check if the authenticated user is allowed to access this profile
         if (!userDetails.getUsername().equals(username) && !userDetails.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN"))) {
             throw new AccessDeniedException("You are not allowed to access this profile!");
         }
 
+        if (fields != null) {
+            UserFieldSet fieldSet;
+            try {
+                fieldSet = UserFieldSet.parse(fields);
+            } catch (IllegalArgumentException e) {
+                return invalidFields();
+            }
+            return getUserView(username, fieldSet, ifNoneMatch);
+        }
+
+        ResponseEntity<?> notModified = checkNotModified(ifNoneMatch, () -> userService.findVersionByUsername(username), null);
+        if (notModified != null) {
+            return notModified;
+        }
+
+        // Find the user in the database
+        User user = userService.findByUsername(username)
+                .orElseThrow(() -> new UserNotFoundException("User not found!"));
+
         // Return the user details
         UserDetailsImpl userDetailsToReturn = UserDetailsImpl.build(user);
 
-        return ResponseEntity.ok(userDetailsToReturn);
+        return ResponseEntity.ok()
+                .eTag(UserETags.user(user.getId(), user.getVersion(), null))
+                .body(userDetailsToReturn);
+    }
+
+    // Only a user whose version no longer matches If-None-Match is loaded and serialized
+    private ResponseEntity<?> getUserView(String username, UserFieldSet fieldSet, String ifNoneMatch)
+            throws UserNotFoundException {
+        ResponseEntity<?> notModified = checkNotModified(ifNoneMatch, () -> userService.findVersionByUsername(username), fieldSet);
+        if (notModified != null) {
+            return notModified;
+        }
+
+        if (fieldSet != null) {
+            UserRow user = userService.findRowByUsername(username, fieldSet)
+                    .orElseThrow(() -> new UserNotFoundException("User not found!"));
+            return ResponseEntity.ok()
+                    .eTag(UserETags.user(user.id(), (Long) user.get(UserField.VERSION), fieldSet))
+                    .body(user);
+        }
+        UserView user = userService.findViewByUsername(username)
+                .orElseThrow(() -> new UserNotFoundException("User not found!"));
+        return ResponseEntity.ok()
+                .eTag(UserETags.user(user.id(), user.version(), null))
+                .body(user);
+    }
+
+    // A 304 if If-None-Match lists the user's current ETag, or null; the version is only looked up for conditional requests
+    private static ResponseEntity<?> checkNotModified(String ifNoneMatch, Supplier<Optional<UserVersion>> version,
+                                                      UserFieldSet fieldSet) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        return version.get()
+                .map(current -> UserETags.user(current.id(), current.version(), fieldSet))
+                .filter(etag -> UserETags.matches(ifNoneMatch, etag))
+                .map(UserETags::notModified)
+                .orElse(null);
     }
 
     // ==================== NEW ENDPOINTS ====================
@@ -340,11 +501,16 @@ public class UserController {
 
         userService.save(user);
 
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok(UserView.of(user));
     }
 
     /**
-     * List All Users - Admin only, with pagination and search
+     * List All Users - Admin only, with pagination and search.
+     * Pass {@code cursor} (empty for the first page) to use keyset pagination instead of page numbers.
+     * {@code count} picks how the total is computed: exact, estimate, capped or none (see {@link CountStrategy}).
+     * {@code fields} (e.g. {@code id,username,email}) limits each user to those fields, read and serialized alone.
+     * {@code role}, {@code enabled}, {@code country} and {@code company} filter by facet: repeat a parameter to accept
+     * several values (e.g. {@code country=France&country=Spain&role=ADMIN}).
      */
     @GetMapping("/users")
     @PreAuthorize("hasRole('ADMIN')")
@@ -353,28 +519,227 @@ public class UserController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "username") String sortBy,
             @RequestParam(defaultValue = "asc") String sortDir,
-            @RequestParam(required = false) String search
-    ) {
-        Sort sort = sortDir.equalsIgnoreCase("desc")
-                ? Sort.by(sortBy).descending()
-                : Sort.by(sortBy).ascending();
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String count,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean stream,
+            @RequestParam MultiValueMap<String, String> params,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletResponse servletResponse
+    ) throws IOException {
+        UserSortField sortField = UserSortField.fromProperty(sortBy);
+        if (sortField == null) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: Invalid sortBy. Use one of " + Arrays.stream(UserSortField.values())
+                            .map(UserSortField::getProperty).collect(Collectors.joining(", "))));
+        }
+        // Page numbers need a total to be useful, cursors do not
+        CountStrategy countStrategy;
+        try {
+            countStrategy = count != null
+                    ? CountStrategy.fromParam(count)
+                    : cursor != null ? CountStrategy.NONE : CountStrategy.EXACT;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: Invalid count. Use exact, estimate, capped or none"));
+        }
+        UserFieldSet fieldSet;
+        try {
+            fieldSet = fields != null ? UserFieldSet.parse(fields) : null;
+        } catch (IllegalArgumentException e) {
+            return invalidFields();
+        }
+        UserFacetFilter facets;
+        try {
+            facets = UserFacetFilter.fromParams(params);
+        } catch (IllegalArgumentException e) {
+            return invalidFacet(e);
+        }
+        // Read before the page, so a write racing with the query can only make the ETag older than the body
+        String etag = UserETags.collection(userService.getCollectionVersion());
+        if (UserETags.matches(ifNoneMatch, etag)) {
+            return UserETags.notModified(etag);
+        }
+        boolean descending = sortDir.equalsIgnoreCase("desc");
+        String term = search != null && !search.trim().isEmpty() ? search.trim() : null;
+
+        if (cursor != null) {
+            if (stream) {
+                return ResponseEntity.badRequest()
+                        .body(new MessageResponse("Error: stream is only supported with page numbers, not cursors"));
+            }
+            return getUsersByCursor(term, facets, sortField, descending, cursor, size, countStrategy, fieldSet, etag);
+        }
+
+        // id breaks ties, so the order matches the (column, id) indexes and is stable across pages
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort sort = sortField == UserSortField.ID
+                ? Sort.by(direction, "id")
+                : Sort.by(direction, sortBy, "id");
 
         Pageable pageable = PageRequest.of(page, size, sort);
-        Page<User> usersPage;
+        if (stream) {
+            // Written to the response as it is read; nothing left for Spring to render
+            streamUsers(term, facets, fieldSet, pageable, countStrategy, etag, servletResponse);
+            return null;
+        }
+        UserListPage<?> usersPage = fieldSet != null
+                ? userService.findUserRows(term, facets, fieldSet, pageable, countStrategy)
+                : userService.findUsers(term, facets, pageable, countStrategy);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("users", usersPage.users());
+        response.put("currentPage", pageable.getPageNumber());
+        response.put("size", pageable.getPageSize());
+        response.put("hasNext", usersPage.hasNext());
+        putCount(response, countStrategy, usersPage.total(), pageable.getPageSize());
+
+        return ResponseEntity.ok().eTag(etag).body(response);
+    }
+
+    // Same body as a listing page, written as the rows are read from the database: the page is never held in memory,
+    // and the first row goes out before the last one is read. hasNext and the total come after the users
+    private void streamUsers(String search, UserFacetFilter facets, UserFieldSet fieldSet, Pageable pageable,
+                             CountStrategy countStrategy, String etag, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.writeStartObject();
+            generator.writeNumberField("currentPage", pageable.getPageNumber());
+            generator.writeNumberField("size", pageable.getPageSize());
+            generator.writeArrayFieldStart("users");
+
+            boolean[] first = {true};
+            StreamedUserPage page = userService.streamUsers(search, facets, fieldSet, pageable, countStrategy, row -> {
+                try {
+                    generator.writeObject(row);
+                    if (first[0]) {
+                        generator.flush();
+                        first[0] = false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            generator.writeEndArray();
+            generator.writeBooleanField("hasNext", page.hasNext());
+            Map<String, Object> count = new LinkedHashMap<>();
+            putCount(count, countStrategy, page.total(), pageable.getPageSize());
+            for (Map.Entry<String, Object> entry : count.entrySet()) {
+                generator.writeObjectField(entry.getKey(), entry.getValue());
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    // totalItems/totalPages are null without a count; totalItemsExact is false for estimates and capped counts
+    private static void putCount(Map<String, Object> response, CountStrategy countStrategy, UserCount total, int size) {
+        response.put("count", countStrategy.param());
+        response.put("totalItems", total != null ? total.value() : null);
+        response.put("totalItemsExact", total != null && total.exact());
+        response.put("totalPages", total != null ? (total.value() + size - 1) / size : null);
+    }
+
+    private static ResponseEntity<MessageResponse> invalidFields() {
+        return ResponseEntity.badRequest()
+                .body(new MessageResponse("Error: Invalid fields. Use a comma separated list of " + Arrays.stream(UserField.values())
+                        .filter(UserField::isRequestable).map(UserField::getProperty).collect(Collectors.joining(", "))));
+    }
 
-        if (search != null && !search.trim().isEmpty()) {
-            usersPage = userService.searchUsers(search.trim(), pageable);
-        } else {
-            usersPage = userService.findAll(pageable);
+    private static ResponseEntity<MessageResponse> invalidFacet(IllegalArgumentException e) {
+        return ResponseEntity.badRequest()
+                .body(new MessageResponse("Error: " + e.getMessage() + ". Use true or false for enabled and "
+                        + Arrays.stream(ERole.values()).map(ERole::name).collect(Collectors.joining(" or ")) + " for role"));
+    }
+
+    // Keyset pagination: constant cost at any depth, with opaque next/prev cursors instead of page numbers
+    private ResponseEntity<?> getUsersByCursor(String search, UserFacetFilter facets, UserSortField sortField,
+                                               boolean descending, String cursor, int size, CountStrategy countStrategy,
+                                               UserFieldSet fieldSet, String etag) {
+        UserCursor position = null;
+        if (!cursor.isEmpty()) {
+            try {
+                position = UserCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(new MessageResponse("Error: Invalid cursor"));
+            }
+            if (position.field() != sortField || position.descending() != descending) {
+                return ResponseEntity.badRequest()
+                        .body(new MessageResponse("Error: Cursor does not match sortBy and sortDir"));
+            }
         }
 
+        CursorPage<?> usersPage = fieldSet != null
+                ? userService.findUserRowsPage(search, facets, fieldSet, sortField, descending, position, Math.max(size, 1))
+                : userService.findUsersPage(search, facets, sortField, descending, position, Math.max(size, 1));
+
         Map<String, Object> response = new HashMap<>();
-        response.put("users", usersPage.getContent());
-        response.put("currentPage", usersPage.getNumber());
-        response.put("totalItems", usersPage.getTotalElements());
-        response.put("totalPages", usersPage.getTotalPages());
-        response.put("size", usersPage.getSize());
+        response.put("users", usersPage.content());
+        response.put("size", usersPage.content().size());
+        response.put("nextCursor", usersPage.nextCursor());
+        response.put("prevCursor", usersPage.prevCursor());
+        putCount(response, countStrategy, userService.countUsers(search, facets, countStrategy), Math.max(size, 1));
+
+        return ResponseEntity.ok().eTag(etag).body(response);
+    }
 
+    /**
+     * Facet Counts - Admin only. Takes the facet parameters of the user list ({@code role}, {@code enabled},
+     * {@code country}, {@code company}) and answers with the number of matching users and, for every facet, its
+     * {@code limit} values with the most users among those matching the other facets.
+     */
+    @GetMapping("/users/facets")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getUserFacets(@RequestParam(defaultValue = "20") int limit,
+                                           @RequestParam MultiValueMap<String, String> params,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        UserFacetFilter facets;
+        try {
+            facets = UserFacetFilter.fromParams(params);
+        } catch (IllegalArgumentException e) {
+            return invalidFacet(e);
+        }
+        String etag = UserETags.collection(userService.getCollectionVersion());
+        if (UserETags.matches(ifNoneMatch, etag)) {
+            return UserETags.notModified(etag);
+        }
+
+        FacetCounts counts = userService.countFacets(facets, Math.max(0, Math.min(limit, MAX_FACET_VALUES)));
+        if (counts == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(new MessageResponse("Error: The facet index is still loading"));
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("totalItems", counts.total());
+        response.put("facets", counts.facets());
+        return ResponseEntity.ok().eTag(etag).body(response);
+    }
+
+    /**
+     * User Suggestions - Admin only. Up to {@code limit} users whose username or email starts with {@code prefix}
+     * (ignoring case), in alphabetical order, for autocompletion; served from memory, without querying the database.
+     */
+    @GetMapping("/users/suggest")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> suggestUsers(@RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+        List<UserSuggestion> suggestions = prefix.isBlank()
+                ? List.of()
+                : userService.suggestUsers(prefix.strip(), Math.max(0, Math.min(limit, MAX_SUGGESTIONS)));
+        if (suggestions == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(new MessageResponse("Error: The suggestion index is still loading"));
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("suggestions", suggestions);
         return ResponseEntity.ok(response);
     }
 
@@ -383,10 +748,16 @@ public class UserController {
      */
     @GetMapping("/users/id/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> getUserById(@PathVariable Long id) throws UserNotFoundException {
-        User user = userService.findById(id)
+    public ResponseEntity<?> getUserById(@PathVariable Long id,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws UserNotFoundException {
+        ResponseEntity<?> notModified = checkNotModified(ifNoneMatch, () -> userService.findVersionById(id), null);
+        if (notModified != null) {
+            return notModified;
+        }
+        UserView user = userService.findViewById(id)
                 .orElseThrow(() -> new UserNotFoundException("User not found with id: " + id));
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok().eTag(UserETags.user(user.id(), user.version(), null)).body(user);
     }
 
     /**
@@ -432,7 +803,7 @@ public class UserController {
         if (request.getAvatar() != null) user.setAvatar(request.getAvatar());
 
         userService.save(user);
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok(UserView.of(user));
     }
 
     /**
@@ -478,76 +849,279 @@ public class UserController {
     }
 
     /**
-     * Get User Stats - Admin only
+     * Get User Stats - Admin only. Served from in-memory counters, see UserStatsCounters.
      */
     @GetMapping("/stats/users")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> getUserStats() {
+        return ResponseEntity.ok(userStatsCounters.stats());
+    }
+
+    /**
+     * Live User Stats - Admin only. Server-Sent Events: a "stats" event with every figure of /api/stats/users, then
+     * one with the figures that changed, at most once a second. See UserStatsPublisher.
+     */
+    @GetMapping(value = "/stats/users/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public SseEmitter streamUserStats() {
+        return userStatsPublisher.subscribe();
+    }
+
+    /**
+     * Page Cache Statistics - Admin only. Hit ratio and estimated memory use of the cache of filtered listings.
+     */
+    @GetMapping("/stats/page-cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getPageCacheStats() {
+        UserPageCache.Stats cacheStats = userPageCache.stats();
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalUsers", userService.count());
-        stats.put("totalAdmins", userService.countByRole(ERole.ROLE_ADMIN));
-        stats.put("totalRegularUsers", userService.countByRole(ERole.ROLE_USER));
-        stats.put("newUsersToday", userService.countNewUsersToday());
+        stats.put("entries", cacheStats.entries());
+        stats.put("usedBytes", cacheStats.usedBytes());
+        stats.put("maxBytes", cacheStats.maxBytes());
+        stats.put("hits", cacheStats.hits());
+        stats.put("misses", cacheStats.misses());
+        stats.put("hitRatio", cacheStats.hitRatio());
+        stats.put("evictions", cacheStats.evictions());
 
         return ResponseEntity.ok(stats);
     }
 
     /**
-     * Export Users to CSV - Admin only
+     * Entity Cache Statistics - Admin only. Entries, hits, misses, puts and hit ratio of each region of the
+     * second-level cache (users by id, user ids by username, roles) since startup.
      */
-    @GetMapping("/users/export/csv")
+    @GetMapping("/stats/entity-cache")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<byte[]> exportUsersToCsv(
-            @RequestParam(required = false) String search,
-            HttpServletResponse response) {
+    public ResponseEntity<?> getEntityCacheStats() {
+        List<Map<String, Object>> regions = new ArrayList<>();
+        for (EntityCacheStatistics.RegionStats region : entityCacheStatistics.regions()) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("region", region.region());
+            stats.put("entries", region.entries());
+            stats.put("hits", region.hits());
+            stats.put("misses", region.misses());
+            stats.put("puts", region.puts());
+            stats.put("hitRatio", region.hitRatio());
+            regions.add(stats);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("regions", regions);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * User Time Series - Admin only. Signups or logins per hour or day of {@code zone} (default: the server's), from
+     * the period holding {@code from} up to {@code to} (exclusive). Both take a date ({@code 2024-05-01}, its midnight),
+     * a local date-time or a date-time with an offset; {@code to} defaults to now, and is never later, and
+     * {@code from} to a week (hourly: a day) before {@code to}. Served from the rollup table, see UserStatsRollup.
+     */
+    @GetMapping("/stats/timeseries")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getUserTimeSeries(@RequestParam String metric,
+                                               @RequestParam(required = false) String from,
+                                               @RequestParam(required = false) String to,
+                                               @RequestParam(defaultValue = "day") String granularity,
+                                               @RequestParam(required = false) String zone) {
+        UserStatsMetric statsMetric;
+        try {
+            statsMetric = UserStatsMetric.valueOf(metric.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: Invalid metric. Use signups or logins"));
+        }
+        StatsGranularity statsGranularity;
+        try {
+            statsGranularity = StatsGranularity.fromParam(granularity);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: Invalid granularity. Use hour or day"));
+        }
+        ZoneId zoneId;
+        try {
+            zoneId = zone != null ? ZoneId.of(zone.trim()) : ZoneId.systemDefault();
+        } catch (DateTimeException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Error: Invalid zone: " + zone));
+        }
+        ZonedDateTime toTime;
+        ZonedDateTime fromTime;
+        try {
+            // Periods after now have no counts: a later to would only add empty points, up to year 9999
+            ZonedDateTime now = ZonedDateTime.now(zoneId);
+            toTime = to != null ? min(parseStatsTime(to, zoneId), now) : now;
+            fromTime = from != null ? parseStatsTime(from, zoneId)
+                    : statsGranularity == StatsGranularity.HOUR ? toTime.minusDays(1) : toTime.minusWeeks(1);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse(
+                            "Error: Invalid from or to. Use a date, a date-time or a date-time with an offset"));
+        }
+        if (!fromTime.isBefore(toTime)) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Error: from must be before to"));
+        }
+        if (fromTime.toInstant().isBefore(userStatsRollup.retentionStart())) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: from is older than the retained statistics"));
+        }
 
-        List<User> users;
-        if (search != null && !search.trim().isEmpty()) {
-            users = userService.searchUsers(search.trim(), PageRequest.of(0, Integer.MAX_VALUE)).getContent();
-        } else {
-            users = userService.findAll(PageRequest.of(0, Integer.MAX_VALUE)).getContent();
+        List<StatsPoint> points = userStatsRollup.series(statsMetric, fromTime, toTime, statsGranularity);
+        if (points == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(new MessageResponse("Error: The user statistics are still catching up"));
         }
+        Map<String, Object> response = new HashMap<>();
+        response.put("metric", statsMetric.name().toLowerCase(Locale.ROOT));
+        response.put("granularity", statsGranularity.param());
+        response.put("zone", zoneId.getId());
+        response.put("points", points);
 
-        StringBuilder csv = new StringBuilder();
+        return ResponseEntity.ok(response);
+    }
 
-        // CSV Header
-        csv.append("ID,Username,Email,First Name,Last Name,Company,Job Position,City,Country,Mobile,Role,Status,Created At,Last Login\n");
+    private static ZonedDateTime min(ZonedDateTime a, ZonedDateTime b) {
+        return a.isAfter(b) ? b : a;
+    }
 
-        // CSV Data
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        for (User user : users) {
-            csv.append(escapeCsv(user.getId() != null ? user.getId().toString() : "")).append(",");
-            csv.append(escapeCsv(user.getUsername())).append(",");
-            csv.append(escapeCsv(user.getEmail())).append(",");
-            csv.append(escapeCsv(user.getFirstName())).append(",");
-            csv.append(escapeCsv(user.getLastName())).append(",");
-            csv.append(escapeCsv(user.getCompany())).append(",");
-            csv.append(escapeCsv(user.getJobPosition())).append(",");
-            csv.append(escapeCsv(user.getCity())).append(",");
-            csv.append(escapeCsv(user.getCountry())).append(",");
-            csv.append(escapeCsv(user.getMobile())).append(",");
-            csv.append(escapeCsv(user.getRole() != null ? user.getRole().getName().name() : "")).append(",");
-            csv.append(user.isEnabled() ? "Active" : "Disabled").append(",");
-            csv.append(user.getCreatedAt() != null ? dateFormat.format(user.getCreatedAt()) : "").append(",");
-            csv.append(user.getLastLogin() != null ? dateFormat.format(user.getLastLogin()) : "Never").append("\n");
-        }
-
-        byte[] csvBytes = csv.toString().getBytes();
+    // A date (its midnight), a local date-time in zone, or a date-time with an offset
+    private static ZonedDateTime parseStatsTime(String value, ZoneId zone) {
+        String time = value.trim();
+        if (time.length() == 10) {
+            return LocalDate.parse(time).atStartOfDay(zone);
+        }
+        try {
+            return OffsetDateTime.parse(time).atZoneSameInstant(zone);
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(time).atZone(zone);
+        }
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType("text/csv"));
-        headers.setContentDispositionFormData("attachment", "users_export.csv");
-        headers.setContentLength(csvBytes.length);
+    /**
+     * Active Users - Admin only. Estimated distinct users who logged in or made an authenticated request today (dau),
+     * over the last 7 days (wau) and over the last 30 days (mau), or from {@code from} to {@code to} (dates of the
+     * server's time zone, both included) when given. Estimates come from HyperLogLog sketches, see ActiveUserService.
+     */
+    @GetMapping("/stats/active-users")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getActiveUsers(@RequestParam(required = false) String from,
+                                            @RequestParam(required = false) String to) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("relativeStandardError", HyperLogLog.RELATIVE_STANDARD_ERROR);
+        if (from == null && to == null) {
+            LocalDate today = LocalDate.now();
+            long[] estimates = activeUserService.estimateTrailing(today, 1, 7, 30);
+            response.put("day", today);
+            response.put("dau", estimates[0]);
+            response.put("wau", estimates[1]);
+            response.put("mau", estimates[2]);
+            return ResponseEntity.ok(response);
+        }
 
-        return new ResponseEntity<>(csvBytes, headers, HttpStatus.OK);
+        LocalDate fromDay;
+        LocalDate toDay;
+        try {
+            toDay = to != null ? LocalDate.parse(to.trim()) : LocalDate.now();
+            fromDay = from != null ? LocalDate.parse(from.trim()) : toDay;
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Error: Invalid from or to. Use a date"));
+        }
+        if (fromDay.isAfter(toDay)) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Error: from must not be after to"));
+        }
+        if (fromDay.isBefore(activeUserService.retentionStart())) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: from is older than the retained statistics"));
+        }
+        response.put("from", fromDay);
+        response.put("to", toDay);
+        response.put("activeUsers", activeUserService.estimate(fromDay, toDay));
+        return ResponseEntity.ok(response);
     }
 
-    private String escapeCsv(String value) {
-        if (value == null) return "";
-        // Escape quotes and wrap in quotes if contains comma, quote, or newline
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
+    /**
+     * User Breakdown - Admin only. The {@code limit} largest values of {@code dimension} (country, company,
+     * jobPosition, or every ageBand) with their number of users, from the last background refresh, with its time and
+     * age. Served without queries, see UserBreakdownService.
+     */
+    @GetMapping("/stats/breakdown")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getUserBreakdown(@RequestParam String dimension,
+                                              @RequestParam(defaultValue = "10") int limit) {
+        UserBreakdownDimension breakdownDimension;
+        try {
+            breakdownDimension = UserBreakdownDimension.fromParam(dimension);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(
+                    "Error: Invalid dimension. Use country, company, jobPosition or ageBand"));
+        }
+        UserBreakdownService.Snapshot snapshot = userBreakdownService.snapshot();
+        if (snapshot == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(new MessageResponse("Error: The user breakdowns are still being computed"));
         }
-        return value;
+        UserBreakdownService.Breakdown breakdown = snapshot.breakdowns().get(breakdownDimension);
+        List<FacetCounts.ValueCount> values = breakdownDimension == UserBreakdownDimension.AGE_BAND
+                ? breakdown.values()
+                : breakdown.values().subList(0, Math.min(breakdown.values().size(),
+                        Math.max(0, Math.min(limit, UserBreakdownService.MAX_VALUES))));
+        long listedUsers = values.stream().mapToLong(FacetCounts.ValueCount::count).sum();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("dimension", breakdownDimension.getParam());
+        response.put("values", values);
+        response.put("otherUsers", breakdown.totalUsers() - listedUsers);
+        response.put("distinctValues", breakdown.distinctValues());
+        response.put("totalUsers", breakdown.totalUsers());
+        response.put("refreshedAt", snapshot.refreshedAt());
+        response.put("ageSeconds", Duration.between(snapshot.refreshedAt(), Instant.now()).toSeconds());
+        response.put("refreshIntervalSeconds", userBreakdownService.getRefreshIntervalMs() / 1000);
+        response.put("refreshMillis", snapshot.refreshMillis());
+        // Writes made outside the application (the seeder) are not tracked
+        response.put("usersChangedSinceRefresh", userService.getWriteGeneration() != snapshot.generation());
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Export Users to CSV - Admin only
+     */
+    @GetMapping("/users/export/csv")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportUsersToCsv(@RequestParam(required = false) String search) {
+        return exportUsers(ExportFormat.CSV, search);
+    }
+
+    /**
+     * Export Users as an Arrow IPC stream (columnar, dictionary-encoded) - Admin only
+     */
+    @GetMapping("/users/export/arrow")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportUsersToArrow(@RequestParam(required = false) String search) {
+        return exportUsers(ExportFormat.ARROW, search);
+    }
+
+    private ResponseEntity<StreamingResponseBody> exportUsers(ExportFormat format, String search) {
+        String term = search != null && !search.trim().isEmpty() ? search.trim() : null;
+
+        // Rows are read in keyset-paginated chunks and written as they arrive, so memory stays flat at any table size
+        StreamingResponseBody body = outputStream -> {
+            try (UserExportWriter writer = format.newWriter(outputStream)) {
+                writer.start();
+                userService.forEachUserView(term, format.getBatchSize(), chunk -> {
+                    try {
+                        writer.writeBatch(chunk);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(format.getContentType()));
+        headers.setContentDispositionFormData("attachment", format.getFilename());
+
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
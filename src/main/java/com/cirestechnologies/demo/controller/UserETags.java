@@ -0,0 +1,53 @@
+package com.cirestechnologies.demo.controller;
+
+import com.cirestechnologies.demo.payload.response.UserFieldSet;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Strong ETags for user resources, built from versions alone so a request can be checked against
+ * {@code If-None-Match} before the resource is loaded or serialized.
+ * <p>
+ * A single user is identified by its id and {@code User#version}; a listing by the collection version from
+ * {@code UserService#getCollectionVersion()}, which changes with any user write. Sparse representations
+ * ({@code fields=}) add their field set, since they are different bodies for the same user.
+ */
+final class UserETags {
+
+    private UserETags() {
+    }
+
+    static String user(Long id, Long version, UserFieldSet fields) {
+        return "\"u" + id + "v" + version + (fields != null ? "f" + fields.key() : "") + "\"";
+    }
+
+    // Null, so no ETag, for a null collection version: reads may lag behind a write
+    static String collection(String collectionVersion) {
+        return collectionVersion != null ? "\"c" + collectionVersion + "\"" : null;
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header lists {@code etag} (weak comparison, as RFC 9110 requires for it).
+     * Never for a null {@code etag}.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || stripWeak(tag).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static ResponseEntity<?> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,18 @@
+package com.cirestechnologies.demo.event;
+
+import com.cirestechnologies.demo.repository.UserStatsKey;
+
+/**
+ * Published by {@link com.cirestechnologies.demo.service.UserService} after a user has been created, updated or
+ * deleted through the application. Bulk loads that bypass JPA (the seeder) do not publish events.
+ * <p>
+ * {@code before} and {@code after} are the role, signup time and last login time of the user before and after the
+ * change, {@code null} for a user that did not exist (yet, or any more).
+ */
+public record UserChangedEvent(Type type, Long userId, UserStatsKey before, UserStatsKey after) {
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,7 @@
+package com.cirestechnologies.demo.exception;
+
+public class ExportJobNotFoundException extends RuntimeException {
+    public ExportJobNotFoundException(String message) {
+        super(message);
+    }
+}
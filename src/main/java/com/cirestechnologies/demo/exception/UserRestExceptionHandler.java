@@ -20,6 +20,17 @@ public class UserRestExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler
+    public ResponseEntity<UserErrorResponse> handleException(ExportJobNotFoundException exc) {
+        UserErrorResponse error = new UserErrorResponse();
+
+        error.setStatus(404);
+        error.setMessage(exc.getMessage());
+        error.setTimeStamp(System.currentTimeMillis());
+
+        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
+    }
+
     @ExceptionHandler
     public ResponseEntity<UserErrorResponse> handleException(InvalidPasswordException exc) {
         UserErrorResponse error = new UserErrorResponse();
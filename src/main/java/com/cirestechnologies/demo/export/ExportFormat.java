@@ -0,0 +1,50 @@
+package com.cirestechnologies.demo.export;
+
+import java.io.OutputStream;
+
+/**
+ * Supported export formats.
+ */
+public enum ExportFormat {
+    CSV("csv", "text/csv", 2000, false),
+    // Arrow IPC stream, columnar with dictionary-encoded low-cardinality columns and ZSTD-compressed buffers
+    ARROW("arrows", UserArrowWriter.CONTENT_TYPE, 8192, true);
+
+    private final String extension;
+    private final String contentType;
+    private final int batchSize;
+    private final boolean compressed;
+
+    ExportFormat(String extension, String contentType, int batchSize, boolean compressed) {
+        this.extension = extension;
+        this.contentType = contentType;
+        this.batchSize = batchSize;
+        this.compressed = compressed;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    // Rows per keyset chunk; for Arrow this is also the record batch (row group) size
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // Formats that compress their own output are stored as-is; the others are gzipped on disk
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public String getFilename() {
+        return "users_export." + extension;
+    }
+
+    public UserExportWriter newWriter(OutputStream outputStream) {
+        return this == ARROW ? new UserArrowWriter(outputStream) : new UserCsvWriter(outputStream);
+    }
+}
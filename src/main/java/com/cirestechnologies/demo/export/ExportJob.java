@@ -0,0 +1,135 @@
+package com.cirestechnologies.demo.export;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A background export and, once finished, its compressed artifact on disk.
+ */
+public class ExportJob {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id;
+    private final String search;
+    private final ExportFormat format;
+    private final long generation;
+    private final Date createdAt = new Date();
+    private final AtomicLong rowsWritten = new AtomicLong();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Long totalRows;
+    private volatile Path file;
+    private volatile long sizeBytes;
+    private volatile Date completedAt;
+    private volatile String error;
+
+    public ExportJob(String id, String search, ExportFormat format, long generation) {
+        this.id = id;
+        this.search = search;
+        this.format = format;
+        this.generation = generation;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSearch() {
+        return search;
+    }
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public Long getTotalRows() {
+        return totalRows;
+    }
+
+    // Percentage, or null while the total is unknown (filtered exports)
+    public Integer getProgress() {
+        if (status == Status.COMPLETED) {
+            return 100;
+        }
+        Long total = totalRows;
+        if (total == null || total == 0) {
+            return null;
+        }
+        return (int) Math.min(99, rowsWritten.get() * 100 / total);
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public Date getCompletedAt() {
+        return completedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String getDownloadUrl() {
+        return status == Status.COMPLETED ? "/api/users/export/jobs/" + id + "/download" : null;
+    }
+
+    @JsonIgnore
+    public long getGeneration() {
+        return generation;
+    }
+
+    @JsonIgnore
+    public Path getFile() {
+        return file;
+    }
+
+    boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    void addRowsWritten(long rows) {
+        rowsWritten.addAndGet(rows);
+    }
+
+    void setTotalRows(Long totalRows) {
+        this.totalRows = totalRows;
+    }
+
+    void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    void markCompleted(Path file, long sizeBytes) {
+        this.file = file;
+        this.sizeBytes = sizeBytes;
+        this.completedAt = new Date();
+        this.status = Status.COMPLETED;
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        this.completedAt = new Date();
+        this.status = Status.FAILED;
+    }
+}
@@ -0,0 +1,240 @@
+package com.cirestechnologies.demo.export;
+
+import com.cirestechnologies.demo.service.RecentWriters;
+import com.cirestechnologies.demo.service.UserService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs user exports in the background and keeps their compressed artifacts in a local directory.
+ * <p>
+ * An artifact is reused for the same search as long as {@link UserService#getWriteGeneration()} has not moved since it
+ * was produced, i.e. no user has been created, updated or deleted in between. The generation lives in memory, so
+ * artifacts from a previous run are discarded at startup. An export started while replicas may still miss a recent
+ * write ({@link RecentWriters#readsMayLag()}) is never reused.
+ * <p>
+ * Whenever a job finishes, the finished jobs of its search and format that are no longer the latest one are discarded,
+ * whether the newer job completed or failed; a superseded job still running is discarded once it finishes. Finished
+ * jobs are also discarded {@code cirestechnologies.demo.export.retention-ms} (default 1 hour) after they finished.
+ * The artifact of a discarded job is deleted {@code cirestechnologies.demo.export.delete-delay-ms} (default 1 minute)
+ * later, since a download may have been handed to Tomcat's sendfile, which opens the file after the handler returns.
+ */
+@Service
+public class ExportJobService {
+    private static final Logger logger = LoggerFactory.getLogger(ExportJobService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long SWEEP_INTERVAL_MS = 60000;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RecentWriters recentWriters;
+
+    @Value("${cirestechnologies.demo.export.dir:${java.io.tmpdir}/user-exports}")
+    private String exportDir;
+
+    @Value("${cirestechnologies.demo.export.threads:2}")
+    private int threads;
+
+    @Value("${cirestechnologies.demo.export.retention-ms:3600000}")
+    private long retentionMs = 3600000;
+
+    @Value("${cirestechnologies.demo.export.delete-delay-ms:60000}")
+    private long deleteDelayMs = 60000;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, ExportJob> latestJobBySearch = new ConcurrentHashMap<>();
+    // Artifacts of discarded jobs, by the time they were discarded
+    private final Map<Path, Long> discardedFiles = new ConcurrentHashMap<>();
+
+    private Path directory;
+    private ExecutorService executor;
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Paths.get(exportDir).toAbsolutePath();
+        Files.createDirectories(directory);
+        deleteStaleArtifacts();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "user-export-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-export-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Start an export of all users (or those matching {@code search}), or return the current job for that search and
+     * format if it is still running or its artifact is still up to date.
+     */
+    public ExportJob submit(String search, ExportFormat format) {
+        String term = search != null && !search.trim().isEmpty() ? search.trim() : null;
+
+        return latestJobBySearch.compute(key(format, term), (k, current) -> {
+            long generation = userService.getWriteGeneration();
+            if (current != null && current.getGeneration() == generation && current.getStatus() != ExportJob.Status.FAILED) {
+                return current;
+            }
+
+            ExportJob job = new ExportJob(UUID.randomUUID().toString(), term, format,
+                    recentWriters.readsMayLag() ? -1 : generation);
+            jobs.put(job.getId(), job);
+            executor.execute(() -> run(job));
+            return job;
+        });
+    }
+
+    public Optional<ExportJob> findJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    private void run(ExportJob job) {
+        job.markRunning();
+        ExportFormat format = job.getFormat();
+        String extension = format.isCompressed() ? format.getExtension() : format.getExtension() + ".gz";
+        Path artifact = directory.resolve(job.getId() + "." + extension);
+        Path partial = directory.resolve(artifact.getFileName() + ".part");
+
+        try {
+            if (job.getSearch() == null) {
+                job.setTotalRows(userService.count());
+            }
+
+            try (OutputStream file = Files.newOutputStream(partial);
+                 OutputStream out = format.isCompressed() ? file : new GZIPOutputStream(file, BUFFER_SIZE);
+                 UserExportWriter writer = format.newWriter(out)) {
+                writer.start();
+                userService.forEachUserView(job.getSearch(), format.getBatchSize(), chunk -> {
+                    try {
+                        writer.writeBatch(chunk);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    job.addRowsWritten(chunk.size());
+                });
+            }
+
+            Files.move(partial, artifact, StandardCopyOption.ATOMIC_MOVE);
+            job.markCompleted(artifact, Files.size(artifact));
+            logger.info("Export {} completed: {} rows, {} bytes", job.getId(), job.getRowsWritten(), job.getSizeBytes());
+        } catch (Exception e) {
+            logger.error("Export {} failed: {}", job.getId(), e.getMessage());
+            job.markFailed(e.getMessage());
+            deleteQuietly(partial);
+        }
+        discardSuperseded(key(format, job.getSearch()));
+    }
+
+    // The finished jobs of the search that a later job has replaced, this one included if it was
+    private void discardSuperseded(String key) {
+        ExportJob latest = latestJobBySearch.get(key);
+        for (ExportJob job : jobs.values()) {
+            if (job != latest && job.isFinished() && key.equals(key(job.getFormat(), job.getSearch()))) {
+                discard(job);
+            }
+        }
+    }
+
+    /**
+     * Discard the jobs finished more than the retention period ago, and delete the artifacts discarded more than the
+     * delete delay ago.
+     */
+    void sweep() {
+        long now = System.currentTimeMillis();
+        for (ExportJob job : jobs.values()) {
+            if (job.isFinished() && job.getCompletedAt().getTime() <= now - retentionMs) {
+                discard(job);
+            }
+        }
+        discardedFiles.forEach((file, discardedAt) -> {
+            if (discardedAt <= now - deleteDelayMs && deleteQuietly(file)) {
+                discardedFiles.remove(file);
+            }
+        });
+    }
+
+    private void discard(ExportJob job) {
+        jobs.remove(job.getId());
+        latestJobBySearch.remove(key(job.getFormat(), job.getSearch()), job);
+        if (job.getFile() == null) {
+            return;
+        }
+        if (deleteDelayMs <= 0) {
+            deleteQuietly(job.getFile());
+        } else {
+            discardedFiles.put(job.getFile(), System.currentTimeMillis());
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            // Keep the schedule going: an exception would cancel the next runs
+            logger.warn("Export sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private static String key(ExportFormat format, String search) {
+        return format.name() + ":" + (search != null ? search.toLowerCase(Locale.ROOT) : "");
+    }
+
+    private void deleteStaleArtifacts() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{gz,arrows,part}")) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private static boolean deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Could not delete export file {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.cirestechnologies.demo.export;
+
+import com.cirestechnologies.demo.payload.response.UserView;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.ArrowDictionaryBatch;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes users in the Arrow IPC streaming format, one record batch (row group) per {@link #writeBatch} call,
+ * with the same columns as the CSV export.
+ * <p>
+ * Country, job position and role are dictionary-encoded. Dictionaries grow while the export streams: the first
+ * batch is preceded by the initial dictionaries, and later batches only by delta dictionary batches holding the values
+ * first seen in that batch. They are kept for the whole export, so only columns with a small set of values are
+ * encoded: company is nearly unique per user (about 500,000 distinct values in 1M users) and stays a plain string.
+ */
+public class UserArrowWriter implements UserExportWriter {
+    public static final String CONTENT_TYPE = "application/vnd.apache.arrow.stream";
+
+    private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(32, true);
+    private static final ArrowType.Timestamp TIMESTAMP_TYPE = new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC");
+
+    private final BufferAllocator allocator;
+    private final VectorSchemaRoot root;
+    private final List<DictionaryColumn> dictionaryColumns = new ArrayList<>();
+    private final DictionaryProvider.MapDictionaryProvider dictionaries = new DictionaryProvider.MapDictionaryProvider();
+    private final DeltaDictionaryStreamWriter writer;
+
+    private final BigIntVector id;
+    private final VarCharVector username;
+    private final VarCharVector email;
+    private final VarCharVector firstName;
+    private final VarCharVector lastName;
+    private final VarCharVector city;
+    private final DictionaryColumn country;
+    private final VarCharVector company;
+    private final DictionaryColumn jobPosition;
+    private final VarCharVector mobile;
+    private final DictionaryColumn role;
+    private final BitVector enabled;
+    private final TimeStampMilliTZVector createdAt;
+    private final TimeStampMilliTZVector lastLogin;
+
+    public UserArrowWriter(OutputStream outputStream) {
+        this.allocator = new RootAllocator();
+
+        country = dictionaryColumn("country", 1);
+        jobPosition = dictionaryColumn("job_position", 2);
+        role = dictionaryColumn("role", 3);
+
+        Schema schema = new Schema(List.of(
+                new Field("id", FieldType.notNullable(new ArrowType.Int(64, true)), null),
+                Field.nullable("username", ArrowType.Utf8.INSTANCE),
+                Field.nullable("email", ArrowType.Utf8.INSTANCE),
+                Field.nullable("first_name", ArrowType.Utf8.INSTANCE),
+                Field.nullable("last_name", ArrowType.Utf8.INSTANCE),
+                Field.nullable("city", ArrowType.Utf8.INSTANCE),
+                country.field,
+                Field.nullable("company", ArrowType.Utf8.INSTANCE),
+                jobPosition.field,
+                Field.nullable("mobile", ArrowType.Utf8.INSTANCE),
+                role.field,
+                new Field("enabled", FieldType.notNullable(ArrowType.Bool.INSTANCE), null),
+                Field.nullable("created_at", TIMESTAMP_TYPE),
+                Field.nullable("last_login", TIMESTAMP_TYPE)));
+
+        root = VectorSchemaRoot.create(schema, allocator);
+        id = (BigIntVector) root.getVector("id");
+        username = (VarCharVector) root.getVector("username");
+        email = (VarCharVector) root.getVector("email");
+        firstName = (VarCharVector) root.getVector("first_name");
+        lastName = (VarCharVector) root.getVector("last_name");
+        city = (VarCharVector) root.getVector("city");
+        company = (VarCharVector) root.getVector("company");
+        mobile = (VarCharVector) root.getVector("mobile");
+        enabled = (BitVector) root.getVector("enabled");
+        createdAt = (TimeStampMilliTZVector) root.getVector("created_at");
+        lastLogin = (TimeStampMilliTZVector) root.getVector("last_login");
+        for (DictionaryColumn column : dictionaryColumns) {
+            column.indices = (IntVector) root.getVector(column.field.getName());
+        }
+
+        writer = new DeltaDictionaryStreamWriter(root, dictionaries, outputStream);
+    }
+
+    @Override
+    public void start() throws IOException {
+        writer.start();
+    }
+
+    /**
+     * Write {@code users} as one record batch.
+     */
+    @Override
+    public void writeBatch(List<UserView> users) throws IOException {
+        int rows = users.size();
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.setInitialCapacity(rows);
+            vector.allocateNew();
+        }
+
+        for (int i = 0; i < rows; i++) {
+            UserView user = users.get(i);
+            id.set(i, user.id());
+            setString(username, i, user.username());
+            setString(email, i, user.email());
+            setString(firstName, i, user.firstName());
+            setString(lastName, i, user.lastName());
+            setString(city, i, user.city());
+            country.set(i, user.country());
+            setString(company, i, user.company());
+            jobPosition.set(i, user.jobPosition());
+            setString(mobile, i, user.mobile());
+            role.set(i, user.role() != null ? user.role().name().name() : null);
+            enabled.set(i, user.enabled() ? 1 : 0);
+            setDate(createdAt, i, user.createdAt());
+            setDate(lastLogin, i, user.lastLogin());
+        }
+
+        root.setRowCount(rows);
+        writer.writeBatch();
+    }
+
+    public long bytesWritten() {
+        return writer.bytesWritten();
+    }
+
+    // Ends the stream without closing the underlying output stream, which belongs to the caller
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.end();
+        } finally {
+            root.close();
+            for (DictionaryColumn column : dictionaryColumns) {
+                column.close();
+            }
+            allocator.close();
+        }
+    }
+
+    private DictionaryColumn dictionaryColumn(String name, long dictionaryId) {
+        DictionaryColumn column = new DictionaryColumn(name, dictionaryId, allocator);
+        dictionaryColumns.add(column);
+        dictionaries.put(column.dictionary);
+        return column;
+    }
+
+    private static void setString(VarCharVector vector, int index, String value) {
+        if (value == null) {
+            vector.setNull(index);
+        } else {
+            vector.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void setDate(TimeStampMilliTZVector vector, int index, Date value) {
+        if (value == null) {
+            vector.setNull(index);
+        } else {
+            vector.set(index, value.getTime());
+        }
+    }
+
+    /**
+     * A dictionary-encoded string column: an index vector in the record batch plus the dictionary built so far.
+     */
+    private static final class DictionaryColumn implements AutoCloseable {
+        private final Field field;
+        private final Dictionary dictionary;
+        private final Map<String, Integer> indexByValue = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        // Only the values added since the last dictionary batch are sent, through this reusable vector
+        private final VarCharVector delta;
+        private int writtenCount;
+        private boolean started;
+        private IntVector indices;
+
+        private DictionaryColumn(String name, long dictionaryId, BufferAllocator allocator) {
+            DictionaryEncoding encoding = new DictionaryEncoding(dictionaryId, false, INDEX_TYPE);
+            this.field = new Field(name, new FieldType(true, INDEX_TYPE, encoding), null);
+            this.delta = new VarCharVector(name, allocator);
+            this.dictionary = new Dictionary(delta, encoding);
+        }
+
+        private void set(int row, String value) {
+            if (value == null) {
+                indices.setNull(row);
+                return;
+            }
+            Integer index = indexByValue.get(value);
+            if (index == null) {
+                index = values.size();
+                indexByValue.put(value, index);
+                values.add(value);
+            }
+            indices.set(row, index);
+        }
+
+        private ArrowDictionaryBatch pendingBatch() {
+            int pending = values.size() - writtenCount;
+            delta.allocateNew(pending);
+            for (int i = 0; i < pending; i++) {
+                delta.setSafe(i, values.get(writtenCount + i).getBytes(StandardCharsets.UTF_8));
+            }
+            VectorSchemaRoot deltaRoot = new VectorSchemaRoot(List.of(delta));
+            deltaRoot.setRowCount(pending);
+
+            ArrowRecordBatch batch = new VectorUnloader(deltaRoot).getRecordBatch();
+            ArrowDictionaryBatch dictionaryBatch = new ArrowDictionaryBatch(dictionary.getEncoding().getId(), batch, started);
+
+            writtenCount = values.size();
+            started = true;
+            return dictionaryBatch;
+        }
+
+        private boolean hasPending() {
+            return !started || writtenCount < values.size();
+        }
+
+        @Override
+        public void close() {
+            delta.close();
+        }
+    }
+
+    /**
+     * Stream writer that emits each dictionary once and then only delta batches,
+     * instead of resending a whole replacement dictionary every time it grows.
+     */
+    private final class DeltaDictionaryStreamWriter extends ArrowStreamWriter {
+        private DeltaDictionaryStreamWriter(VectorSchemaRoot root, DictionaryProvider provider, OutputStream out) {
+            super(root, provider, Channels.newChannel(out), IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE,
+                    CompressionUtil.CodecType.ZSTD);
+        }
+
+        @Override
+        protected void ensureDictionariesWritten(DictionaryProvider provider, Set<Long> dictionaryIds) throws IOException {
+            for (DictionaryColumn column : dictionaryColumns) {
+                if (column.hasPending()) {
+                    try (ArrowDictionaryBatch batch = column.pendingBatch()) {
+                        writeDictionaryBatch(batch);
+                    }
+                }
+            }
+        }
+    }
+}
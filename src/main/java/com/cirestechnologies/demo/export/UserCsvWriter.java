@@ -0,0 +1,121 @@
+package com.cirestechnologies.demo.export;
+
+import com.cirestechnologies.demo.payload.response.UserView;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes users as CSV rows straight into a buffered stream.
+ * Values are escaped character by character while being written, so no intermediate strings are built per field.
+ */
+public class UserCsvWriter implements UserExportWriter {
+    public static final String HEADER = "ID,Username,Email,First Name,Last Name,Company,Job Position,City,Country,Mobile,Role,Status,Created At,Last Login\n";
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private final ZoneId zone;
+
+    public UserCsvWriter(OutputStream outputStream) {
+        this(outputStream, ZoneId.systemDefault());
+    }
+
+    public UserCsvWriter(OutputStream outputStream, ZoneId zone) {
+        this.out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.zone = zone;
+    }
+
+    @Override
+    public void start() throws IOException {
+        out.write(HEADER);
+    }
+
+    @Override
+    public void writeBatch(List<UserView> users) throws IOException {
+        for (UserView user : users) {
+            writeRow(user);
+        }
+    }
+
+    public void writeRow(UserView user) throws IOException {
+        if (user.id() != null) {
+            out.write(Long.toString(user.id()));
+        }
+        out.write(',');
+        writeField(user.username());
+        writeField(user.email());
+        writeField(user.firstName());
+        writeField(user.lastName());
+        writeField(user.company());
+        writeField(user.jobPosition());
+        writeField(user.city());
+        writeField(user.country());
+        writeField(user.mobile());
+        writeField(user.role() != null ? user.role().name().name() : null);
+        out.write(user.enabled() ? "Active" : "Disabled");
+        out.write(',');
+        writeDate(user.createdAt(), "");
+        out.write(',');
+        writeDate(user.lastLogin(), "Never");
+        out.write('\n');
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    // Flushes without closing the underlying stream, which belongs to the caller
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value != null) {
+            if (needsQuoting(value)) {
+                out.write('"');
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '"') {
+                        out.write('"');
+                    }
+                    out.write(c);
+                }
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write(',');
+    }
+
+    private void writeDate(Date date, String absent) throws IOException {
+        if (date == null) {
+            out.write(absent);
+        } else {
+            DATE_FORMAT.formatTo(LocalDateTime.ofInstant(date.toInstant(), zone), out);
+        }
+    }
+
+    // Quote values containing a comma, quote or line break
+    private static boolean needsQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
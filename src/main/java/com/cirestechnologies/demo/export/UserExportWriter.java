@@ -0,0 +1,24 @@
+package com.cirestechnologies.demo.export;
+
+import com.cirestechnologies.demo.payload.response.UserView;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streams users into an export format, one chunk at a time.
+ */
+public interface UserExportWriter extends AutoCloseable {
+    /**
+     * Write whatever precedes the rows (CSV header, Arrow schema).
+     */
+    void start() throws IOException;
+
+    void writeBatch(List<UserView> users) throws IOException;
+
+    /**
+     * Finish the output and flush it, leaving the underlying stream open.
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -6,6 +6,10 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.util.Date;
 
@@ -15,11 +19,26 @@ import java.util.Date;
                 @UniqueConstraint(columnNames = "username"),
                 @UniqueConstraint(columnNames = "email")
         })
+// In the second-level cache, along with username -> id, so that a lookup by username resolves without SQL once the
+// user has been loaded (see EntityCacheConfig). Updates and deletes through Hibernate replace or evict the entries
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.NATURAL_ID_CACHE_REGION)
 @Getter
 @Setter
 public class User {
+    public static final String CACHE_REGION = "users";
+    public static final String NATURAL_ID_CACHE_REGION = "users-by-username";
+
+    /**
+     * Ids reserved by one call to {@code users_id_seq}, which steps by as much: the pooled-lo optimizer hands out
+     * {@code [value, value + ID_ALLOCATION_SIZE)} for each value it gets, so inserts need no generated key back and
+     * are sent in JDBC batches.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_seq")
+    @SequenceGenerator(name = "users_id_seq", sequenceName = "users_id_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @NotBlank
@@ -51,6 +70,8 @@ public class User {
     @NotBlank
     private String mobile;
 
+    // Never changes once the user is created
+    @NaturalId
     @NotBlank
     private String username;
 
@@ -76,6 +97,11 @@ public class User {
     @Temporal(TemporalType.TIMESTAMP)
     private Date lastLogin;
 
+    // Bumped by every update, and the source of the user's ETags
+    @Version
+    @JsonIgnore
+    private Long version;
+
     @PrePersist
     protected void onCreate() {
         createdAt = new Date();
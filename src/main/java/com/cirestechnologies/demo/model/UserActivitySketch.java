@@ -0,0 +1,31 @@
+package com.cirestechnologies.demo.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * The users active on a day (server time zone), as a deflated HyperLogLog sketch of their ids.
+ */
+@Entity
+@Table(name = "user_activity_sketches")
+@Getter
+@Setter
+public class UserActivitySketch {
+    @Id
+    @Column(name = "activity_day")
+    private LocalDate day;
+
+    @Column(nullable = false, length = 32768)
+    private byte[] registers;
+
+    public UserActivitySketch() {
+    }
+
+    public UserActivitySketch(LocalDate day, byte[] registers) {
+        this.day = day;
+        this.registers = registers;
+    }
+}
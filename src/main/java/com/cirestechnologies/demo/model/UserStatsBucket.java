@@ -0,0 +1,64 @@
+package com.cirestechnologies.demo.model;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Number of signups or logins in the quarter of an hour starting at {@code start}. Quarter hours are aligned with the
+ * day boundaries of every time zone, so they add up to the hours and days of any zone.
+ */
+@Entity
+@Table(name = "user_stats_buckets")
+@IdClass(UserStatsBucket.Key.class)
+@Getter
+@Setter
+public class UserStatsBucket {
+    public static final long SECONDS = 15 * 60;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private UserStatsMetric metric;
+
+    @Id
+    @Column(name = "bucket_start")
+    private Instant start;
+
+    private long count;
+
+    public UserStatsBucket() {
+    }
+
+    public UserStatsBucket(UserStatsMetric metric, Instant start, long count) {
+        this.metric = metric;
+        this.start = start;
+        this.count = count;
+    }
+
+    /**
+     * Start of the bucket holding {@code instant}.
+     */
+    public static Instant startOf(Instant instant) {
+        return Instant.ofEpochSecond(Math.floorDiv(instant.getEpochSecond(), SECONDS) * SECONDS);
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private UserStatsMetric metric;
+        private Instant start;
+
+        public Key() {
+        }
+
+        public Key(UserStatsMetric metric, Instant start) {
+            this.metric = metric;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.cirestechnologies.demo.model;
+
+public enum UserStatsMetric {
+    SIGNUPS,
+    LOGINS
+}
@@ -0,0 +1,97 @@
+package com.cirestechnologies.demo.payload.response;
+
+import com.cirestechnologies.demo.model.ERole;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * The fields of {@link UserView} that can be requested with {@code fields=}, with the JPQL expression each one is
+ * selected by and how its value is written. {@link #VERSION} is only selected, for ETags: like in {@link UserView},
+ * it is not part of the representation.
+ */
+public enum UserField {
+    ID("id", "u.id", Kind.NUMBER),
+    USERNAME("username", "u.username", Kind.STRING),
+    EMAIL("email", "u.email", Kind.STRING),
+    FIRST_NAME("firstName", "u.firstName", Kind.STRING),
+    LAST_NAME("lastName", "u.lastName", Kind.STRING),
+    BIRTH_DATE("birthDate", "u.birthDate", Kind.DATE),
+    CITY("city", "u.city", Kind.STRING),
+    COUNTRY("country", "u.country", Kind.STRING),
+    COMPANY("company", "u.company", Kind.STRING),
+    JOB_POSITION("jobPosition", "u.jobPosition", Kind.STRING),
+    MOBILE("mobile", "u.mobile", Kind.STRING),
+    AVATAR("avatar", "u.avatar", Kind.STRING),
+    // Joined from the role table only when requested
+    ROLE("role", "r.name", Kind.ROLE),
+    ENABLED("enabled", "u.enabled", Kind.BOOLEAN),
+    CREATED_AT("createdAt", "u.createdAt", Kind.DATE),
+    LAST_LOGIN("lastLogin", "u.lastLogin", Kind.DATE),
+    VERSION("version", "u.version", Kind.NUMBER);
+
+    private static final SerializedString ROLE_NAME = new SerializedString("name");
+
+    private final String property;
+    private final String expression;
+    private final Kind kind;
+    private final SerializedString serializedName;
+
+    UserField(String property, String expression, Kind kind) {
+        this.property = property;
+        this.expression = expression;
+        this.kind = kind;
+        this.serializedName = new SerializedString(property);
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public boolean isRequestable() {
+        return this != VERSION;
+    }
+
+    /**
+     * The field for a property name, or {@code null} if there is none.
+     */
+    public static UserField fromProperty(String property) {
+        for (UserField field : values()) {
+            if (field.property.equals(property)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    // Same JSON as UserView: dates through the configured date format, the role as {"name": "ROLE_..."}
+    void write(Object value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeFieldName(serializedName);
+        if (value == null) {
+            gen.writeNull();
+            return;
+        }
+        switch (kind) {
+            case NUMBER -> gen.writeNumber((Long) value);
+            case STRING -> gen.writeString((String) value);
+            case BOOLEAN -> gen.writeBoolean((Boolean) value);
+            case DATE -> provider.defaultSerializeValue(value, gen);
+            case ROLE -> {
+                gen.writeStartObject();
+                gen.writeFieldName(ROLE_NAME);
+                gen.writeString(((ERole) value).name());
+                gen.writeEndObject();
+            }
+        }
+    }
+
+    private enum Kind {
+        NUMBER, STRING, BOOLEAN, DATE, ROLE
+    }
+}
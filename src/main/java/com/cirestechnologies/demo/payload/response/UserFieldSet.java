@@ -0,0 +1,107 @@
+package com.cirestechnologies.demo.payload.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A combination of {@link UserField}s requested with {@code fields=}, which queries select and rows are serialized
+ * from. Serializing a row walks the precomputed field list and writes pre-encoded names, with no reflection or
+ * per-row lookup of what to include.
+ * <p>
+ * Instances are cached per distinct combination (at most 2^17 of them, in practice a handful), regardless of the
+ * order or repetition of names in the parameter.
+ */
+public final class UserFieldSet {
+    private static final Map<Integer, UserFieldSet> CACHE = new ConcurrentHashMap<>();
+
+    private final int key;
+    private final Set<UserField> fields;
+    private final List<UserField> ordered;
+
+    private UserFieldSet(int key, Set<UserField> fields) {
+        this.key = key;
+        this.fields = Collections.unmodifiableSet(EnumSet.copyOf(fields));
+        this.ordered = List.copyOf(fields);
+    }
+
+    /**
+     * The field set for a comma separated {@code fields} parameter.
+     *
+     * @throws IllegalArgumentException if a name is not a requestable {@link UserField} or no field is named
+     */
+    public static UserFieldSet parse(String fields) {
+        EnumSet<UserField> set = EnumSet.noneOf(UserField.class);
+        for (String name : fields.split(",")) {
+            String property = name.trim();
+            if (property.isEmpty()) {
+                continue;
+            }
+            UserField field = UserField.fromProperty(property);
+            if (field == null || !field.isRequestable()) {
+                throw new IllegalArgumentException("Unknown field: " + property);
+            }
+            set.add(field);
+        }
+        if (set.isEmpty()) {
+            throw new IllegalArgumentException("No fields requested");
+        }
+        return of(set);
+    }
+
+    public static UserFieldSet of(Set<UserField> fields) {
+        int key = 0;
+        for (UserField field : fields) {
+            key |= 1 << field.ordinal();
+        }
+        return CACHE.computeIfAbsent(key, k -> new UserFieldSet(k, fields));
+    }
+
+    /**
+     * Short identifier of the combination, e.g. to tell representations apart in ETags.
+     */
+    public String key() {
+        return Integer.toString(key, 36);
+    }
+
+    /**
+     * This set plus {@code extra}, e.g. the columns a cursor is built from. The extra fields are selected but only
+     * serialized if they were requested.
+     */
+    public List<UserField> selectedWith(UserField... extra) {
+        List<UserField> selected = new ArrayList<>(ordered);
+        for (UserField field : extra) {
+            if (!fields.contains(field)) {
+                selected.add(field);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Write the requested fields of a row whose values are indexed by {@link UserField#ordinal()}.
+     */
+    public void write(Object[] values, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        for (UserField field : ordered) {
+            field.write(values[field.ordinal()], gen, provider);
+        }
+        gen.writeEndObject();
+    }
+
+    public boolean contains(UserField field) {
+        return fields.contains(field);
+    }
+
+    public List<UserField> fields() {
+        return ordered;
+    }
+}
@@ -0,0 +1,31 @@
+package com.cirestechnologies.demo.payload.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+
+/**
+ * A user reduced to a {@link UserFieldSet}: only the selected columns were read, and only the requested fields are
+ * serialized. {@code values} is indexed by {@link UserField#ordinal()}; fields that were not selected are null.
+ */
+@JsonSerialize(using = UserRow.Serializer.class)
+public record UserRow(UserFieldSet fieldSet, Object[] values) {
+
+    public Object get(UserField field) {
+        return values[field.ordinal()];
+    }
+
+    public Long id() {
+        return (Long) get(UserField.ID);
+    }
+
+    public static final class Serializer extends JsonSerializer<UserRow> {
+        @Override
+        public void serialize(UserRow row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            row.fieldSet().write(row.values(), gen, provider);
+        }
+    }
+}
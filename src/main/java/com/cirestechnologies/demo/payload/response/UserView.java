@@ -0,0 +1,54 @@
+package com.cirestechnologies.demo.payload.response;
+
+import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.model.User;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Date;
+
+/**
+ * Read-only projection of a user with its role already joined. Loaded directly by JPQL constructor expressions,
+ * so it never goes through the persistence context and never carries the password hash.
+ */
+public record UserView(
+        Long id,
+        String username,
+        String email,
+        String firstName,
+        String lastName,
+        Date birthDate,
+        String city,
+        String country,
+        String company,
+        String jobPosition,
+        String mobile,
+        String avatar,
+        RoleView role,
+        boolean enabled,
+        Date createdAt,
+        Date lastLogin,
+        @JsonIgnore Long version) {
+
+    // Used by the repository queries, which select the role name from the joined role
+    public UserView(Long id, String username, String email, String firstName, String lastName, Date birthDate,
+                    String city, String country, String company, String jobPosition, String mobile, String avatar,
+                    ERole role, boolean enabled, Date createdAt, Date lastLogin, Long version) {
+        this(id, username, email, firstName, lastName, birthDate, city, country, company, jobPosition, mobile, avatar,
+                role != null ? new RoleView(role) : null, enabled, createdAt, lastLogin, version);
+    }
+
+    /**
+     * View of an already loaded user, so write endpoints answer with the same shape as the read endpoints.
+     */
+    public static UserView of(User user) {
+        ERole role = user.getRole() != null ? user.getRole().getName() : null;
+        return new UserView(user.getId(), user.getUsername(), user.getEmail(), user.getFirstName(), user.getLastName(),
+                user.getBirthDate(), user.getCity(), user.getCountry(), user.getCompany(), user.getJobPosition(),
+                user.getMobile(), user.getAvatar(), role, user.isEnabled(), user.getCreatedAt(), user.getLastLogin(),
+                user.getVersion());
+    }
+
+    // Serialized as {"name": "ROLE_..."} like the Role entity
+    public record RoleView(ERole name) {
+    }
+}
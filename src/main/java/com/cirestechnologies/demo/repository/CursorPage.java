@@ -0,0 +1,9 @@
+package com.cirestechnologies.demo.repository;
+
+import java.util.List;
+
+/**
+ * One keyset-paginated page, with the cursors of its neighbours ({@code null} when there is no such page).
+ */
+public record CursorPage<T>(List<T> content, String nextCursor, String prevCursor) {
+}
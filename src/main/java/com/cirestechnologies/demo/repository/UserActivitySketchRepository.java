@@ -0,0 +1,29 @@
+package com.cirestechnologies.demo.repository;
+
+import com.cirestechnologies.demo.model.UserActivitySketch;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UserActivitySketchRepository extends JpaRepository<UserActivitySketch, LocalDate> {
+
+    List<UserActivitySketch> findByDayBetween(LocalDate from, LocalDate to);
+
+    // SELECT ... FOR UPDATE: flushes of the same day by several instances merge one after the other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UserActivitySketch s WHERE s.day = :day")
+    Optional<UserActivitySketch> findForUpdate(@Param("day") LocalDate day);
+
+    @Modifying
+    @Query("DELETE FROM UserActivitySketch s WHERE s.day < :before")
+    int deleteBefore(@Param("before") LocalDate before);
+}
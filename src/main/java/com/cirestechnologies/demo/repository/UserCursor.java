@@ -0,0 +1,64 @@
+package com.cirestechnologies.demo.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position in a keyset-paginated user list: the sort key and id of a boundary row, plus which side of it to read.
+ * <p>
+ * Clients only see the opaque, URL-safe {@link #encode() encoded} form. The sort field and direction are part of it,
+ * so a cursor cannot be replayed against a different ordering.
+ *
+ * @param field      sort field
+ * @param descending sort direction
+ * @param backward   {@code true} for the rows before the boundary row (previous page), {@code false} for those after
+ * @param key        sort key of the boundary row, {@code null} for ID sorting and for null values
+ * @param id         id of the boundary row
+ */
+public record UserCursor(UserSortField field, boolean descending, boolean backward, Object key, long id) {
+    private static final String VERSION = "1";
+
+    public String encode() {
+        // Timestamps keep their full precision (java.sql.Timestamp carries the database's microseconds), otherwise rows
+        // sharing the truncated key would be read again
+        String value = key == null ? "" : key instanceof Date date ? date.toInstant().toString() : key.toString();
+        String raw = String.join(":", VERSION, field.name(), descending ? "d" : "a", backward ? "p" : "n",
+                Long.toString(id), key == null ? "-" : "+") + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code cursor} was not produced by {@link #encode()}
+     */
+    public static UserCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // The key is last and may itself contain ':'
+            String[] parts = raw.split(":", 7);
+            if (parts.length != 7 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException("Unsupported cursor");
+            }
+
+            UserSortField field = UserSortField.valueOf(parts[1]);
+            boolean descending = "d".equals(parts[2]);
+            boolean backward = "p".equals(parts[3]);
+            long id = Long.parseLong(parts[4]);
+            Object key = null;
+            if ("+".equals(parts[5])) {
+                key = field.getType() == Date.class ? Timestamp.from(Instant.parse(parts[6]))
+                        : field.getType() == Long.class ? Long.valueOf(parts[6])
+                        : parts[6];
+            } else if (field != UserSortField.ID && !field.isNullable()) {
+                throw new IllegalArgumentException("Missing cursor key");
+            }
+            return new UserCursor(field, descending, backward, key, id);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // IllegalArgumentException also covers bad Base64 and NumberFormatException
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
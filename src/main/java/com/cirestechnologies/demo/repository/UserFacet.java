@@ -0,0 +1,71 @@
+package com.cirestechnologies.demo.repository;
+
+import com.cirestechnologies.demo.model.ERole;
+
+import java.util.Locale;
+
+/**
+ * User attributes the list can be filtered and counted by. Values are the strings used in request parameters and in
+ * the facet index: the role name ({@code ROLE_ADMIN}), {@code true}/{@code false}, and country and company as stored.
+ */
+public enum UserFacet {
+    ROLE("role", "r.name"),
+    ENABLED("enabled", "u.enabled"),
+    COUNTRY("country", "u.country"),
+    COMPANY("company", "u.company");
+
+    private final String param;
+    private final String expression;
+
+    UserFacet(String param, String expression) {
+        this.param = param;
+        this.expression = expression;
+    }
+
+    public String getParam() {
+        return param;
+    }
+
+    /**
+     * JPQL expression of the facet, over the aliases {@code u} (user) and {@code r} (its role).
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * The canonical value for a request parameter value: roles may omit the {@code ROLE_} prefix and are case
+     * insensitive, as is the enabled flag.
+     *
+     * @throws IllegalArgumentException for a role or flag that does not exist
+     */
+    public String normalize(String value) {
+        switch (this) {
+            case ROLE:
+                String role = value.trim().toUpperCase(Locale.ROOT);
+                return ERole.valueOf(role.startsWith("ROLE_") ? role : "ROLE_" + role).name();
+            case ENABLED:
+                String flag = value.trim().toLowerCase(Locale.ROOT);
+                if (!flag.equals("true") && !flag.equals("false")) {
+                    throw new IllegalArgumentException(value);
+                }
+                return flag;
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * A canonical value as the type of {@link #getExpression()}, for binding to a query.
+     */
+    public Object toQueryValue(String value) {
+        switch (this) {
+            case ROLE:
+                return ERole.valueOf(value);
+            case ENABLED:
+                return Boolean.valueOf(value);
+            default:
+                return value;
+        }
+    }
+}
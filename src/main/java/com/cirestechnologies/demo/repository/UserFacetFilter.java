@@ -0,0 +1,97 @@
+package com.cirestechnologies.demo.repository;
+
+import org.springframework.util.MultiValueMap;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selected facet values: a user matches if, for every facet with a selection, its value is one of the selected ones
+ * (AND across facets, OR within a facet).
+ */
+public final class UserFacetFilter {
+    public static final UserFacetFilter NONE = new UserFacetFilter(new EnumMap<>(UserFacet.class));
+
+    private final Map<UserFacet, Set<String>> selected;
+
+    private UserFacetFilter(Map<UserFacet, Set<String>> selected) {
+        this.selected = selected;
+    }
+
+    /**
+     * The filter of a request: each facet parameter ({@code role}, {@code enabled}, {@code country}, {@code company})
+     * is repeated once per accepted value. Values are not split on commas, company names contain them.
+     *
+     * @throws IllegalArgumentException for a role or enabled value that does not exist
+     */
+    public static UserFacetFilter fromParams(MultiValueMap<String, String> params) {
+        Map<UserFacet, Set<String>> selected = new EnumMap<>(UserFacet.class);
+        for (UserFacet facet : UserFacet.values()) {
+            List<String> values = params.get(facet.getParam());
+            if (values == null) {
+                continue;
+            }
+            Set<String> normalized = new LinkedHashSet<>();
+            for (String value : values) {
+                if (!value.isEmpty()) {
+                    try {
+                        normalized.add(facet.normalize(value));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Invalid " + facet.getParam() + " value: " + value, e);
+                    }
+                }
+            }
+            if (!normalized.isEmpty()) {
+                selected.put(facet, Collections.unmodifiableSet(normalized));
+            }
+        }
+        return selected.isEmpty() ? NONE : new UserFacetFilter(selected);
+    }
+
+    public boolean isEmpty() {
+        return selected.isEmpty();
+    }
+
+    public Set<UserFacet> facets() {
+        return selected.keySet();
+    }
+
+    /**
+     * The selected values of {@code facet}, empty if it is not filtered.
+     */
+    public Set<String> values(UserFacet facet) {
+        return selected.getOrDefault(facet, Set.of());
+    }
+
+    /**
+     * This filter without the selection on {@code facet}, for counting the values of that facet.
+     */
+    public UserFacetFilter without(UserFacet facet) {
+        if (!selected.containsKey(facet)) {
+            return this;
+        }
+        Map<UserFacet, Set<String>> others = new EnumMap<>(selected);
+        others.remove(facet);
+        return others.isEmpty() ? NONE : new UserFacetFilter(others);
+    }
+
+    // By selected values, so equal filters share cached results
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof UserFacetFilter other && selected.equals(other.selected);
+    }
+
+    @Override
+    public int hashCode() {
+        return selected.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return selected.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package com.cirestechnologies.demo.repository;
+
+import java.util.Collection;
+
+/**
+ * The users a listing is restricted to: those matching an optional search pattern and the facet selection.
+ * <p>
+ * When the facet index has already resolved the facets to a short list of user ids, {@code ids} holds them and is
+ * queried instead of the facet columns, and {@code facetMatchCount} is the exact number of users matching the facets
+ * ({@code -1} if unknown).
+ *
+ * @param searchPattern optional pattern for {@link UserRepository#SEARCH_PATTERN_PREDICATE}
+ */
+public record UserFilter(String searchPattern, UserFacetFilter facets, Collection<Long> ids, long facetMatchCount) {
+    public static final UserFilter NONE = new UserFilter(null, UserFacetFilter.NONE, null, -1);
+
+    public static UserFilter search(String searchPattern) {
+        return new UserFilter(searchPattern, UserFacetFilter.NONE, null, -1);
+    }
+
+    public boolean hasFacets() {
+        return !facets.isEmpty();
+    }
+
+    // Nothing can match, so there is no need to ask the database
+    public boolean matchesNothing() {
+        return ids != null && ids.isEmpty();
+    }
+}
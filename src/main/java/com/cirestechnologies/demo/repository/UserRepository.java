@@ -1,38 +1,84 @@
 package com.cirestechnologies.demo.repository;
 
-import com.cirestechnologies.demo.model.ERole;
 import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.payload.response.UserView;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
+// Reads run in read-only transactions, so they go to a read replica when there is one (ReplicaDataSourceConfig).
+// Saves and deletes keep the read-write transactions of SimpleJpaRepository, and so does any read inside a write
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
-    Optional<User> findByUsername(String username);
-    Optional<User> findByUsernameOrEmail(String username, String email);
+@Transactional(readOnly = true)
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
+    // findByUsername, loaded on every authenticated request, is a natural id lookup: see UserRepositoryCustom
+    Optional<User> findByEmail(String email);
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
     Page<User> findAll(Pageable pageable);
 
-    @Query("SELECT u FROM User u WHERE " +
-           "LOWER(u.username) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "LOWER(u.email) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "LOWER(u.firstName) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "LOWER(u.lastName) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "LOWER(u.company) LIKE LOWER(CONCAT('%', :search, '%'))")
-    Page<User> searchUsers(@Param("search") String search, Pageable pageable);
+    // Case-insensitive substring search, written so PostgreSQL can use the lower(column) gin_trgm_ops indexes from
+    // the V2 migration: the pattern is lowercased and escaped once in Java (see UserService#likePattern) instead of
+    // being built per row, and LIKE wildcards typed by the user are matched literally
+    String SEARCH_PATTERN_PREDICATE = "(" +
+           "LOWER(u.username) LIKE :pattern ESCAPE '\\' OR " +
+           "LOWER(u.email) LIKE :pattern ESCAPE '\\' OR " +
+           "LOWER(u.firstName) LIKE :pattern ESCAPE '\\' OR " +
+           "LOWER(u.lastName) LIKE :pattern ESCAPE '\\' OR " +
+           "LOWER(u.company) LIKE :pattern ESCAPE '\\')";
 
-    @Query("SELECT COUNT(u) FROM User u WHERE u.role.name = :roleName")
-    long countByRoleName(@Param("roleName") ERole roleName);
+    // The same predicate in SQL, for native queries binding the pattern five times
+    String SEARCH_PATTERN_SQL = "(" +
+           "lower(u.username) LIKE ? ESCAPE '\\' OR " +
+           "lower(u.email) LIKE ? ESCAPE '\\' OR " +
+           "lower(u.first_name) LIKE ? ESCAPE '\\' OR " +
+           "lower(u.last_name) LIKE ? ESCAPE '\\' OR " +
+           "lower(u.company) LIKE ? ESCAPE '\\')";
 
-    @Query("SELECT COUNT(u) FROM User u WHERE u.createdAt >= :since")
-    long countNewUsersSince(@Param("since") Date since);
+    @Query("SELECT COUNT(u) FROM User u WHERE " + SEARCH_PATTERN_PREDICATE)
+    long countByPattern(@Param("pattern") String pattern);
+
+    // Left join, so a user without a role is found too
+    @Query("SELECT new com.cirestechnologies.demo.repository.UserStatsKey(r.name, u.createdAt, u.lastLogin) " +
+           "FROM User u LEFT JOIN u.role r WHERE u.id = :id")
+    Optional<UserStatsKey> findStatsKeyById(@Param("id") Long id);
 
     Optional<User> findById(Long id);
+
+    // Read model for every user read endpoint: one query with the role joined, no entities, no password hash
+    String USER_VIEW_SELECT = "SELECT new com.cirestechnologies.demo.payload.response.UserView(" +
+            "u.id, u.username, u.email, u.firstName, u.lastName, u.birthDate, u.city, u.country, u.company, " +
+            "u.jobPosition, u.mobile, u.avatar, r.name, u.enabled, u.createdAt, u.lastLogin, u.version) " +
+            "FROM User u LEFT JOIN u.role r ";
+
+    @Query(USER_VIEW_SELECT + "WHERE u.id = :id")
+    Optional<UserView> findViewById(@Param("id") Long id);
+
+    @Query(USER_VIEW_SELECT + "WHERE u.username = :username")
+    Optional<UserView> findViewByUsername(@Param("username") String username);
+
+    // Conditional GETs compare these against If-None-Match before anything else is loaded
+    @Query("SELECT new com.cirestechnologies.demo.repository.UserVersion(u.id, u.version) FROM User u " +
+           "WHERE u.id = :id")
+    Optional<UserVersion> findVersionById(@Param("id") Long id);
+
+    @Query("SELECT new com.cirestechnologies.demo.repository.UserVersion(u.id, u.version) FROM User u " +
+           "WHERE u.username = :username")
+    Optional<UserVersion> findVersionByUsername(@Param("username") String username);
+
+    // Keyset pagination over the id for exports: each chunk is a single indexed range scan
+    @Query(USER_VIEW_SELECT + "WHERE u.id > :afterId ORDER BY u.id")
+    List<UserView> findViewsAfter(@Param("afterId") long afterId, Limit limit);
+
+    @Query(USER_VIEW_SELECT + "WHERE u.id > :afterId AND " + SEARCH_PATTERN_PREDICATE + " ORDER BY u.id")
+    List<UserView> searchViewsByPatternAfter(@Param("pattern") String pattern, @Param("afterId") long afterId,
+                                             Limit limit);
 }
\ No newline at end of file
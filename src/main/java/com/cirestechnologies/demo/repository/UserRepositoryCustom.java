@@ -0,0 +1,65 @@
+package com.cirestechnologies.demo.repository;
+
+import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.payload.response.UserFieldSet;
+import com.cirestechnologies.demo.payload.response.UserRow;
+import com.cirestechnologies.demo.payload.response.UserView;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public interface UserRepositoryCustom {
+    /**
+     * The user with this {@code username}, its natural id: resolved from the second-level cache when it has been
+     * loaded before, otherwise read by username and cached.
+     */
+    Optional<User> findByUsername(String username);
+
+    /**
+     * Up to {@code limit} users in {@code (field, id)} order, starting next to {@code cursor} (from the start when it is
+     * {@code null}). A backward cursor reads towards the start of the list; the rows are still returned in list order.
+     */
+    List<UserView> findPage(UserSortField field, boolean descending, UserCursor cursor, UserFilter filter, int limit);
+
+    /**
+     * Same as {@link #findPage}, reading only the columns of {@code fields}.
+     */
+    List<UserRow> findRowPage(UserFieldSet fields, UserSortField field, boolean descending, UserCursor cursor,
+                              UserFilter filter, int limit);
+
+    /**
+     * One offset page of users, fetching one row more than the page instead of running a count query;
+     * {@code pageable} must be sorted by user properties.
+     */
+    Slice<UserView> findViewSlice(UserFilter filter, Pageable pageable);
+
+    /**
+     * Same as {@link #findViewSlice}, reading only the columns of {@code fields}.
+     */
+    Slice<UserRow> findRowSlice(UserFieldSet fields, UserFilter filter, Pageable pageable);
+
+    /**
+     * Same as {@link #findViewSlice}, handing each user to {@code consumer} as it comes off a database cursor of
+     * {@code fetchSize} rows instead of collecting the page. Must run in a transaction (PostgreSQL only uses a cursor
+     * outside autocommit). Returns whether there is a next page.
+     */
+    boolean streamViewSlice(UserFilter filter, Pageable pageable, int fetchSize, Consumer<UserView> consumer);
+
+    /**
+     * Same as {@link #streamViewSlice}, reading only the columns of {@code fields}.
+     */
+    boolean streamRowSlice(UserFieldSet fields, UserFilter filter, Pageable pageable, int fetchSize,
+                           Consumer<UserRow> consumer);
+
+    long countMatching(UserFilter filter);
+
+    /**
+     * The number of users matching {@code filter}, reading at most {@code limit} of them.
+     */
+    long countMatchingUpTo(UserFilter filter, int limit);
+
+    Optional<UserRow> findRowByUsername(UserFieldSet fields, String username);
+}
@@ -0,0 +1,292 @@
+package com.cirestechnologies.demo.repository;
+
+import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.payload.response.UserField;
+import com.cirestechnologies.demo.payload.response.UserFieldSet;
+import com.cirestechnologies.demo.payload.response.UserRow;
+import com.cirestechnologies.demo.payload.response.UserView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keyset pagination: each page is a range scan of the {@code (column, id)} index starting at the cursor, so it costs
+ * the same at any depth, unlike OFFSET which reads and discards every row before the page.
+ * <p>
+ * The {@link UserRow} queries select only the columns of a {@link UserFieldSet}, and join the role only if it is one
+ * of them or the role facet is filtered in SQL.
+ * <p>
+ * Every query is read-only, like the reads of {@link UserRepository}.
+ */
+@Transactional(readOnly = true)
+public class UserRepositoryImpl implements UserRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<UserView> findPage(UserSortField field, boolean descending, UserCursor cursor, UserFilter filter,
+                                   int limit) {
+        return findPage(UserRepository.USER_VIEW_SELECT, UserView.class, field, descending, cursor, filter, limit,
+                Function.identity());
+    }
+
+    @Override
+    public List<UserRow> findRowPage(UserFieldSet fields, UserSortField field, boolean descending, UserCursor cursor,
+                                     UserFilter filter, int limit) {
+        // The cursors of the page are built from the id and the sort column, so both are read even if not requested
+        List<UserField> selected = fields.selectedWith(UserField.ID, field.getUserField());
+        return findPage(rowSelect(selected, filter), Tuple.class, field, descending, cursor, filter, limit,
+                tuple -> toRow(fields, selected, tuple));
+    }
+
+    @Override
+    public Slice<UserView> findViewSlice(UserFilter filter, Pageable pageable) {
+        return findSlice(UserRepository.USER_VIEW_SELECT, UserView.class, filter, pageable, Function.identity());
+    }
+
+    @Override
+    public Slice<UserRow> findRowSlice(UserFieldSet fields, UserFilter filter, Pageable pageable) {
+        List<UserField> selected = fields.fields();
+        return findSlice(rowSelect(selected, filter), Tuple.class, filter, pageable,
+                tuple -> toRow(fields, selected, tuple));
+    }
+
+    @Override
+    public long countMatching(UserFilter filter) {
+        if (filter.matchesNothing()) {
+            return 0;
+        }
+        TypedQuery<Long> query = entityManager.createQuery(
+                "SELECT COUNT(u) FROM User u " + roleJoin(filter) + where(conditions(filter)), Long.class);
+        bind(query, filter);
+        return query.getSingleResult();
+    }
+
+    @Override
+    public long countMatchingUpTo(UserFilter filter, int limit) {
+        if (filter.matchesNothing()) {
+            return 0;
+        }
+        TypedQuery<Long> query = entityManager.createQuery(
+                "SELECT u.id FROM User u " + roleJoin(filter) + where(conditions(filter)), Long.class);
+        bind(query, filter);
+        query.setMaxResults(limit);
+        return query.getResultList().size();
+    }
+
+    @Override
+    public Optional<User> findByUsername(String username) {
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(User.class).loadOptional(username);
+    }
+
+    @Override
+    public Optional<UserRow> findRowByUsername(UserFieldSet fields, String username) {
+        // The version is read for the ETag
+        List<UserField> selected = fields.selectedWith(UserField.ID, UserField.VERSION);
+        List<Tuple> tuples = entityManager.createQuery(rowSelect(selected, UserFilter.NONE) + "WHERE u.username = :username", Tuple.class)
+                .setParameter("username", username)
+                .getResultList();
+        return tuples.stream().findFirst().map(tuple -> toRow(fields, selected, tuple));
+    }
+
+    @Override
+    public boolean streamViewSlice(UserFilter filter, Pageable pageable, int fetchSize, Consumer<UserView> consumer) {
+        return streamSlice(UserRepository.USER_VIEW_SELECT, UserView.class, filter, pageable, fetchSize,
+                Function.identity(), consumer);
+    }
+
+    @Override
+    public boolean streamRowSlice(UserFieldSet fields, UserFilter filter, Pageable pageable, int fetchSize,
+                                  Consumer<UserRow> consumer) {
+        List<UserField> selected = fields.fields();
+        return streamSlice(rowSelect(selected, filter), Tuple.class, filter, pageable, fetchSize,
+                tuple -> toRow(fields, selected, tuple), consumer);
+    }
+
+    private <R, T> Slice<T> findSlice(String select, Class<R> resultType, UserFilter filter, Pageable pageable,
+                                      Function<R, T> mapper) {
+        if (filter.matchesNothing()) {
+            return new SliceImpl<>(List.of(), pageable, false);
+        }
+
+        List<T> rows = new ArrayList<>();
+        for (R result : sliceQuery(select, resultType, filter, pageable).getResultList()) {
+            rows.add(mapper.apply(result));
+        }
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+    }
+
+    private <R, T> boolean streamSlice(String select, Class<R> resultType, UserFilter filter, Pageable pageable,
+                                       int fetchSize, Function<R, T> mapper, Consumer<T> consumer) {
+        if (filter.matchesNothing()) {
+            return false;
+        }
+
+        TypedQuery<R> query = sliceQuery(select, resultType, filter, pageable);
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize);
+        int rows = 0;
+        try (Stream<R> results = query.getResultStream()) {
+            for (Iterator<R> it = results.iterator(); it.hasNext(); ) {
+                R result = it.next();
+                if (rows == pageable.getPageSize()) {
+                    return true;
+                }
+                consumer.accept(mapper.apply(result));
+                rows++;
+            }
+        }
+        return false;
+    }
+
+    private <R> TypedQuery<R> sliceQuery(String select, Class<R> resultType, UserFilter filter, Pageable pageable) {
+        StringBuilder jpql = new StringBuilder(select).append(where(conditions(filter)));
+        if (pageable.getSort().isSorted()) {
+            jpql.append(" ORDER BY ").append(pageable.getSort().stream()
+                    .map(order -> "u." + order.getProperty() + (order.getDirection() == Sort.Direction.DESC ? " DESC" : " ASC"))
+                    .collect(Collectors.joining(", ")));
+        }
+
+        TypedQuery<R> query = entityManager.createQuery(jpql.toString(), resultType);
+        bind(query, filter);
+        // One extra row tells whether there is a next page, without a count query
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize() + 1);
+        return query;
+    }
+
+    private <R, T> List<T> findPage(String select, Class<R> resultType, UserSortField field, boolean descending,
+                                    UserCursor cursor, UserFilter filter, int limit, Function<R, T> mapper) {
+        if (filter.matchesNothing()) {
+            return new ArrayList<>();
+        }
+
+        // Reading backward means walking the index the other way and reversing the rows afterwards
+        boolean backward = cursor != null && cursor.backward();
+        boolean scanDescending = descending != backward;
+
+        String column = "u." + field.getProperty();
+        List<String> conditions = conditions(filter);
+        if (cursor != null) {
+            conditions.add(keysetCondition(field, column, scanDescending, cursor.key()));
+        }
+
+        StringBuilder jpql = new StringBuilder(select).append(where(conditions));
+        String direction = scanDescending ? " DESC" : " ASC";
+        jpql.append(" ORDER BY ");
+        if (field != UserSortField.ID) {
+            // PostgreSQL's default null ordering, which is what the (column, id) index is built with
+            jpql.append(column).append(direction).append(scanDescending ? " NULLS FIRST, " : " NULLS LAST, ");
+        }
+        jpql.append("u.id").append(direction);
+
+        TypedQuery<R> query = entityManager.createQuery(jpql.toString(), resultType);
+        bind(query, filter);
+        if (cursor != null) {
+            query.setParameter("id", cursor.id());
+            if (field != UserSortField.ID && cursor.key() != null) {
+                query.setParameter("key", cursor.key());
+            }
+        }
+        query.setMaxResults(limit);
+
+        List<T> rows = new ArrayList<>();
+        for (R result : query.getResultList()) {
+            rows.add(mapper.apply(result));
+        }
+        if (backward) {
+            Collections.reverse(rows);
+        }
+        return rows;
+    }
+
+    private static String rowSelect(List<UserField> selected, UserFilter filter) {
+        String select = selected.stream().map(UserField::getExpression).collect(Collectors.joining(", "));
+        String join = selected.contains(UserField.ROLE) ? "LEFT JOIN u.role r " : roleJoin(filter);
+        return "SELECT " + select + " FROM User u " + join;
+    }
+
+    private static String roleJoin(UserFilter filter) {
+        return filter.ids() == null && filter.facets().facets().contains(UserFacet.ROLE) ? "LEFT JOIN u.role r " : "";
+    }
+
+    // Resolved ids replace the facet predicates: the facet index already applied them
+    private static List<String> conditions(UserFilter filter) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.searchPattern() != null) {
+            conditions.add(UserRepository.SEARCH_PATTERN_PREDICATE);
+        }
+        if (filter.ids() != null) {
+            conditions.add("u.id IN :ids");
+        } else {
+            for (UserFacet facet : filter.facets().facets()) {
+                conditions.add(facet.getExpression() + " IN :" + facet.getParam());
+            }
+        }
+        return conditions;
+    }
+
+    private static String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+    }
+
+    private static void bind(Query query, UserFilter filter) {
+        if (filter.searchPattern() != null) {
+            query.setParameter("pattern", filter.searchPattern());
+        }
+        if (filter.ids() != null) {
+            query.setParameter("ids", filter.ids());
+        } else {
+            for (UserFacet facet : filter.facets().facets()) {
+                query.setParameter(facet.getParam(), filter.facets().values(facet).stream()
+                        .map(facet::toQueryValue).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    private static UserRow toRow(UserFieldSet fields, List<UserField> selected, Tuple tuple) {
+        Object[] values = new Object[UserField.values().length];
+        for (int i = 0; i < selected.size(); i++) {
+            values[selected.get(i).ordinal()] = tuple.get(i);
+        }
+        return new UserRow(fields, values);
+    }
+
+    // Rows strictly after (key, id) in scan order; nulls sort after every value ascending and before them descending
+    private static String keysetCondition(UserSortField field, String column, boolean descending, Object key) {
+        String op = descending ? "<" : ">";
+        if (field == UserSortField.ID) {
+            return "u.id " + op + " :id";
+        }
+        if (!field.isNullable()) {
+            return "(" + column + ", u.id) " + op + " (:key, :id)";
+        }
+        if (key == null) {
+            return descending
+                    ? "((" + column + " IS NULL AND u.id < :id) OR " + column + " IS NOT NULL)"
+                    : "(" + column + " IS NULL AND u.id > :id)";
+        }
+        return descending
+                ? "(" + column + ", u.id) < (:key, :id)"
+                : "((" + column + ", u.id) > (:key, :id) OR " + column + " IS NULL)";
+    }
+}
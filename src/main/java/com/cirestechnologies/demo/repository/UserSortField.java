@@ -0,0 +1,67 @@
+package com.cirestechnologies.demo.repository;
+
+import com.cirestechnologies.demo.payload.response.UserField;
+import com.cirestechnologies.demo.payload.response.UserView;
+
+import java.util.Date;
+import java.util.function.Function;
+
+/**
+ * Columns users can be sorted by. Each one is backed by a {@code (column, id)} index (see the V3 migration), so both
+ * offset and keyset pages read the index in order instead of sorting the table.
+ */
+public enum UserSortField {
+    ID("id", Long.class, false, UserView::id),
+    USERNAME("username", String.class, false, UserView::username),
+    EMAIL("email", String.class, false, UserView::email),
+    FIRST_NAME("firstName", String.class, false, UserView::firstName),
+    LAST_NAME("lastName", String.class, false, UserView::lastName),
+    COMPANY("company", String.class, false, UserView::company),
+    CREATED_AT("createdAt", Date.class, false, UserView::createdAt),
+    // Null until the first login
+    LAST_LOGIN("lastLogin", Date.class, true, UserView::lastLogin);
+
+    private final String property;
+    private final Class<?> type;
+    private final boolean nullable;
+    private final Function<UserView, Object> getter;
+
+    UserSortField(String property, Class<?> type, boolean nullable, Function<UserView, Object> getter) {
+        this.property = property;
+        this.type = type;
+        this.nullable = nullable;
+        this.getter = getter;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    public UserField getUserField() {
+        return UserField.fromProperty(property);
+    }
+
+    public Object valueOf(UserView user) {
+        return getter.apply(user);
+    }
+
+    /**
+     * The field for a {@code sortBy} request parameter, or {@code null} if users cannot be sorted by it.
+     */
+    public static UserSortField fromProperty(String property) {
+        for (UserSortField field : values()) {
+            if (field.property.equals(property)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
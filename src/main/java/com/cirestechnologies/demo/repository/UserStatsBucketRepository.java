@@ -0,0 +1,34 @@
+package com.cirestechnologies.demo.repository;
+
+import com.cirestechnologies.demo.model.UserStatsBucket;
+import com.cirestechnologies.demo.model.UserStatsMetric;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface UserStatsBucketRepository extends JpaRepository<UserStatsBucket, UserStatsBucket.Key> {
+
+    List<UserStatsBucket> findByMetricAndStartGreaterThanEqualAndStartLessThanOrderByStart(
+            UserStatsMetric metric, Instant from, Instant to);
+
+    @Query("SELECT max(b.start) FROM UserStatsBucket b")
+    Instant findLatestStart();
+
+    @Modifying
+    @Query("UPDATE UserStatsBucket b SET b.count = b.count + :delta WHERE b.metric = :metric AND b.start = :start")
+    int addToCount(@Param("metric") UserStatsMetric metric, @Param("start") Instant start, @Param("delta") long delta);
+
+    @Modifying
+    @Query("DELETE FROM UserStatsBucket b WHERE b.start >= :from")
+    int deleteFrom(@Param("from") Instant from);
+
+    @Modifying
+    @Query("DELETE FROM UserStatsBucket b WHERE b.start < :before")
+    int deleteBefore(@Param("before") Instant before);
+}
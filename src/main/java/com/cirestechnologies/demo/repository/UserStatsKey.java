@@ -0,0 +1,12 @@
+package com.cirestechnologies.demo.repository;
+
+import com.cirestechnologies.demo.model.ERole;
+
+import java.util.Date;
+
+/**
+ * The attributes a user is tallied by in the user statistics: its role ({@code null} for none), when it signed up and
+ * when it last logged in.
+ */
+public record UserStatsKey(ERole role, Date createdAt, Date lastLogin) {
+}
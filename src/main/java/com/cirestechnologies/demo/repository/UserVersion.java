@@ -0,0 +1,7 @@
+package com.cirestechnologies.demo.repository;
+
+/**
+ * The optimistic-locking version of a user, which changes with every update of the row.
+ */
+public record UserVersion(Long id, Long version) {
+}
@@ -2,6 +2,7 @@ package com.cirestechnologies.demo.security;
 
 import com.cirestechnologies.demo.security.jwt.AuthEntryPointJwt;
 import com.cirestechnologies.demo.security.jwt.AuthTokenFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -69,7 +70,10 @@ public class WebSecurityConfig {
                 .exceptionHandling(exception -> exception.authenticationEntryPoint(unauthorizedHandler))
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth ->
-                        auth.requestMatchers("/api/auth/**", "/api/auth/register").permitAll()
+                        // Streaming responses finish on an ASYNC dispatch that was already authorized by the original request,
+                        // or on an ERROR dispatch when the client goes away mid-stream (event streams)
+                        auth.dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+                                .requestMatchers("/api/auth/**", "/api/auth/register").permitAll()
                                 .requestMatchers(AUTH_WHITELIST).permitAll()
                                 .anyRequest().authenticated()
                 );
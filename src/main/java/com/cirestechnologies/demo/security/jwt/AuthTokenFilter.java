@@ -1,6 +1,8 @@
 package com.cirestechnologies.demo.security.jwt;
 
+import com.cirestechnologies.demo.security.services.UserDetailsImpl;
 import com.cirestechnologies.demo.security.services.UserDetailsServiceImpl;
+import com.cirestechnologies.demo.service.ActiveUserService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -24,6 +26,9 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
 
+    @Autowired
+    private ActiveUserService activeUserService;
+
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
     @Override
@@ -46,6 +51,9 @@ public class AuthTokenFilter extends OncePerRequestFilter {
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
                 SecurityContextHolder.getContext().setAuthentication(authentication);
+
+                // Count the user as active today
+                activeUserService.record(((UserDetailsImpl) userDetails).getId());
             }
         } catch (Exception e) {
             // Log the error
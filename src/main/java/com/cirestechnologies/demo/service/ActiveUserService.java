@@ -0,0 +1,187 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.model.UserActivitySketch;
+import com.cirestechnologies.demo.repository.UserActivitySketchRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distinct active users per day, week, month or any range of days, estimated from one {@link HyperLogLog} sketch of
+ * user ids per day of the server's time zone. A user is active on a day when it logs in or makes an authenticated
+ * request; recording one is a hash and, the first time a user is seen on a day (or rarely after), a register update.
+ * <p>
+ * The sketches of the current run are merged into their rows of {@code user_activity_sketches} every
+ * {@code cirestechnologies.demo.stats.active-users.flush-interval-ms}. Merging is idempotent, so the same sketch can be
+ * flushed any number of times and instances sharing the database add up: each merges into the stored row under a row
+ * lock. Of two instances inserting the same day at once, one fails its flush and merges the day at the next one.
+ * Estimates merge the stored sketches of the range with the ones not flushed yet. Days older than
+ * {@code cirestechnologies.demo.stats.active-users.retention-days} are deleted.
+ */
+@Service
+public class ActiveUserService {
+    private static final Logger logger = LoggerFactory.getLogger(ActiveUserService.class);
+
+    private final UserActivitySketchRepository sketchRepository;
+    private final TransactionTemplate transaction;
+
+    @Value("${cirestechnologies.demo.stats.active-users.flush-interval-ms:60000}")
+    private long flushIntervalMs = 60000;
+
+    @Value("${cirestechnologies.demo.stats.active-users.retention-days:400}")
+    private int retentionDays = 400;
+
+    // Sketches of this run, by day; only today's (and yesterday's until flushed) are kept
+    private final Map<LocalDate, HyperLogLog> sketches = new ConcurrentHashMap<>();
+    // Days whose sketch changed since it was last flushed
+    private final Set<LocalDate> dirty = ConcurrentHashMap.newKeySet();
+    private LocalDate prunedOn;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public ActiveUserService(UserActivitySketchRepository sketchRepository,
+                             PlatformTransactionManager transactionManager) {
+        this.sketchRepository = sketchRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        // The seeder run mode has no users logging in
+        if (!(event.getApplicationContext() instanceof WebApplicationContext)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "active-user-sketches");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            flushQuietly();
+        }
+    }
+
+    public void record(long userId) {
+        LocalDate today = LocalDate.now();
+        if (sketches.computeIfAbsent(today, day -> new HyperLogLog()).add(userId)) {
+            dirty.add(today);
+        }
+    }
+
+    /**
+     * Estimated number of distinct users active from {@code from} to {@code to}, both included.
+     */
+    public long estimate(LocalDate from, LocalDate to) {
+        HyperLogLog union = new HyperLogLog();
+        for (HyperLogLog sketch : load(from, to).values()) {
+            union.merge(sketch);
+        }
+        return union.estimate();
+    }
+
+    /**
+     * Estimated distinct users active today and over the last {@code days} days for each of {@code days} (ascending),
+     * e.g. 1, 7 and 30 for DAU, WAU and MAU, from a single read of the stored sketches.
+     */
+    public long[] estimateTrailing(LocalDate today, int... days) {
+        Map<LocalDate, HyperLogLog> loaded = load(today.minusDays(days[days.length - 1] - 1), today);
+        HyperLogLog union = new HyperLogLog();
+        long[] estimates = new long[days.length];
+        int merged = 0;
+        for (int i = 0; i < days.length; i++) {
+            for (; merged < days[i]; merged++) {
+                HyperLogLog sketch = loaded.get(today.minusDays(merged));
+                if (sketch != null) {
+                    union.merge(sketch);
+                }
+            }
+            estimates[i] = union.estimate();
+        }
+        return estimates;
+    }
+
+    public LocalDate retentionStart() {
+        return LocalDate.now().minusDays(retentionDays - 1);
+    }
+
+    /**
+     * Merge the changed sketches of this run into their stored rows, and delete the days past the retention period.
+     */
+    public synchronized void flush() {
+        LocalDate today = LocalDate.now();
+        for (LocalDate day : new ArrayList<>(dirty)) {
+            // Taken off before reading the sketch: a change after this marks the day again
+            dirty.remove(day);
+            HyperLogLog sketch = sketches.get(day);
+            try {
+                transaction.executeWithoutResult(status -> {
+                    UserActivitySketch stored = sketchRepository.findForUpdate(day).orElse(null);
+                    if (stored == null) {
+                        sketchRepository.save(new UserActivitySketch(day, sketch.toBytes()));
+                        return;
+                    }
+                    HyperLogLog merged = HyperLogLog.fromBytes(stored.getRegisters());
+                    merged.merge(sketch);
+                    stored.setRegisters(merged.toBytes());
+                });
+            } catch (RuntimeException e) {
+                dirty.add(day);
+                throw e;
+            }
+        }
+        sketches.keySet().removeIf(day -> day.isBefore(today.minusDays(1)) && !dirty.contains(day));
+        if (!today.equals(prunedOn)) {
+            transaction.executeWithoutResult(status -> sketchRepository.deleteBefore(retentionStart()));
+            prunedOn = today;
+        }
+    }
+
+    // Stored sketches of the range, merged with the ones of this run
+    private Map<LocalDate, HyperLogLog> load(LocalDate from, LocalDate to) {
+        Map<LocalDate, HyperLogLog> loaded = new HashMap<>();
+        for (UserActivitySketch stored : sketchRepository.findByDayBetween(from, to)) {
+            loaded.put(stored.getDay(), HyperLogLog.fromBytes(stored.getRegisters()));
+        }
+        sketches.forEach((day, sketch) -> {
+            if (!day.isBefore(from) && !day.isAfter(to)) {
+                loaded.computeIfAbsent(day, d -> new HyperLogLog()).merge(sketch);
+            }
+        });
+        return loaded;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Keep the schedule going: an exception would cancel the next runs
+            logger.warn("Active user sketches flush failed: {}", e.getMessage());
+        }
+    }
+}
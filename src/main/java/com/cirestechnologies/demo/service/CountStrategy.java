@@ -0,0 +1,28 @@
+package com.cirestechnologies.demo.service;
+
+import java.util.Locale;
+
+/**
+ * How the total of a user listing is computed, chosen by the client with the {@code count} parameter.
+ */
+public enum CountStrategy {
+    // Unfiltered: cached count kept current by user events. Filtered: COUNT(*) over the matches
+    EXACT,
+    // PostgreSQL planner estimate: pg_class.reltuples unfiltered, the plan's row estimate filtered
+    ESTIMATE,
+    // Counts at most cirestechnologies.demo.count.cap rows ("10,000+")
+    CAPPED,
+    // No count at all; the page only says whether there is a next one
+    NONE;
+
+    /**
+     * @throws IllegalArgumentException for unknown values
+     */
+    public static CountStrategy fromParam(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public String param() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,53 @@
+package com.cirestechnologies.demo.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Service;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hits, misses and size of each region of Hibernate's second-level cache (see {@code EntityCacheConfig}), since
+ * startup.
+ */
+@Service
+public class EntityCacheStatistics {
+    private final Statistics statistics;
+    private final CacheManager entityCacheManager;
+
+    public EntityCacheStatistics(EntityManagerFactory entityManagerFactory, CacheManager entityCacheManager) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.entityCacheManager = entityCacheManager;
+    }
+
+    public List<RegionStats> regions() {
+        String[] names = statistics.getSecondLevelCacheRegionNames();
+        Arrays.sort(names);
+        List<RegionStats> regions = new ArrayList<>(names.length);
+        for (String name : names) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(name);
+            if (region == null) {
+                continue;
+            }
+            long hits = region.getHitCount();
+            long misses = region.getMissCount();
+            regions.add(new RegionStats(name, entries(name), hits, misses, region.getPutCount(),
+                    hits + misses > 0 ? (double) hits / (hits + misses) : 0));
+        }
+        return regions;
+    }
+
+    private long entries(String region) {
+        Cache<Object, Object> cache = entityCacheManager.getCache(region);
+        return cache != null ? cache.unwrap(com.github.benmanes.caffeine.cache.Cache.class).estimatedSize() : -1;
+    }
+
+    public record RegionStats(String region, long entries, long hits, long misses, long puts, double hitRatio) {
+    }
+}
@@ -0,0 +1,14 @@
+package com.cirestechnologies.demo.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of {@link UserFacetIndex#counts}: the number of users matching the whole filter, and the values of each facet
+ * (keyed by its request parameter) with their number of users.
+ */
+public record FacetCounts(long total, Map<String, List<ValueCount>> facets) {
+
+    public record ValueCount(String value, long count) {
+    }
+}
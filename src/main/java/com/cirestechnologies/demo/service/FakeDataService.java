@@ -9,26 +9,68 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Generates realistic fake users.
+ * <p>
+ * Roles and the BCrypt hash of the shared default password are resolved once, each thread keeps its own
+ * {@link Faker}, and every user is derived only from {@code (seed, index)}, so bulk generation runs in parallel
+ * and the same seed always yields the same users regardless of thread scheduling.
+ */
 @Service
 public class FakeDataService {
-    @Autowired
-    RoleRepository roleRepository;
+    public static final String DEFAULT_PASSWORD = "password";
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final int MIN_AGE_DAYS = 18 * 365;
+    private static final int AGE_RANGE_DAYS = 47 * 365;
+
+    private final RoleRepository roleRepository;
+    private final PasswordEncoder encoder;
+
+    // Faker is not thread-safe and expensive to build, so each thread reuses one bound to a re-seedable Random
+    private final ThreadLocal<SeededFaker> fakers = ThreadLocal.withInitial(SeededFaker::new);
+
+    private volatile Role adminRole;
+    private volatile Role userRole;
+    private volatile String defaultPasswordHash;
 
     @Autowired
-    PasswordEncoder encoder;
+    public FakeDataService(RoleRepository roleRepository, PasswordEncoder encoder) {
+        this.roleRepository = roleRepository;
+        this.encoder = encoder;
+    }
 
     public User generateFakeUser() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return generateFakeUser(random.nextLong(), 0, random.nextBoolean(), LocalDate.now());
+    }
 
-        Role adminRole = roleRepository.findByName(ERole.ROLE_ADMIN)
-                .orElseGet(() -> roleRepository.save(new Role(ERole.ROLE_ADMIN)));
-        Role userRole = roleRepository.findByName(ERole.ROLE_USER)
-                .orElseGet(() -> roleRepository.save(new Role(ERole.ROLE_USER)));
+    /**
+     * Generate the user at position {@code index} of the sequence identified by {@code seed}.
+     * Birth dates are computed relative to {@code referenceDate} so the output does not depend on the clock.
+     */
+    public User generateFakeUser(long seed, long index, boolean admin, LocalDate referenceDate) {
+        SeededFaker seeded = fakers.get();
+        seeded.random.setSeed(rowSeed(seed, index));
+        Faker faker = seeded.faker;
 
-        Faker faker = new Faker();
         User user = new User();
         user.setFirstName(faker.name().firstName());
         user.setLastName(faker.name().lastName());
-        user.setBirthDate(faker.date().birthday());
+        user.setBirthDate(birthDate(seeded.random, referenceDate));
         user.setCity(faker.address().city());
         user.setCountry(faker.address().country());
         user.setAvatar(faker.internet().avatar());
@@ -37,11 +79,94 @@ public class FakeDataService {
         user.setMobile(faker.phoneNumber().cellPhone());
         user.setUsername(faker.name().username());
         user.setEmail(faker.internet().emailAddress());
-        user.setPassword(encoder.encode("password"));
-
-        ERole randomRole = faker.bool().bool() ? ERole.ROLE_ADMIN : ERole.ROLE_USER;
-        user.setRole(randomRole == ERole.ROLE_ADMIN ? adminRole : userRole);
+        user.setPassword(defaultPasswordHash());
+        user.setRole(admin ? adminRole() : userRole());
 
         return user;
     }
-}
\ No newline at end of file
+
+    /**
+     * Generate {@code count} users in parallel and hand them to {@code chunkConsumer} in order, one chunk at a time.
+     * The first {@code adminCount} users are admins. Only one chunk is held in memory at once.
+     */
+    public void generateUsers(long count, long adminCount, long seed, int chunkSize, Consumer<List<User>> chunkConsumer) {
+        generateUsers(0, count, seed, LocalDate.now(), index -> index < adminCount, chunkSize, chunkConsumer);
+    }
+
+    /**
+     * Generate the users at indexes {@code [firstIndex, firstIndex + count)} of the sequence identified by
+     * {@code seed}, in parallel chunks handed to {@code chunkConsumer} in index order.
+     */
+    public void generateUsers(long firstIndex, long count, long seed, LocalDate referenceDate, LongPredicate isAdmin,
+                              int chunkSize, Consumer<List<User>> chunkConsumer) {
+        // Resolve shared state up front instead of racing on it from the worker threads
+        adminRole();
+        userRole();
+        defaultPasswordHash();
+
+        long end = firstIndex + count;
+        for (long start = firstIndex; start < end; start += chunkSize) {
+            final long base = start;
+            int size = (int) Math.min(chunkSize, end - start);
+            User[] chunk = new User[size];
+
+            IntStream.range(0, size).parallel().forEach(i ->
+                    chunk[i] = generateFakeUser(seed, base + i, isAdmin.test(base + i), referenceDate));
+
+            chunkConsumer.accept(Arrays.asList(chunk));
+        }
+    }
+
+    /**
+     * Seed for row {@code index}: the index-th output of {@code new SplittableRandom(seed)}, computed directly so that
+     * any chunk can be generated independently of the others.
+     */
+    public static long rowSeed(long seed, long index) {
+        return new SplittableRandom(seed + index * GOLDEN_GAMMA).nextLong();
+    }
+
+    private static Date birthDate(Random random, LocalDate referenceDate) {
+        LocalDate birthDate = referenceDate.minusDays(MIN_AGE_DAYS + random.nextInt(AGE_RANGE_DAYS));
+        return Date.from(birthDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private Role adminRole() {
+        Role role = adminRole;
+        if (role == null) {
+            role = adminRole = resolveRole(ERole.ROLE_ADMIN);
+        }
+        return role;
+    }
+
+    private Role userRole() {
+        Role role = userRole;
+        if (role == null) {
+            role = userRole = resolveRole(ERole.ROLE_USER);
+        }
+        return role;
+    }
+
+    private Role resolveRole(ERole name) {
+        return roleRepository.findByName(name)
+                .orElseGet(() -> roleRepository.save(new Role(name)));
+    }
+
+    // BCrypt is deliberately slow, and every generated user shares the same password, so hash it only once
+    private String defaultPasswordHash() {
+        String hash = defaultPasswordHash;
+        if (hash == null) {
+            synchronized (this) {
+                hash = defaultPasswordHash;
+                if (hash == null) {
+                    hash = defaultPasswordHash = encoder.encode(DEFAULT_PASSWORD);
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static final class SeededFaker {
+        private final Random random = new Random();
+        private final Faker faker = new Faker(random);
+    }
+}
@@ -0,0 +1,142 @@
+package com.cirestechnologies.demo.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * HyperLogLog sketch of a set of longs (user ids): 2^14 registers of one byte, each holding the highest rank (leading
+ * zeros plus one) of the hashes that land on it. The estimate has a relative standard error of 1.04 / sqrt(2^14), about
+ * 0.81%, whatever the number of values: within 1.6% of the exact count 95% of the time. Up to about 40,000 values the
+ * estimate comes from the number of empty registers instead (linear counting).
+ * <p>
+ * Sketches merge by taking the maximum of each register, so the union of any number of sketches is a sketch of the
+ * union of their sets, and merging the same values twice changes nothing. Adding is thread-safe.
+ */
+public final class HyperLogLog {
+    public static final int PRECISION = 14;
+    public static final int REGISTERS = 1 << PRECISION;
+    public static final double RELATIVE_STANDARD_ERROR = 1.04 / Math.sqrt(REGISTERS);
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * Add {@code value}; returns whether the sketch changed.
+     */
+    public boolean add(long value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Leading zeros of the remaining 50 bits, plus one; the sentinel bit caps the rank at 51
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        // Most adds repeat a value already seen, or one that ranks lower: no lock for those
+        if (registers[index] >= rank) {
+            return false;
+        }
+        synchronized (this) {
+            if (registers[index] >= rank) {
+                return false;
+            }
+            registers[index] = rank;
+            return true;
+        }
+    }
+
+    public synchronized void merge(HyperLogLog other) {
+        byte[] otherRegisters = other.copyRegisters();
+        for (int i = 0; i < REGISTERS; i++) {
+            if (otherRegisters[i] > registers[i]) {
+                registers[i] = otherRegisters[i];
+            }
+        }
+    }
+
+    /**
+     * The estimated number of distinct values added.
+     */
+    public long estimate() {
+        byte[] snapshot = copyRegisters();
+        double sum = 0;
+        int empty = 0;
+        for (byte rank : snapshot) {
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                empty++;
+            }
+        }
+        double m = REGISTERS;
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && empty > 0) {
+            estimate = m * Math.log(m / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * The registers, deflated: about 1.5 KB for a sketch of a few hundred values, under 8 KB once every register is set.
+     */
+    public byte[] toBytes() {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(copyRegisters());
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code bytes} is not the output of {@link #toBytes()}
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            byte[] registers = new byte[REGISTERS];
+            int length = 0;
+            while (length < REGISTERS && !inflater.finished()) {
+                int inflated = inflater.inflate(registers, length, REGISTERS - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != REGISTERS || !inflater.finished()) {
+                throw new IllegalArgumentException("Not a HyperLogLog sketch of precision " + PRECISION);
+            }
+            return new HyperLogLog(registers);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Not a HyperLogLog sketch: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private synchronized byte[] copyRegisters() {
+        return registers.clone();
+    }
+
+    // MurmurHash3's 64-bit finalizer: consecutive ids spread over all bits
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,79 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.config.ReplicaRoutingDataSource;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Users who wrote through the application within the last
+ * {@code cirestechnologies.demo.datasource.read-your-writes-ms}, when reads are spread over replicas
+ * ({@code cirestechnologies.demo.datasource.replica-urls}). Their read-only transactions stay on the primary
+ * ({@link ReplicaRoutingDataSource}), so they read their own writes whatever the replication lag. A writer is the
+ * authenticated user of the request that made the write; anonymous writes (registration) only count towards
+ * {@link #readsMayLag()}.
+ */
+@Service
+public class RecentWriters {
+    private static final int MAX_WRITERS = 100_000;
+
+    private final boolean enabled;
+    private final long windowMs;
+    private final Cache<String, Boolean> writers;
+    private volatile long lastWriteAt;
+
+    public RecentWriters(@Value("${cirestechnologies.demo.datasource.replica-urls:}") String replicaUrls,
+                         @Value("${cirestechnologies.demo.datasource.read-your-writes-ms:5000}") long windowMs) {
+        this.enabled = !replicaUrls.isBlank();
+        this.windowMs = windowMs;
+        this.writers = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(windowMs))
+                .maximumSize(MAX_WRITERS)
+                .build();
+    }
+
+    /**
+     * Record a write by the current user.
+     */
+    public void recordWrite() {
+        if (!enabled) {
+            return;
+        }
+        lastWriteAt = System.currentTimeMillis();
+        String username = currentUsername();
+        if (username != null) {
+            writers.put(username, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Whether the current user wrote within the window, so that its reads have to go to the primary.
+     */
+    public boolean isCurrentUserRecentWriter() {
+        String username = currentUsername();
+        return username != null && writers.getIfPresent(username) != null;
+    }
+
+    /**
+     * Whether a write of the last window may not have reached the replicas yet. Results read meanwhile can miss it, so
+     * they must not be kept as current for the write generation of {@link UserService}.
+     */
+    public boolean readsMayLag() {
+        return enabled && System.currentTimeMillis() - lastWriteAt < windowMs;
+    }
+
+    private static String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+}
@@ -0,0 +1,39 @@
+package com.cirestechnologies.demo.service;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Width of the points of a stats time series, chosen by the client with the {@code granularity} parameter. Both follow
+ * the wall clock of the requested time zone, so a day around a daylight saving change lasts 23 or 25 hours.
+ */
+public enum StatsGranularity {
+    HOUR,
+    DAY;
+
+    /**
+     * @throws IllegalArgumentException for unknown values
+     */
+    public static StatsGranularity fromParam(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public String param() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Start of the point holding {@code time}.
+     */
+    public ZonedDateTime startOf(ZonedDateTime time) {
+        return this == HOUR ? time.truncatedTo(ChronoUnit.HOURS) : time.toLocalDate().atStartOfDay(time.getZone());
+    }
+
+    /**
+     * Start of the point after the one starting at {@code start}.
+     */
+    public ZonedDateTime next(ZonedDateTime start) {
+        return this == HOUR ? start.plusHours(1) : start.toLocalDate().plusDays(1).atStartOfDay(start.getZone());
+    }
+}
@@ -0,0 +1,9 @@
+package com.cirestechnologies.demo.service;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One point of a stats time series: the count of the hour or day starting at {@code start}.
+ */
+public record StatsPoint(OffsetDateTime start, long count) {
+}
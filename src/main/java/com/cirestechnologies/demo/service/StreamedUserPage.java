@@ -0,0 +1,8 @@
+package com.cirestechnologies.demo.service;
+
+/**
+ * What is known of a streamed user listing page once its rows have been written: whether there is a next page and
+ * the total ({@code null} for {@link CountStrategy#NONE}).
+ */
+public record StreamedUserPage(boolean hasNext, UserCount total) {
+}
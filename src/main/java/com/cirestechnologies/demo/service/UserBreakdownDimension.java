@@ -0,0 +1,65 @@
+package com.cirestechnologies.demo.service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Attributes the users can be broken down by in the statistics: three columns, and age bands derived from the birth
+ * date.
+ */
+public enum UserBreakdownDimension {
+    COUNTRY("country", "country"),
+    COMPANY("company", "company"),
+    JOB_POSITION("jobPosition", "job_position"),
+    AGE_BAND("ageBand", null);
+
+    /**
+     * Lower bounds of the age bands after the first; a band runs up to the next bound, the last one has none.
+     */
+    static final int[] AGE_BOUNDS = {18, 25, 35, 45, 55, 65};
+    static final List<String> AGE_BANDS =
+            List.of("under 18", "18-24", "25-34", "35-44", "45-54", "55-64", "65 and over");
+
+    private final String param;
+    private final String column;
+
+    UserBreakdownDimension(String param, String column) {
+        this.param = param;
+        this.column = column;
+    }
+
+    public String getParam() {
+        return param;
+    }
+
+    /**
+     * Column of the users table, {@code null} for the age bands.
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * @throws IllegalArgumentException for unknown values
+     */
+    public static UserBreakdownDimension fromParam(String value) {
+        for (UserBreakdownDimension dimension : values()) {
+            if (dimension.param.equalsIgnoreCase(value.trim())) {
+                return dimension;
+            }
+        }
+        throw new IllegalArgumentException(value);
+    }
+
+    /**
+     * First birth day of each band after the first as of {@code today}, oldest band last: someone born on or after
+     * {@code cutoffs[i]} is younger than {@code AGE_BOUNDS[i]}.
+     */
+    static LocalDate[] ageCutoffs(LocalDate today) {
+        LocalDate[] cutoffs = new LocalDate[AGE_BOUNDS.length];
+        for (int i = 0; i < AGE_BOUNDS.length; i++) {
+            cutoffs[i] = today.minusYears(AGE_BOUNDS[i]).plusDays(1);
+        }
+        return cutoffs;
+    }
+}
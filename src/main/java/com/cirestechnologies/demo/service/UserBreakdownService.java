@@ -0,0 +1,188 @@
+package com.cirestechnologies.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Breakdowns of the users by {@link UserBreakdownDimension}, the way a materialized view would serve them: one grouped
+ * query per dimension in the background every {@code cirestechnologies.demo.stats.breakdown.refresh-interval-ms}, and
+ * requests read the last complete snapshot, swapped in whole once a refresh is done. Only the
+ * {@link #MAX_VALUES} largest values of each dimension are kept, with the number of distinct values and of users.
+ * <p>
+ * A snapshot is as old as its refresh; {@link Snapshot#generation()} tells whether a user has been written through
+ * the application since.
+ */
+@Service
+public class UserBreakdownService {
+    private static final Logger logger = LoggerFactory.getLogger(UserBreakdownService.class);
+
+    public static final int MAX_VALUES = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserService userService;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${cirestechnologies.demo.stats.breakdown.refresh-interval-ms:600000}")
+    private long refreshIntervalMs = 600000;
+
+    // null until the first refresh completes
+    private volatile Snapshot snapshot;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public UserBreakdownService(JdbcTemplate jdbcTemplate, UserService userService,
+                                PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userService = userService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        // The seeder run mode exits right after its runners, it has no use for the breakdowns
+        if (!(event.getApplicationContext() instanceof WebApplicationContext)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-breakdown-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * The last complete snapshot, or {@code null} before the first refresh.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public long getRefreshIntervalMs() {
+        return refreshIntervalMs;
+    }
+
+    /**
+     * Recompute every breakdown and swap them in. Requests keep reading the previous snapshot meanwhile.
+     */
+    public synchronized void refresh() {
+        long start = System.currentTimeMillis();
+        // Read first: a write racing with the queries leaves the snapshot under an already outdated generation
+        long generation = userService.getWriteGeneration();
+        Map<UserBreakdownDimension, Breakdown> breakdowns = new EnumMap<>(UserBreakdownDimension.class);
+        // Read-only, so a read replica takes the grouped queries when there is one
+        readOnlyTransaction.executeWithoutResult(status -> {
+            for (UserBreakdownDimension dimension : UserBreakdownDimension.values()) {
+                breakdowns.put(dimension, dimension == UserBreakdownDimension.AGE_BAND
+                        ? ageBands(LocalDate.now())
+                        : topValues(dimension.getColumn()));
+            }
+        });
+        long millis = System.currentTimeMillis() - start;
+        snapshot = new Snapshot(breakdowns, Instant.now(), millis, generation);
+        logger.debug("User breakdowns refreshed in {} ms", millis);
+    }
+
+    // The window functions run over the groups: their number, and the users of all of them
+    private Breakdown topValues(String column) {
+        List<FacetCounts.ValueCount> values = new ArrayList<>();
+        long[] totals = {0, 0};
+        jdbcTemplate.query("SELECT " + column + ", count(*) AS users, count(*) OVER () AS distinct_values, " +
+                "sum(count(*)) OVER () AS total FROM users GROUP BY " + column + " " +
+                "ORDER BY users DESC, " + column + " LIMIT ?", rs -> {
+            values.add(new FacetCounts.ValueCount(rs.getString(1), rs.getLong(2)));
+            totals[0] = rs.getLong(3);
+            totals[1] = rs.getLong(4);
+        }, MAX_VALUES);
+        return new Breakdown(values, totals[0], totals[1]);
+    }
+
+    // Bands in age order, empty ones included; users without a birth date last, if any
+    private Breakdown ageBands(LocalDate today) {
+        LocalDate[] cutoffs = UserBreakdownDimension.ageCutoffs(today);
+        StringBuilder band = new StringBuilder("CASE WHEN birth_date IS NULL THEN -1");
+        Object[] args = new Object[cutoffs.length];
+        for (int i = 0; i < cutoffs.length; i++) {
+            band.append(" WHEN birth_date >= ? THEN ").append(i);
+            args[i] = Timestamp.valueOf(cutoffs[i].atStartOfDay());
+        }
+        band.append(" ELSE ").append(cutoffs.length).append(" END");
+
+        long[] counts = new long[UserBreakdownDimension.AGE_BANDS.size()];
+        long[] unknown = {0};
+        jdbcTemplate.query("SELECT band, count(*) FROM (SELECT " + band + " AS band FROM users) b GROUP BY band",
+                rs -> {
+                    int index = rs.getInt(1);
+                    if (index < 0) {
+                        unknown[0] = rs.getLong(2);
+                    } else {
+                        counts[index] = rs.getLong(2);
+                    }
+                }, args);
+
+        List<FacetCounts.ValueCount> values = new ArrayList<>();
+        long total = unknown[0];
+        for (int i = 0; i < counts.length; i++) {
+            values.add(new FacetCounts.ValueCount(UserBreakdownDimension.AGE_BANDS.get(i), counts[i]));
+            total += counts[i];
+        }
+        if (unknown[0] > 0) {
+            values.add(new FacetCounts.ValueCount(null, unknown[0]));
+        }
+        return new Breakdown(values, values.size(), total);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Keep the schedule going: an exception would cancel the next runs. The previous snapshot stays
+            logger.warn("User breakdown refresh failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The users of a dimension: its largest values (all bands for the age bands) with their number of users, the
+     * number of distinct values and the number of users.
+     */
+    public record Breakdown(List<FacetCounts.ValueCount> values, long distinctValues, long totalUsers) {
+    }
+
+    /**
+     * The breakdowns of one refresh: when it completed, how long it took, and the write generation of
+     * {@link UserService} it started at.
+     */
+    public record Snapshot(Map<UserBreakdownDimension, Breakdown> breakdowns, Instant refreshedAt, long refreshMillis,
+                           long generation) {
+    }
+}
@@ -0,0 +1,7 @@
+package com.cirestechnologies.demo.service;
+
+/**
+ * A total number of users; {@code exact} is false for estimates and for capped counts that reached the cap.
+ */
+public record UserCount(long value, boolean exact) {
+}
@@ -0,0 +1,158 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.event.UserChangedEvent;
+import com.cirestechnologies.demo.repository.UserFilter;
+import com.cirestechnologies.demo.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Totals for user listings, so a page request does not have to run a full COUNT(*) next to the page query.
+ * <p>
+ * The unfiltered total is counted once and then kept current by {@link UserChangedEvent}s. Writes that bypass the
+ * application (the seeder, manual SQL) are picked up when the cached value is older than
+ * {@code cirestechnologies.demo.count.exact-max-age-ms}. Totals of facet filters resolved by the {@link UserFacetIndex}
+ * are always exact.
+ */
+@Service
+public class UserCountService {
+    private static final String NATIVE_SEARCH_FROM = "FROM users u WHERE " + UserRepository.SEARCH_PATTERN_SQL;
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${cirestechnologies.demo.count.cap:10000}")
+    private int cap = 10000;
+
+    @Value("${cirestechnologies.demo.count.exact-max-age-ms:600000}")
+    private long exactMaxAgeMs = 600000;
+
+    // -1 until first counted
+    private final AtomicLong totalUsers = new AtomicLong(-1);
+    private volatile long totalCountedAt;
+
+    @Autowired
+    public UserCountService(UserRepository userRepository, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Total of the users matching {@code filter}, or {@code null} for {@link CountStrategy#NONE}.
+     */
+    public UserCount count(UserFilter filter, CountStrategy strategy) {
+        if (!filter.hasFacets()) {
+            return count(filter.searchPattern(), strategy);
+        }
+        if (strategy == CountStrategy.NONE) {
+            return null;
+        }
+        String pattern = filter.searchPattern();
+        long facetMatches = filter.facetMatchCount();
+        if (pattern == null && facetMatches >= 0) {
+            // The bitmap cardinality
+            return new UserCount(facetMatches, true);
+        }
+        if (facetMatches == 0) {
+            return new UserCount(0, true);
+        }
+        switch (strategy) {
+            case ESTIMATE:
+                if (pattern != null && facetMatches >= 0) {
+                    // Assumes the search and the facets are independent
+                    long total = Math.max(totalUsers(), 1);
+                    return new UserCount(Math.min(facetMatches, estimateMatches(pattern) * facetMatches / total), false);
+                }
+                // The facet index is still loading: there is no estimate for facets in SQL
+                return new UserCount(userRepository.countMatching(filter), true);
+            case CAPPED:
+                long matches = userRepository.countMatchingUpTo(filter, cap + 1);
+                return matches > cap ? new UserCount(cap, false) : new UserCount(matches, true);
+            default:
+                return new UserCount(userRepository.countMatching(filter), true);
+        }
+    }
+
+    /**
+     * Total of all users ({@code pattern == null}) or of those matching {@code pattern}, or {@code null} for
+     * {@link CountStrategy#NONE}.
+     *
+     * @param pattern a pattern from {@link UserService#likePattern}
+     */
+    private UserCount count(String pattern, CountStrategy strategy) {
+        switch (strategy) {
+            case EXACT:
+                return new UserCount(pattern == null ? totalUsers() : userRepository.countByPattern(pattern), true);
+            case ESTIMATE:
+                return new UserCount(pattern == null ? estimateTotalUsers() : estimateMatches(pattern), false);
+            case CAPPED:
+                if (pattern == null) {
+                    // The cached total is cheaper than any capped count
+                    return new UserCount(totalUsers(), true);
+                }
+                long matches = countMatchesUpToCap(pattern);
+                return matches > cap ? new UserCount(cap, false) : new UserCount(matches, true);
+            default:
+                return null;
+        }
+    }
+
+    public long totalUsers() {
+        if (totalUsers.get() < 0 || System.currentTimeMillis() - totalCountedAt > exactMaxAgeMs) {
+            synchronized (this) {
+                if (totalUsers.get() < 0 || System.currentTimeMillis() - totalCountedAt > exactMaxAgeMs) {
+                    // An event landing while this runs may be missed or counted twice; the next recount corrects it
+                    totalUsers.set(userRepository.count());
+                    totalCountedAt = System.currentTimeMillis();
+                }
+            }
+        }
+        return totalUsers.get();
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        switch (event.type()) {
+            case CREATED -> totalUsers.getAndUpdate(total -> total < 0 ? total : total + 1);
+            case DELETED -> totalUsers.getAndUpdate(total -> total < 0 ? total : total - 1);
+            default -> {
+            }
+        }
+    }
+
+    // Maintained by VACUUM/ANALYZE (including autovacuum); -1 for a table that has never been analyzed
+    private long estimateTotalUsers() {
+        Long estimate = jdbcTemplate.queryForObject(
+                "SELECT reltuples::bigint FROM pg_class WHERE oid = 'users'::regclass", Long.class);
+        return estimate != null && estimate >= 0 ? estimate : totalUsers();
+    }
+
+    // The planner's row estimate for the search, from the table statistics and pg_trgm's selectivity estimate
+    private long estimateMatches(String pattern) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) SELECT 1 " + NATIVE_SEARCH_FROM,
+                String.class, pattern, pattern, pattern, pattern, pattern);
+        try {
+            JsonNode root = objectMapper.readTree(plan);
+            return root.path(0).path("Plan").path("Plan Rows").asLong();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable query plan: " + e.getMessage(), e);
+        }
+    }
+
+    // Stops scanning after cap + 1 matches
+    private long countMatchesUpToCap(String pattern) {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM (SELECT 1 " + NATIVE_SEARCH_FROM + " LIMIT ?) t",
+                Long.class, pattern, pattern, pattern, pattern, pattern, cap + 1);
+        return count != null ? count : 0;
+    }
+}
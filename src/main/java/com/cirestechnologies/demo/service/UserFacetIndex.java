@@ -0,0 +1,425 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.event.UserChangedEvent;
+import com.cirestechnologies.demo.repository.UserFacet;
+import com.cirestechnologies.demo.repository.UserFacetFilter;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the {@link UserFacet}s: one compressed (Roaring) bitmap of user ids per facet value. A facet
+ * filter is a union of bitmaps per facet and an intersection across facets, and facet counts are bitmap
+ * cardinalities, so neither touches the database.
+ * <p>
+ * The index is loaded in the background once the application is ready (until then listings filter in SQL and
+ * {@link #counts} returns {@code null}) and kept current by {@link UserChangedEvent}s, each re-reading the facet values
+ * of the changed user. Writes that bypass the application (the seeder, manual SQL) are picked up by {@link #rebuild()},
+ * which runs at every startup. User ids must fit in an int.
+ */
+@Service
+public class UserFacetIndex {
+    private static final Logger logger = LoggerFactory.getLogger(UserFacetIndex.class);
+
+    private static final String SELECT = "SELECT u.id, r.name, u.enabled, u.country, u.company " +
+            "FROM users u LEFT JOIN roles r ON r.id = u.role_id ";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${cirestechnologies.demo.facets.batch-size:100000}")
+    private int batchSize = 100000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // null until the first build completes; replaced by rebuilds and changed under the write lock
+    private volatile Index index;
+
+    // Users changed while a build is reading the table, re-read once the new index is in place
+    private volatile boolean building;
+    private final Set<Integer> changedDuringBuild = ConcurrentHashMap.newKeySet();
+    // Serializes the read-then-apply of single users, so the last write to a user is also the last one applied
+    private final Object refreshMonitor = new Object();
+
+    @Autowired
+    public UserFacetIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        // The seeder run mode exits right after its runners, it has no use for the index
+        if (!(event.getApplicationContext() instanceof WebApplicationContext)) {
+            return;
+        }
+        Thread thread = new Thread(this::rebuild, "user-facet-index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * Load the whole index from the users table, in keyset-paginated batches, and swap it in. Queries keep using the
+     * previous index meanwhile. Builds run one at a time: a call during a build waits for it, then builds again.
+     */
+    public synchronized void rebuild() {
+        building = true;
+        try {
+            changedDuringBuild.clear();
+            long start = System.currentTimeMillis();
+
+            Index fresh = new Index();
+            long[] afterId = {0};
+            int read;
+            do {
+                int[] rows = {0};
+                jdbcTemplate.query(SELECT + "WHERE u.id > ? ORDER BY u.id LIMIT ?", rs -> {
+                    int id = userId(rs.getLong(1));
+                    fresh.set(id, facetValues(rs));
+                    afterId[0] = id;
+                    rows[0]++;
+                }, afterId[0], batchSize);
+                read = rows[0];
+            } while (read == batchSize);
+            fresh.compact();
+
+            lock.writeLock().lock();
+            try {
+                index = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (Integer id : changedDuringBuild) {
+                refresh(id);
+            }
+
+            logger.info("User facet index built: {} users in {} ms", fresh.all.getLongCardinality(),
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            logger.error("User facet index build failed, facets are filtered in SQL: {}", e.getMessage());
+        } finally {
+            building = false;
+        }
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        int id;
+        try {
+            id = userId(event.userId());
+        } catch (ArithmeticException e) {
+            return;
+        }
+        if (building) {
+            changedDuringBuild.add(id);
+        }
+        if (event.type() == UserChangedEvent.Type.DELETED) {
+            apply(id, null);
+        } else if (index != null) {
+            refresh(id);
+        }
+    }
+
+    /**
+     * The ids of the users matching {@code filter} (all users for an empty filter), or {@code null} while the index is
+     * not loaded. The bitmap belongs to the caller.
+     */
+    public RoaringBitmap match(UserFacetFilter filter) {
+        lock.readLock().lock();
+        try {
+            return index != null ? index.match(filter) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The users matching {@code filter} and, for every facet, its {@code limit} values with the most users among those
+     * matching the selection on the other facets (the selected values of the facet are always listed). Counting each
+     * facet without its own selection tells how many users every alternative value would add. {@code null} while the
+     * index is not loaded.
+     */
+    public FacetCounts counts(UserFacetFilter filter, int limit) {
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return null;
+            }
+            Map<String, List<FacetCounts.ValueCount>> facets = new LinkedHashMap<>();
+            for (UserFacet facet : UserFacet.values()) {
+                UserFacetFilter others = filter.without(facet);
+                RoaringBitmap among = others.isEmpty() ? null : index.match(others);
+                if (among != null && among.getLongCardinality() == index.all.getLongCardinality()) {
+                    // Everyone matches, the per-value totals are the counts
+                    among = null;
+                }
+                facets.put(facet.getParam(), index.columns.get(facet).count(among, filter.values(facet), limit));
+            }
+            return new FacetCounts(index.match(filter).getLongCardinality(), facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void refresh(int id) {
+        synchronized (refreshMonitor) {
+            List<String[]> rows = jdbcTemplate.query(SELECT + "WHERE u.id = ?", (rs, rowNum) -> facetValues(rs), id);
+            apply(id, rows.isEmpty() ? null : rows.get(0));
+        }
+    }
+
+    private void apply(int id, String[] values) {
+        lock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.set(id, values);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Values by facet ordinal, as UserFacet#normalize would return them
+    private static String[] facetValues(ResultSet rs) throws SQLException {
+        String[] values = new String[UserFacet.values().length];
+        values[UserFacet.ROLE.ordinal()] = rs.getString(2);
+        boolean enabled = rs.getBoolean(3);
+        values[UserFacet.ENABLED.ordinal()] = rs.wasNull() ? null : Boolean.toString(enabled);
+        values[UserFacet.COUNTRY.ordinal()] = rs.getString(4);
+        values[UserFacet.COMPANY.ordinal()] = rs.getString(5);
+        return values;
+    }
+
+    private static int userId(long id) {
+        return Math.toIntExact(id);
+    }
+
+    /**
+     * All users plus one {@link Column} per facet.
+     */
+    private static final class Index {
+        private final RoaringBitmap all = new RoaringBitmap();
+        private final Map<UserFacet, Column> columns = new EnumMap<>(UserFacet.class);
+
+        private Index() {
+            for (UserFacet facet : UserFacet.values()) {
+                columns.put(facet, new Column());
+            }
+        }
+
+        // null values remove the user
+        private void set(int id, String[] values) {
+            if (values == null) {
+                all.remove(id);
+            } else {
+                all.add(id);
+            }
+            for (UserFacet facet : UserFacet.values()) {
+                columns.get(facet).set(id, values != null ? values[facet.ordinal()] : null);
+            }
+        }
+
+        private RoaringBitmap match(UserFacetFilter filter) {
+            if (filter.isEmpty()) {
+                return all.clone();
+            }
+            List<RoaringBitmap> unions = new ArrayList<>(filter.facets().size());
+            for (UserFacet facet : filter.facets()) {
+                unions.add(columns.get(facet).union(filter.values(facet)));
+            }
+            if (unions.size() == 1) {
+                return unions.get(0).clone();
+            }
+            // Smallest first, so every intersection is at most as large as it
+            unions.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+            RoaringBitmap result = RoaringBitmap.and(unions.get(0), unions.get(1));
+            for (int i = 2; i < unions.size() && !result.isEmpty(); i++) {
+                result.and(unions.get(i));
+            }
+            return result;
+        }
+
+        private void compact() {
+            all.runOptimize();
+            for (Column column : columns.values()) {
+                column.compact();
+            }
+        }
+    }
+
+    /**
+     * The values of one facet, numbered in order of appearance, with a bitmap and a count of users per value, and the
+     * value of every user (to find the bitmap to remove a user from when its value changes, and to count values among
+     * a set of users).
+     */
+    private static final class Column {
+        private static final Comparator<FacetCounts.ValueCount> LEAST_FIRST =
+                Comparator.comparingLong(FacetCounts.ValueCount::count)
+                        .thenComparing(FacetCounts.ValueCount::value, Comparator.reverseOrder());
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final List<RoaringBitmap> bitmaps = new ArrayList<>();
+        private int[] userCounts = new int[16];
+        // Code + 1 of each user's value, by user id; 0 for users without a value
+        private int[] codeByUser = new int[0];
+
+        private void set(int id, String value) {
+            int previous = id < codeByUser.length ? codeByUser[id] - 1 : -1;
+            int code = value != null ? code(value) : -1;
+            if (code == previous) {
+                return;
+            }
+            if (previous >= 0) {
+                bitmaps.get(previous).remove(id);
+                userCounts[previous]--;
+            }
+            if (code >= 0) {
+                bitmaps.get(code).add(id);
+                userCounts[code]++;
+                if (id >= codeByUser.length) {
+                    codeByUser = Arrays.copyOf(codeByUser, Math.max(id + 1, codeByUser.length + (codeByUser.length >> 1)));
+                }
+            }
+            if (id < codeByUser.length) {
+                codeByUser[id] = code + 1;
+            }
+        }
+
+        private int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+                bitmaps.add(new RoaringBitmap());
+                if (code == userCounts.length) {
+                    userCounts = Arrays.copyOf(userCounts, code + (code >> 1));
+                }
+            }
+            return code;
+        }
+
+        // The users with one of the selected values; the bitmap of a single value is returned as is
+        private RoaringBitmap union(Set<String> selected) {
+            List<RoaringBitmap> matching = new ArrayList<>(selected.size());
+            for (String value : selected) {
+                Integer code = codes.get(value);
+                if (code != null) {
+                    matching.add(bitmaps.get(code));
+                }
+            }
+            if (matching.size() == 1) {
+                return matching.get(0);
+            }
+            RoaringBitmap union = new RoaringBitmap();
+            for (RoaringBitmap users : matching) {
+                union.or(users);
+            }
+            return union;
+        }
+
+        // Top values by number of users among `among` (everyone when null), then the selected values not in the top.
+        // Costs O(values) for everyone and O(among) otherwise, visiting the users' values rather than intersecting
+        // every value's bitmap with `among`
+        private List<FacetCounts.ValueCount> count(RoaringBitmap among, Set<String> selected, int limit) {
+            PriorityQueue<FacetCounts.ValueCount> top = new PriorityQueue<>(LEAST_FIRST);
+            int[] counts;
+            if (among == null) {
+                counts = userCounts;
+            } else if (among.getLongCardinality() * 8 >= values.size()) {
+                counts = new int[values.size()];
+                for (IntIterator it = among.getIntIterator(); it.hasNext(); ) {
+                    int id = it.next();
+                    if (id < codeByUser.length && codeByUser[id] > 0) {
+                        counts[codeByUser[id] - 1]++;
+                    }
+                }
+            } else {
+                // Far fewer users than values (e.g. companies of one country): sort their values instead
+                counts = null;
+                int[] userCodes = new int[among.getCardinality()];
+                int users = 0;
+                for (IntIterator it = among.getIntIterator(); it.hasNext(); ) {
+                    int id = it.next();
+                    if (id < codeByUser.length && codeByUser[id] > 0) {
+                        userCodes[users++] = codeByUser[id] - 1;
+                    }
+                }
+                Arrays.sort(userCodes, 0, users);
+                for (int i = 0; i < users; ) {
+                    int j = i;
+                    while (j < users && userCodes[j] == userCodes[i]) {
+                        j++;
+                    }
+                    offer(top, userCodes[i], j - i, limit);
+                    i = j;
+                }
+            }
+            if (counts != null) {
+                for (int code = 0; code < values.size(); code++) {
+                    offer(top, code, counts[code], limit);
+                }
+            }
+
+            List<FacetCounts.ValueCount> result = new ArrayList<>(top);
+            result.sort(LEAST_FIRST.reversed());
+            for (String value : selected) {
+                if (result.stream().noneMatch(count -> count.value().equals(value))) {
+                    Integer code = codes.get(value);
+                    long users = code == null ? 0 : among != null
+                            ? RoaringBitmap.andCardinality(bitmaps.get(code), among)
+                            : userCounts[code];
+                    result.add(new FacetCounts.ValueCount(value, users));
+                }
+            }
+            return result;
+        }
+
+        // Only allocates for values that make it into the top
+        private void offer(PriorityQueue<FacetCounts.ValueCount> top, int code, long users, int limit) {
+            if (users == 0 || limit <= 0) {
+                return;
+            }
+            if (top.size() == limit) {
+                FacetCounts.ValueCount least = top.peek();
+                if (users < least.count() || (users == least.count() && values.get(code).compareTo(least.value()) > 0)) {
+                    return;
+                }
+                top.poll();
+            }
+            top.add(new FacetCounts.ValueCount(values.get(code), users));
+        }
+
+        private void compact() {
+            for (RoaringBitmap bitmap : bitmaps) {
+                bitmap.runOptimize();
+                bitmap.trim();
+            }
+        }
+    }
+}
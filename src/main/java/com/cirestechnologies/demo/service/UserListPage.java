@@ -0,0 +1,9 @@
+package com.cirestechnologies.demo.service;
+
+import java.util.List;
+
+/**
+ * One page of a user listing; {@code total} is {@code null} when the client asked for {@link CountStrategy#NONE}.
+ */
+public record UserListPage<T>(List<T> users, boolean hasNext, UserCount total) {
+}
@@ -0,0 +1,129 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.payload.response.UserRow;
+import com.cirestechnologies.demo.payload.response.UserView;
+import com.cirestechnologies.demo.repository.CursorPage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of filtered listing results (pages and totals), for admins paging back and forth over the same
+ * search. Entries are keyed by the write generation of {@link UserService} next to the request, so a user write makes
+ * every cached result unreachable at once: stale pages are never served and no entry has to be invalidated by key.
+ * The first lookup of a new generation drops the unreachable entries to give their memory back.
+ * <p>
+ * The bound is an estimate of the bytes held by the results ({@code cirestechnologies.demo.page-cache.max-bytes}),
+ * least recently and least frequently used results going first.
+ */
+@Service
+public class UserPageCache {
+    private final Cache<Key, Object> cache;
+    private final long maxBytes;
+    // Generation of the most recent lookup; older entries are unreachable
+    private final AtomicLong generation = new AtomicLong(-1);
+
+    public UserPageCache(@Value("${cirestechnologies.demo.page-cache.max-bytes:33554432}") long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, Object value) -> (int) Math.min(Integer.MAX_VALUE, key.bytes() + bytes(value)))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * The cached result for {@code keyParts} at {@code writeGeneration}, or the one {@code loader} computes. The
+     * generation must be read before the result is computed, so that a write racing with the query leaves the result
+     * under an already outdated generation.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(long writeGeneration, Supplier<T> loader, Object... keyParts) {
+        long previous = generation.getAndAccumulate(writeGeneration, Math::max);
+        if (writeGeneration > previous && previous >= 0) {
+            cache.invalidateAll();
+        }
+        Key key = new Key(writeGeneration, Arrays.asList(keyParts));
+        Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return (T) cached;
+        }
+        T value = loader.get();
+        // Not worth keeping once a write has moved the generation on
+        if (value != null && generation.get() == writeGeneration) {
+            cache.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Hit ratio and estimated memory use since startup.
+     */
+    public Stats stats() {
+        CacheStats stats = cache.stats();
+        long usedBytes = cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+        return new Stats(cache.estimatedSize(), usedBytes, maxBytes, stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.evictionCount());
+    }
+
+    public record Stats(long entries, long usedBytes, long maxBytes, long hits, long misses, double hitRatio,
+                        long evictions) {
+    }
+
+    private record Key(long generation, List<Object> parts) {
+        private long bytes() {
+            long bytes = 64;
+            for (Object part : parts) {
+                bytes += part instanceof String value ? 40 + value.length() : 16;
+            }
+            return bytes;
+        }
+    }
+
+    // Rough retained size: object headers and references of the result, and the characters of its strings (compact,
+    // one byte each for Latin-1 text). Values shared between results (roles, interned field sets) are not counted
+    static long bytes(Object value) {
+        if (value instanceof UserListPage<?> page) {
+            return 32 + bytes(page.users()) + (page.total() != null ? 24 : 0);
+        }
+        if (value instanceof CursorPage<?> page) {
+            return 32 + bytes(page.content()) + bytes(page.nextCursor()) + bytes(page.prevCursor());
+        }
+        if (value instanceof List<?> list) {
+            long bytes = 24 + 16 + 4L * list.size();
+            for (Object element : list) {
+                bytes += bytes(element);
+            }
+            return bytes;
+        }
+        if (value instanceof UserView user) {
+            return 88 + bytes(user.id()) + bytes(user.username()) + bytes(user.email()) + bytes(user.firstName())
+                    + bytes(user.lastName()) + bytes(user.birthDate()) + bytes(user.city()) + bytes(user.country())
+                    + bytes(user.company()) + bytes(user.jobPosition()) + bytes(user.mobile()) + bytes(user.avatar())
+                    + (user.role() != null ? 16 : 0) + bytes(user.createdAt()) + bytes(user.lastLogin())
+                    + bytes(user.version());
+        }
+        if (value instanceof UserRow row) {
+            long bytes = 24 + 16 + 4L * row.values().length;
+            for (Object field : row.values()) {
+                bytes += bytes(field);
+            }
+            return bytes;
+        }
+        if (value instanceof String string) {
+            return 40 + string.length();
+        }
+        if (value instanceof Date) {
+            return 24;
+        }
+        return value == null || value instanceof Enum<?> ? 0 : 16;
+    }
+}
@@ -0,0 +1,214 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.model.User;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Bulk-loads generated users straight into PostgreSQL with {@code COPY ... FROM STDIN}, bypassing JPA. Ids are
+ * reserved from {@code users_id_seq} in the same blocks the application uses, so they stay dense and never collide
+ * with ids handed out by a running instance.
+ * <p>
+ * Rows are fully determined by {@code (seedValue, index)}: the same arguments always produce the same users,
+ * and usernames and emails carry a suffix derived from the row index so they are unique across the whole run
+ * (and across runs that use non-overlapping index ranges).
+ */
+@Service
+public class UserSeedService {
+    private static final Logger logger = LoggerFactory.getLogger(UserSeedService.class);
+
+    private static final String COPY_SQL = "COPY users (id, username, email, password, first_name, last_name, "
+            + "birth_date, city, country, company, job_position, mobile, avatar, role_id, enabled, created_at) FROM STDIN";
+    // Blocks of User#ID_ALLOCATION_SIZE ids, taken from the sequence the way Hibernate's pooled-lo optimizer does
+    private static final String ID_BLOCKS_SQL = "SELECT nextval('users_id_seq') FROM generate_series(1, ?)";
+
+    // The @Size limits of User. COPY skips bean validation and the columns would take longer values, but a seeded user
+    // over these limits could not be saved through the entity again
+    private static final int MAX_EMAIL_LENGTH = 50;
+    private static final int MAX_NAME_LENGTH = 20;
+
+    // Separate streams so changing the admin ratio does not change any other column
+    private static final long ADMIN_STREAM = 0x41444d494e5f5f5fL;
+    private static final long CREATED_AT_STREAM = 0x435245415445445fL;
+    private static final int CREATED_AT_RANGE_SECONDS = 365 * 24 * 3600;
+
+    private final DataSource dataSource;
+    private final FakeDataService fakeDataService;
+
+    @Autowired
+    public UserSeedService(DataSource dataSource, FakeDataService fakeDataService) {
+        this.dataSource = dataSource;
+        this.fakeDataService = fakeDataService;
+    }
+
+    /**
+     * Insert {@code count} users with indexes starting at {@code firstIndex}, committing every {@code batchSize} rows.
+     * Creation dates are spread over the year before {@code referenceDate}.
+     *
+     * @return the number of rows inserted
+     */
+    public long seed(long count, long firstIndex, long seedValue, double adminRatio, LocalDate referenceDate,
+                     int batchSize) throws SQLException {
+        long inserted = 0;
+        long started = System.nanoTime();
+        LocalDateTime createdAtEnd = referenceDate.atStartOfDay();
+        ZoneId zone = ZoneId.systemDefault();
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+            while (inserted < count) {
+                long batchStart = firstIndex + inserted;
+                long batchCount = Math.min(batchSize, count - inserted);
+
+                long[] idBlocks = reserveIdBlocks(connection, batchCount);
+
+                // One COPY per batch: each batch commits on its own, so progress survives an interrupted run
+                CopyIn copyIn = copyManager.copyIn(COPY_SQL);
+                try {
+                    StringBuilder rows = new StringBuilder(FakeDataService.DEFAULT_CHUNK_SIZE * 320);
+                    long[] position = {batchStart};
+                    fakeDataService.generateUsers(batchStart, batchCount, seedValue, referenceDate,
+                            index -> isAdmin(seedValue, index, adminRatio), FakeDataService.DEFAULT_CHUNK_SIZE,
+                            chunk -> {
+                                // Chunks arrive in index order
+                                writeChunk(copyIn, rows, chunk, idBlocks, position[0] - batchStart, position[0],
+                                        seedValue, createdAtEnd, zone);
+                                position[0] += chunk.size();
+                            });
+                    copyIn.endCopy();
+                } finally {
+                    if (copyIn.isActive()) {
+                        copyIn.cancelCopy();
+                    }
+                }
+
+                inserted += batchCount;
+                double seconds = (System.nanoTime() - started) / 1e9;
+                logger.info("Seeded {}/{} users ({} users/s)", inserted, count, String.format("%.0f", inserted / seconds));
+            }
+        }
+
+        return inserted;
+    }
+
+    // First ids of the blocks holding count rows
+    private static long[] reserveIdBlocks(Connection connection, long count) throws SQLException {
+        int blocks = (int) ((count + User.ID_ALLOCATION_SIZE - 1) / User.ID_ALLOCATION_SIZE);
+        long[] starts = new long[blocks];
+        try (PreparedStatement statement = connection.prepareStatement(ID_BLOCKS_SQL)) {
+            statement.setInt(1, blocks);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                for (int i = 0; resultSet.next(); i++) {
+                    starts[i] = resultSet.getLong(1);
+                }
+            }
+        }
+        return starts;
+    }
+
+    private static void writeChunk(CopyIn copyIn, StringBuilder rows, List<User> chunk, long[] idBlocks, long firstRow,
+                                   long firstIndex, long seedValue, LocalDateTime createdAtEnd, ZoneId zone) {
+        rows.setLength(0);
+        long row = firstRow;
+        long index = firstIndex;
+        for (User user : chunk) {
+            rows.append(idBlocks[(int) (row / User.ID_ALLOCATION_SIZE)] + row % User.ID_ALLOCATION_SIZE).append('\t');
+            appendRow(rows, user, index++, seedValue, createdAtEnd, zone);
+            row++;
+        }
+
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+        } catch (SQLException e) {
+            throw new IllegalStateException("COPY into users failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static void appendRow(StringBuilder row, User user, long index, long seedValue,
+                                  LocalDateTime createdAtEnd, ZoneId zone) {
+        String suffix = Long.toString(index, 36);
+
+        String username = user.getUsername().toLowerCase(Locale.ROOT) + "." + suffix;
+        String email = uniqueEmail(user.getEmail().toLowerCase(Locale.ROOT), suffix);
+
+        long createdAtOffset = new SplittableRandom(FakeDataService.rowSeed(seedValue ^ CREATED_AT_STREAM, index))
+                .nextInt(CREATED_AT_RANGE_SECONDS);
+        LocalDateTime createdAt = createdAtEnd.minusSeconds(createdAtOffset + 1);
+
+        appendField(row, username).append('\t');
+        appendField(row, email).append('\t');
+        appendField(row, user.getPassword()).append('\t');
+        appendField(row, truncate(user.getFirstName(), MAX_NAME_LENGTH)).append('\t');
+        appendField(row, truncate(user.getLastName(), MAX_NAME_LENGTH)).append('\t');
+        row.append(LocalDateTime.ofInstant(user.getBirthDate().toInstant(), zone)).append('\t');
+        appendField(row, user.getCity()).append('\t');
+        appendField(row, user.getCountry()).append('\t');
+        appendField(row, user.getCompany()).append('\t');
+        appendField(row, user.getJobPosition()).append('\t');
+        appendField(row, user.getMobile()).append('\t');
+        appendField(row, user.getAvatar()).append('\t');
+        row.append(user.getRole().getId()).append('\t');
+        row.append('t').append('\t');
+        row.append(createdAt).append('\n');
+    }
+
+    private static boolean isAdmin(long seedValue, long index, double adminRatio) {
+        return new SplittableRandom(FakeDataService.rowSeed(seedValue ^ ADMIN_STREAM, index)).nextDouble() < adminRatio;
+    }
+
+    // local.part.suffix@domain, shortening the local part when needed to stay within the column size
+    private static String uniqueEmail(String email, String suffix) {
+        int at = email.lastIndexOf('@');
+        String local = at > 0 ? email.substring(0, at) : email;
+        String domain = at > 0 ? email.substring(at) : "@example.com";
+
+        int maxLocal = MAX_EMAIL_LENGTH - domain.length() - suffix.length() - 1;
+        if (local.length() > maxLocal) {
+            local = local.substring(0, Math.max(1, maxLocal));
+        }
+        return local + "." + suffix + domain;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    // COPY text format: backslash, tab, newline and carriage return must be escaped
+    private static StringBuilder appendField(StringBuilder row, String value) {
+        if (value == null) {
+            return row.append("\\N");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> row.append("\\\\");
+                case '\t' -> row.append("\\t");
+                case '\n' -> row.append("\\n");
+                case '\r' -> row.append("\\r");
+                default -> row.append(c);
+            }
+        }
+        return row;
+    }
+}
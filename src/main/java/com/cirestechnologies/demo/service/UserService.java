@@ -1,37 +1,122 @@
 package com.cirestechnologies.demo.service;
 
+import com.cirestechnologies.demo.event.UserChangedEvent;
 import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.model.Role;
 import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.payload.response.UserField;
+import com.cirestechnologies.demo.payload.response.UserFieldSet;
+import com.cirestechnologies.demo.payload.response.UserRow;
+import com.cirestechnologies.demo.payload.response.UserView;
+import com.cirestechnologies.demo.repository.CursorPage;
+import com.cirestechnologies.demo.repository.UserCursor;
+import com.cirestechnologies.demo.repository.UserFacetFilter;
+import com.cirestechnologies.demo.repository.UserFilter;
 import com.cirestechnologies.demo.repository.UserRepository;
+import com.cirestechnologies.demo.repository.UserSortField;
+import com.cirestechnologies.demo.repository.UserStatsKey;
+import com.cirestechnologies.demo.repository.UserVersion;
+import org.hibernate.Hibernate;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 public class UserService {
+    // Facet matches up to this many users are queried by id; larger ones through the facet columns. The limit is
+    // higher next to a search: PostgreSQL would walk the sort index until enough rows pass both the search and a
+    // selective facet, while an id list lets it probe the primary key
+    static final int MAX_FACET_IDS = 1000;
+    static final int MAX_SEARCH_FACET_IDS = 10000;
 
     private final UserRepository userRepository;
+    private final UserCountService userCountService;
+    private final UserFacetIndex userFacetIndex;
+    private final UserSuggestIndex userSuggestIndex;
+    private final UserPageCache userPageCache;
+    private final RecentWriters recentWriters;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    @Value("${cirestechnologies.demo.stream.fetch-size:250}")
+    private int streamFetchSize = 250;
+
+    // Bumped by every user mutation, so derived data (export artifacts, caches) can tell whether it is still current
+    private final AtomicLong writeGeneration = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, UserCountService userCountService, UserFacetIndex userFacetIndex,
+                       UserSuggestIndex userSuggestIndex, UserPageCache userPageCache, RecentWriters recentWriters,
+                       ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
+        this.userCountService = userCountService;
+        this.userFacetIndex = userFacetIndex;
+        this.userSuggestIndex = userSuggestIndex;
+        this.userPageCache = userPageCache;
+        this.recentWriters = recentWriters;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
     }
 
+    // Entities are loaded to be changed and saved, so they are read in a read-write transaction, from the primary:
+    // a replica lagging behind would hand out an outdated version and the save would fail its optimistic lock check.
+    // Views, rows and versions are read-only and may come from a replica
     public Optional<User> findByUsername(String username) {
-        return userRepository.findByUsername(username);
+        return writeTransaction.execute(status -> userRepository.findByUsername(username));
     }
 
+    // By username first, a natural id lookup the second-level cache can answer; email is not a natural id
     public Optional<User> findByUsernameOrEmail(String username, String email) {
-        return userRepository.findByUsernameOrEmail(username, email);
+        return writeTransaction.execute(status -> (username != null
+                ? userRepository.findByUsername(username) : Optional.<User>empty())
+                .or(() -> email != null ? userRepository.findByEmail(email) : Optional.empty()));
     }
 
     public Optional<User> findById(Long id) {
-        return userRepository.findById(id);
+        return writeTransaction.execute(status -> userRepository.findById(id));
+    }
+
+    public Optional<UserView> findViewById(Long id) {
+        return userRepository.findViewById(id);
+    }
+
+    public Optional<UserView> findViewByUsername(String username) {
+        return userRepository.findViewByUsername(username);
+    }
+
+    public Optional<UserRow> findRowByUsername(String username, UserFieldSet fields) {
+        return userRepository.findRowByUsername(fields, username);
+    }
+
+    public Optional<UserVersion> findVersionById(Long id) {
+        return userRepository.findVersionById(id);
+    }
+
+    public Optional<UserVersion> findVersionByUsername(String username) {
+        return userRepository.findVersionByUsername(username);
     }
 
     public Boolean existsByUsername(String username) {
@@ -42,36 +127,310 @@ public class UserService {
         return userRepository.existsByEmail(email);
     }
 
+    // Writes run in one read-write transaction, so the state before the change is read from the primary even when
+    // reads go to replicas
     public User save(User user) {
-        return userRepository.save(user);
+        boolean created = user.getId() == null;
+        UserStatsKey[] before = {null};
+        User saved = writeTransaction.execute(status -> {
+            before[0] = created ? null : userRepository.findStatsKeyById(user.getId()).orElse(null);
+            return userRepository.save(user);
+        });
+        eventPublisher.publishEvent(new UserChangedEvent(
+                created ? UserChangedEvent.Type.CREATED : UserChangedEvent.Type.UPDATED, saved.getId(),
+                before[0], statsKey(user, saved, before[0])));
+        recordWrite();
+        return saved;
+    }
+
+    /**
+     * Insert new users in one transaction, so their INSERTs go out in JDBC batches rather than one round trip each.
+     * Change events are published once the transaction has committed.
+     */
+    public List<User> createAll(List<User> users) {
+        List<User> saved = writeTransaction.execute(status -> userRepository.saveAll(users));
+        for (int i = 0; i < saved.size(); i++) {
+            eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.CREATED, saved.get(i).getId(),
+                    null, statsKey(users.get(i), saved.get(i), null)));
+        }
+        recordWrite();
+        return saved;
     }
 
     public void deleteById(Long id) {
-        userRepository.deleteById(id);
+        UserStatsKey before = writeTransaction.execute(status -> {
+            UserStatsKey key = userRepository.findStatsKeyById(id).orElse(null);
+            userRepository.deleteById(id);
+            return key;
+        });
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DELETED, id, before, null));
+        recordWrite();
+    }
+
+    // The role as set on the saved user: the copy a merge returns may hold it behind a proxy that can no longer be
+    // loaded. A role still behind an uninitialized proxy was loaded with the user and not replaced, so it is the one
+    // before
+    private static UserStatsKey statsKey(User user, User saved, UserStatsKey before) {
+        Role role = user.getRole();
+        ERole roleName;
+        if (role == null) {
+            roleName = null;
+        } else if (Hibernate.isInitialized(role) || before == null) {
+            roleName = role.getName();
+        } else {
+            roleName = before.role();
+        }
+        return new UserStatsKey(roleName, saved.getCreatedAt(), saved.getLastLogin());
+    }
+
+    // Once the change events are published, so the in-memory indexes (facets, counts, suggestions) have it: a listing
+    // resolved from them before that is computed under the previous generation, and retired by this one
+    private void recordWrite() {
+        writeGeneration.incrementAndGet();
+        recentWriters.recordWrite();
+    }
+
+    public long getWriteGeneration() {
+        return writeGeneration.get();
+    }
+
+    /**
+     * Version of the user collection as a whole, for ETags of listings: changes with every user write made through
+     * this service. The start time of this instance keeps generations of different runs apart. Null while reads may
+     * lag behind a write (see {@link RecentWriters}): a listing read now may come from a replica that has not seen it,
+     * and must not be tagged, nor revalidated, as current.
+     */
+    public String getCollectionVersion() {
+        if (recentWriters.readsMayLag()) {
+            return null;
+        }
+        return Long.toString(startedAt, 36) + "." + writeGeneration.get();
     }
 
     public Page<User> findAll(Pageable pageable) {
         return userRepository.findAll(pageable);
     }
 
-    public Page<User> searchUsers(String search, Pageable pageable) {
-        return userRepository.searchUsers(search, pageable);
+    /**
+     * One page of users (optionally matching {@code search} and {@code facets}), with a total computed according to
+     * {@code countStrategy}.
+     */
+    public UserListPage<UserView> findUsers(String search, UserFacetFilter facets, Pageable pageable,
+                                            CountStrategy countStrategy) {
+        return cached(search, facets, () -> {
+            UserFilter filter = filter(search, facets);
+            return listPage(userRepository.findViewSlice(filter, pageable), filter, countStrategy);
+        }, "views", pageable, countStrategy);
     }
 
-    public long count() {
-        return userRepository.count();
+    /**
+     * Same as {@link #findUsers}, reading and returning only {@code fields}.
+     */
+    public UserListPage<UserRow> findUserRows(String search, UserFacetFilter facets, UserFieldSet fields,
+                                              Pageable pageable, CountStrategy countStrategy) {
+        return cached(search, facets, () -> {
+            UserFilter filter = filter(search, facets);
+            return listPage(userRepository.findRowSlice(fields, filter, pageable), filter, countStrategy);
+        }, "rows", fields, pageable, countStrategy);
+    }
+
+    /**
+     * Same as {@link #findUsers} (or {@link #findUserRows} when {@code fields} is not {@code null}), handing each row to
+     * {@code rowConsumer} as it is read from a database cursor instead of collecting the page, so the first rows can
+     * be written out before the last ones are read. The total is counted after the rows. Not cached.
+     */
+    public StreamedUserPage streamUsers(String search, UserFacetFilter facets, UserFieldSet fields, Pageable pageable,
+                                        CountStrategy countStrategy, Consumer<Object> rowConsumer) {
+        // The cursor lives as long as the transaction
+        return readOnlyTransaction.execute(status -> {
+            UserFilter filter = filter(search, facets);
+            int[] rows = {0};
+            Consumer<Object> counting = row -> {
+                rowConsumer.accept(row);
+                rows[0]++;
+            };
+            boolean hasNext = fields != null
+                    ? userRepository.streamRowSlice(fields, filter, pageable, streamFetchSize, counting::accept)
+                    : userRepository.streamViewSlice(filter, pageable, streamFetchSize, counting::accept);
+            return new StreamedUserPage(hasNext,
+                    pageTotal(pageable.getOffset(), rows[0], hasNext, filter, countStrategy));
+        });
+    }
+
+    private <T> UserListPage<T> listPage(Slice<T> slice, UserFilter filter, CountStrategy countStrategy) {
+        UserCount total = pageTotal(slice.getPageable().getOffset(), slice.getNumberOfElements(), slice.hasNext(),
+                filter, countStrategy);
+        return new UserListPage<>(slice.getContent(), slice.hasNext(), total);
     }
 
-    public long countByRole(ERole roleName) {
-        return userRepository.countByRoleName(roleName);
+    private UserCount pageTotal(long offset, int rows, boolean hasNext, UserFilter filter, CountStrategy countStrategy) {
+        if (countStrategy != CountStrategy.NONE && !hasNext && (rows > 0 || offset == 0)) {
+            // The last page already tells the exact total
+            return new UserCount(offset + rows, true);
+        }
+        return userCountService.count(filter, countStrategy);
+    }
+
+    /**
+     * Total of all users or of those matching {@code search} and {@code facets}, or {@code null} for
+     * {@link CountStrategy#NONE}.
+     */
+    public UserCount countUsers(String search, UserFacetFilter facets, CountStrategy countStrategy) {
+        if (countStrategy == CountStrategy.NONE) {
+            return null;
+        }
+        return cached(search, facets, () -> userCountService.count(filter(search, facets), countStrategy),
+                "count", countStrategy);
+    }
+
+    /**
+     * Facet value counts from the {@link UserFacetIndex}, or {@code null} while it is loading.
+     */
+    public FacetCounts countFacets(UserFacetFilter facets, int limit) {
+        return userFacetIndex.counts(facets, limit);
+    }
+
+    /**
+     * Users whose username or email starts with {@code prefix}, from the {@link UserSuggestIndex}, or {@code null}
+     * while it is loading.
+     */
+    public List<UserSuggestion> suggestUsers(String prefix, int limit) {
+        return userSuggestIndex.suggest(prefix, limit);
+    }
+
+    // Resolves the facets through the index when it is loaded; until then they are filtered in SQL
+    private UserFilter filter(String search, UserFacetFilter facets) {
+        String pattern = search != null ? likePattern(search) : null;
+        if (facets.isEmpty()) {
+            return UserFilter.search(pattern);
+        }
+        RoaringBitmap matches = userFacetIndex.match(facets);
+        if (matches == null) {
+            return new UserFilter(pattern, facets, null, -1);
+        }
+        long matchCount = matches.getLongCardinality();
+        List<Long> ids = null;
+        if (matchCount <= (pattern != null ? MAX_SEARCH_FACET_IDS : MAX_FACET_IDS)) {
+            List<Long> matchIds = new ArrayList<>((int) matchCount);
+            matches.forEach((IntConsumer) id -> matchIds.add((long) id));
+            ids = matchIds;
+        }
+        return new UserFilter(pattern, facets, ids, matchCount);
+    }
+
+    /**
+     * One keyset-paginated page of {@code size} users (optionally matching {@code search} and {@code facets}) in
+     * {@code (field, id)} order, starting next to {@code cursor}, or at the start of the list when it is {@code null}.
+     */
+    public CursorPage<UserView> findUsersPage(String search, UserFacetFilter facets, UserSortField field,
+                                              boolean descending, UserCursor cursor, int size) {
+        return cached(search, facets, () -> {
+            // One extra row tells whether there is another page in the reading direction
+            List<UserView> users = userRepository.findPage(field, descending, cursor, filter(search, facets), size + 1);
+            return cursorPage(users, size, field, descending, cursor, UserView::id, field::valueOf);
+        }, "viewPage", field, descending, cursor, size);
+    }
+
+    /**
+     * Same as {@link #findUsersPage}, reading and returning only {@code fields}.
+     */
+    public CursorPage<UserRow> findUserRowsPage(String search, UserFacetFilter facets, UserFieldSet fields,
+                                                UserSortField field, boolean descending, UserCursor cursor, int size) {
+        return cached(search, facets, () -> {
+            List<UserRow> rows = userRepository.findRowPage(fields, field, descending, cursor, filter(search, facets),
+                    size + 1);
+            UserField sortColumn = field.getUserField();
+            return cursorPage(rows, size, field, descending, cursor, UserRow::id, row -> row.get(sortColumn));
+        }, "rowPage", fields, field, descending, cursor, size);
+    }
+
+    // Filtered listings are served from the page cache, keyed by the normalized search, the facets and keyParts.
+    // Unfiltered ones are a single range scan of a sort index and are not worth the memory. Right after a write, a
+    // replica may not have it yet: what it returns is not cached under the new generation
+    private <T> T cached(String search, UserFacetFilter facets, Supplier<T> loader, Object... keyParts) {
+        if (search == null && facets.isEmpty() || recentWriters.readsMayLag()) {
+            return loader.get();
+        }
+        Object[] parts = new Object[keyParts.length + 2];
+        parts[0] = search != null ? likePattern(search) : null;
+        parts[1] = facets;
+        System.arraycopy(keyParts, 0, parts, 2, keyParts.length);
+        return userPageCache.get(writeGeneration.get(), loader, parts);
+    }
+
+    private static <T> CursorPage<T> cursorPage(List<T> users, int size, UserSortField field, boolean descending,
+                                                UserCursor cursor, Function<T, Long> id, Function<T, Object> key) {
+        boolean backward = cursor != null && cursor.backward();
+        boolean more = users.size() > size;
+        if (more) {
+            users = backward ? users.subList(1, users.size()) : users.subList(0, size);
+        }
+
+        boolean hasNext = backward ? cursor != null : more;
+        boolean hasPrev = backward ? more : cursor != null;
+        String next = null;
+        String prev = null;
+        if (!users.isEmpty()) {
+            T last = users.get(users.size() - 1);
+            T first = users.get(0);
+            next = hasNext ? cursorAt(id.apply(last), key.apply(last), field, descending, false) : null;
+            prev = hasPrev ? cursorAt(id.apply(first), key.apply(first), field, descending, true) : null;
+        } else if (cursor != null) {
+            // Only happens with a stale cursor (its neighbours were deleted since): still offer a way back
+            UserCursor boundary = new UserCursor(field, descending, !backward, cursor.key(), cursor.id());
+            next = backward ? boundary.encode() : null;
+            prev = backward ? null : boundary.encode();
+        }
+        return new CursorPage<>(users, next, prev);
+    }
+
+    private static String cursorAt(Long id, Object key, UserSortField field, boolean descending, boolean backward) {
+        return new UserCursor(field, descending, backward, field == UserSortField.ID ? null : key, id).encode();
+    }
+
+    /**
+     * Walk all users (or those matching {@code search}) in id order, {@code chunkSize} rows at a time.
+     * Uses keyset pagination, so every chunk costs the same regardless of how deep into the table it is.
+     */
+    public void forEachUserView(String search, int chunkSize, Consumer<List<UserView>> chunkConsumer) {
+        String pattern = search != null ? likePattern(search) : null;
+        long afterId = 0;
+        while (true) {
+            List<UserView> chunk = pattern != null
+                    ? userRepository.searchViewsByPatternAfter(pattern, afterId, Limit.of(chunkSize))
+                    : userRepository.findViewsAfter(afterId, Limit.of(chunkSize));
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            chunkConsumer.accept(chunk);
+
+            if (chunk.size() < chunkSize) {
+                return;
+            }
+            afterId = chunk.get(chunk.size() - 1).id();
+        }
+    }
+
+    // Served from the cached total, see UserCountService
+    public long count() {
+        return userCountService.totalUsers();
     }
 
-    public long countNewUsersToday() {
-        Calendar cal = Calendar.getInstance();
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-        return userRepository.countNewUsersSince(cal.getTime());
+    /**
+     * {@code %term%} for {@link UserRepository#SEARCH_PATTERN_PREDICATE}: lowercased, with {@code \}, {@code %} and
+     * {@code _} escaped so they match literally.
+     */
+    static String likePattern(String search) {
+        String term = search.toLowerCase(Locale.ROOT);
+        StringBuilder pattern = new StringBuilder(term.length() + 8).append('%');
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c == '\\' || c == '%' || c == '_') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
     }
-}
\ No newline at end of file
+}
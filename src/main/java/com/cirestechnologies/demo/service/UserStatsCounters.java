@@ -0,0 +1,233 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.event.UserChangedEvent;
+import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.repository.UserStatsKey;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * User counters for the statistics endpoint: the total, the users per role and the signups per day of the last
+ * {@code cirestechnologies.demo.stats.days} days. Reads add up {@link LongAdder}s and never touch the database.
+ * <p>
+ * The counters are kept current by {@link UserChangedEvent}s, which carry the role and signup time of the user before
+ * and after each change, and are recounted from the database at startup and every
+ * {@code cirestechnologies.demo.stats.reconcile-interval-ms}. The recount corrects writes that bypass the application
+ * (the seeder, manual SQL) and the rare event counted twice because it was published after a recount had already seen
+ * its row; a recount that overlaps an event is dropped and retried at the next interval.
+ */
+@Service
+public class UserStatsCounters {
+    private static final Logger logger = LoggerFactory.getLogger(UserStatsCounters.class);
+
+    private static final String COUNT_BY_ROLE = "SELECT r.name, count(*) FROM users u " +
+            "LEFT JOIN roles r ON r.id = u.role_id GROUP BY r.name";
+    private static final String COUNT_BY_DAY = "SELECT CAST(created_at AS DATE), count(*) FROM users " +
+            "WHERE created_at >= ? GROUP BY CAST(created_at AS DATE)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${cirestechnologies.demo.stats.reconcile-interval-ms:300000}")
+    private long reconcileIntervalMs = 300000;
+
+    @Value("${cirestechnologies.demo.stats.days:31}")
+    private int days = 31;
+
+    private final LongAdder total = new LongAdder();
+    // One adder per role, created up front so the map itself never changes
+    private final Map<ERole, LongAdder> byRole = new EnumMap<>(ERole.class);
+    private final Map<LocalDate, LongAdder> signupsByDay = new ConcurrentHashMap<>();
+
+    // Events take the read lock, so they apply concurrently; a recount takes the write lock to overwrite the counters,
+    // and only if no event was counted since it started querying
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong changes = new AtomicLong();
+    private volatile boolean loaded;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public UserStatsCounters(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (ERole role : ERole.values()) {
+            byRole.put(role, new LongAdder());
+        }
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        // The seeder run mode exits right after its runners, it has no use for the counters
+        if (!(event.getApplicationContext() instanceof WebApplicationContext)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-stats-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, 0, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        lock.readLock().lock();
+        try {
+            changes.incrementAndGet();
+            add(event.before(), -1);
+            add(event.after(), 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long total() {
+        ensureLoaded();
+        return total.sum();
+    }
+
+    public long count(ERole role) {
+        ensureLoaded();
+        return byRole.get(role).sum();
+    }
+
+    public long signupsOn(LocalDate day) {
+        ensureLoaded();
+        LongAdder signups = signupsByDay.get(day);
+        return signups != null ? signups.sum() : 0;
+    }
+
+    public long signupsToday() {
+        return signupsOn(LocalDate.now());
+    }
+
+    /**
+     * The figures of {@code /api/stats/users}, by name.
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("totalUsers", total());
+        stats.put("totalAdmins", count(ERole.ROLE_ADMIN));
+        stats.put("totalRegularUsers", count(ERole.ROLE_USER));
+        stats.put("newUsersToday", signupsToday());
+        return stats;
+    }
+
+    /**
+     * Recount all counters from the database. Returns {@code false}, leaving the counters as they are, if a user
+     * changed while the counts were running; the very first recount is always applied.
+     */
+    public synchronized boolean reconcile() {
+        long changesBefore = changes.get();
+        LocalDate firstDay = LocalDate.now().minusDays(days - 1);
+
+        long[] totalCount = {0};
+        Map<ERole, Long> roleCounts = new EnumMap<>(ERole.class);
+        jdbcTemplate.query(COUNT_BY_ROLE, rs -> {
+            String role = rs.getString(1);
+            long count = rs.getLong(2);
+            totalCount[0] += count;
+            if (role != null) {
+                roleCounts.put(ERole.valueOf(role), count);
+            }
+        });
+        Map<LocalDate, Long> dayCounts = new HashMap<>();
+        jdbcTemplate.query(COUNT_BY_DAY, rs -> {
+            dayCounts.put(rs.getDate(1).toLocalDate(), rs.getLong(2));
+        }, Timestamp.valueOf(firstDay.atStartOfDay()));
+
+        lock.writeLock().lock();
+        try {
+            if (loaded && changes.get() != changesBefore) {
+                logger.debug("Users changed during the stats recount, retrying at the next interval");
+                return false;
+            }
+            long drift = totalCount[0] - total.sum();
+            if (loaded && drift != 0) {
+                logger.info("User stats were off by {} users, corrected", drift);
+            }
+            set(total, totalCount[0]);
+            for (ERole role : ERole.values()) {
+                set(byRole.get(role), roleCounts.getOrDefault(role, 0L));
+            }
+            signupsByDay.keySet().removeIf(day -> !dayCounts.containsKey(day));
+            dayCounts.forEach((day, count) -> set(signupsByDay.computeIfAbsent(day, d -> new LongAdder()), count));
+            loaded = true;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Requests arriving before the first scheduled recount run it themselves
+    private void ensureLoaded() {
+        if (!loaded) {
+            reconcile();
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            long start = System.currentTimeMillis();
+            if (reconcile()) {
+                logger.debug("User stats recounted in {} ms", System.currentTimeMillis() - start);
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule going: an exception would cancel the next runs
+            logger.warn("User stats recount failed: {}", e.getMessage());
+        }
+    }
+
+    private void add(UserStatsKey key, int delta) {
+        if (key == null) {
+            return;
+        }
+        total.add(delta);
+        if (key.role() != null) {
+            byRole.get(key.role()).add(delta);
+        }
+        LocalDate day = day(key.createdAt());
+        if (day != null && !day.isBefore(LocalDate.now().minusDays(days - 1))) {
+            signupsByDay.computeIfAbsent(day, d -> new LongAdder()).add(delta);
+        }
+    }
+
+    private static LocalDate day(Date date) {
+        return date != null ? LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+    }
+
+    // Only called under the write lock, when no event is adding
+    private static void set(LongAdder adder, long value) {
+        adder.add(value - adder.sum());
+    }
+}
@@ -0,0 +1,160 @@
+package com.cirestechnologies.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Live {@link UserStatsCounters#stats()} for any number of subscribers over Server-Sent Events. A subscriber first
+ * gets a {@code stats} event with every figure, then one with the figures that changed, at most once every
+ * {@code cirestechnologies.demo.stats.stream.push-interval-ms}: a burst of writes is coalesced into one event, and the
+ * stats are read once per push whatever the number of subscribers. Quiet streams get a comment every
+ * {@code cirestechnologies.demo.stats.stream.heartbeat-interval-ms}, so proxies and clients can tell them from dead
+ * connections.
+ */
+@Service
+public class UserStatsPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(UserStatsPublisher.class);
+
+    public static final String EVENT = "stats";
+
+    private final UserStatsCounters userStatsCounters;
+
+    @Value("${cirestechnologies.demo.stats.stream.push-interval-ms:1000}")
+    private long pushIntervalMs = 1000;
+
+    @Value("${cirestechnologies.demo.stats.stream.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs = 15000;
+
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    // What every subscriber has been sent so far; null while there are none
+    private Map<String, Long> pushed;
+    private long sentAt;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public UserStatsPublisher(UserStatsCounters userStatsCounters) {
+        this.userStatsCounters = userStatsCounters;
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        // The seeder run mode serves no requests
+        if (!(event.getApplicationContext() instanceof WebApplicationContext)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-stats-push");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::pushQuietly, pushIntervalMs, pushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        subscribers.forEach(SseEmitter::complete);
+        subscribers.clear();
+    }
+
+    /**
+     * A new stream, already holding the full stats. It ends when the client goes away or the async request times out.
+     */
+    public synchronized SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter();
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(emitter));
+        // The same figures as the others were last sent, so the next changes apply to it as well
+        if (pushed == null) {
+            pushed = userStatsCounters.stats();
+            sentAt = System.currentTimeMillis();
+        }
+        if (send(emitter, () -> SseEmitter.event().name(EVENT).data(pushed))) {
+            subscribers.add(emitter);
+        }
+        return emitter;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Send the figures that changed since the last push to every subscriber, or a heartbeat if it is time for one.
+     */
+    public synchronized void push() {
+        if (subscribers.isEmpty()) {
+            pushed = null;
+            return;
+        }
+        Map<String, Long> current = userStatsCounters.stats();
+        Map<String, Long> changed = new LinkedHashMap<>();
+        current.forEach((name, value) -> {
+            if (!Objects.equals(value, pushed.get(name))) {
+                changed.put(name, value);
+            }
+        });
+        long now = System.currentTimeMillis();
+        if (!changed.isEmpty()) {
+            pushed = current;
+            sendToAll(() -> SseEmitter.event().name(EVENT).data(changed));
+        } else if (now - sentAt >= heartbeatIntervalMs) {
+            sendToAll(() -> SseEmitter.event().comment("heartbeat"));
+        } else {
+            return;
+        }
+        sentAt = now;
+    }
+
+    // A builder per send: building an event appends its terminating line, so builders can't be shared
+    private void sendToAll(Supplier<SseEmitter.SseEventBuilder> event) {
+        for (SseEmitter emitter : subscribers) {
+            if (!send(emitter, event)) {
+                subscribers.remove(emitter);
+            }
+        }
+    }
+
+    // A failed send means the client is gone; the emitter is completed so the async request is released
+    private static boolean send(SseEmitter emitter, Supplier<SseEmitter.SseEventBuilder> event) {
+        try {
+            emitter.send(event.get());
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void pushQuietly() {
+        try {
+            push();
+        } catch (RuntimeException e) {
+            // Keep the schedule going: an exception would cancel the next runs
+            logger.warn("User stats push failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.event.UserChangedEvent;
+import com.cirestechnologies.demo.model.UserStatsBucket;
+import com.cirestechnologies.demo.model.UserStatsMetric;
+import com.cirestechnologies.demo.repository.UserStatsBucketRepository;
+import com.cirestechnologies.demo.repository.UserStatsKey;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Signups and logins over time, pre-aggregated into quarter-hour {@link UserStatsBucket}s so a time series of any
+ * range reads a few thousand rows at most instead of grouping the users table.
+ * <p>
+ * Signups and logins made through the application are counted from {@link UserChangedEvent}s into pending counters,
+ * which are added to the table every {@code cirestechnologies.demo.stats.rollup.flush-interval-ms}. At startup a
+ * catch-up recounts the buckets from the latest one in the table (or from the start of the retention period) up to
+ * the start of this instance from {@code users.created_at} and {@code users.last_login}, which fills in what happened
+ * while the application was down, including users loaded by the seeder. The users table only keeps the last login of
+ * each user, so logins caught up this way are a lower bound. Buckets older than
+ * {@code cirestechnologies.demo.stats.rollup.retention-days} are deleted.
+ */
+@Service
+public class UserStatsRollup {
+    private static final Logger logger = LoggerFactory.getLogger(UserStatsRollup.class);
+
+    private static final String INSERT =
+            "INSERT INTO user_stats_buckets (metric, bucket_start, count) VALUES (?, ?, ?)";
+    private static final long PRUNE_INTERVAL_MS = 3600000;
+
+    private final UserStatsBucketRepository bucketRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+
+    @Value("${cirestechnologies.demo.stats.rollup.flush-interval-ms:10000}")
+    private long flushIntervalMs = 10000;
+
+    @Value("${cirestechnologies.demo.stats.rollup.retention-days:90}")
+    private int retentionDays = 90;
+
+    // Users signing up or logging in from here on are counted by events, earlier ones by the catch-up
+    private final Instant startedAt = Instant.now();
+    private volatile boolean caughtUp;
+    // Buckets past the retention period are deleted at most once an hour
+    private long prunedAt;
+
+    // Counted from events and not added to the table yet
+    private final Map<UserStatsBucket.Key, LongAdder> pending = new ConcurrentHashMap<>();
+    // Reads take the read lock and flushes the write lock, so a read sees each count either pending or in the table
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public UserStatsRollup(UserStatsBucketRepository bucketRepository, JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager) {
+        this.bucketRepository = bucketRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        // The seeder run mode exits right after its runners; the next startup catches up with what it loaded
+        if (!(event.getApplicationContext() instanceof WebApplicationContext)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-stats-rollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // One thread, so the catch-up is done before the first flush
+        scheduler.execute(this::catchUpQuietly);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            // Keep what the last interval counted
+            if (caughtUp) {
+                flushQuietly();
+            }
+        }
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        UserStatsKey before = event.before();
+        UserStatsKey after = event.after();
+        if (after == null) {
+            return;
+        }
+        if (before == null && after.createdAt() != null) {
+            count(UserStatsMetric.SIGNUPS, after.createdAt());
+        }
+        if (after.lastLogin() != null
+                && (before == null || before.lastLogin() == null
+                        || before.lastLogin().getTime() != after.lastLogin().getTime())) {
+            count(UserStatsMetric.LOGINS, after.lastLogin());
+        }
+    }
+
+    public boolean isReady() {
+        return caughtUp;
+    }
+
+    /**
+     * Start of the oldest bucket still kept.
+     */
+    public Instant retentionStart() {
+        return UserStatsBucket.startOf(Instant.now().minus(Duration.ofDays(retentionDays)));
+    }
+
+    /**
+     * The counts of {@code metric} per hour or day of {@code from}'s time zone, one point for each period from the one
+     * holding {@code from} up to {@code to} (exclusive), or {@code null} while the catch-up is running.
+     */
+    public List<StatsPoint> series(UserStatsMetric metric, ZonedDateTime from, ZonedDateTime to,
+                                   StatsGranularity granularity) {
+        if (!caughtUp) {
+            return null;
+        }
+        List<ZonedDateTime> starts = new ArrayList<>();
+        for (ZonedDateTime start = granularity.startOf(from); start.isBefore(to); start = granularity.next(start)) {
+            starts.add(start);
+        }
+        if (starts.isEmpty()) {
+            return List.of();
+        }
+        Instant[] startInstants = starts.stream().map(ZonedDateTime::toInstant).toArray(Instant[]::new);
+        Instant end = granularity.next(starts.get(starts.size() - 1)).toInstant();
+        long[] counts = new long[starts.size()];
+
+        lock.readLock().lock();
+        try {
+            for (UserStatsBucket bucket : bucketRepository
+                    .findByMetricAndStartGreaterThanEqualAndStartLessThanOrderByStart(metric, startInstants[0], end)) {
+                counts[period(startInstants, bucket.getStart())] += bucket.getCount();
+            }
+            pending.forEach((key, adder) -> {
+                if (key.getMetric() == metric && !key.getStart().isBefore(startInstants[0]) && key.getStart().isBefore(end)) {
+                    counts[period(startInstants, key.getStart())] += adder.sum();
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<StatsPoint> points = new ArrayList<>(starts.size());
+        for (int i = 0; i < starts.size(); i++) {
+            points.add(new StatsPoint(starts.get(i).toOffsetDateTime(), counts[i]));
+        }
+        return points;
+    }
+
+    /**
+     * Recount the buckets from the latest one in the table up to the start of this instance. Runs once, before
+     * anything is flushed; later calls return right away.
+     */
+    public synchronized void catchUp() {
+        if (caughtUp) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Instant retentionStart = retentionStart();
+        Instant latest = bucketRepository.findLatestStart();
+        Instant from = latest != null && latest.isAfter(retentionStart) ? latest : retentionStart;
+
+        Map<UserStatsBucket.Key, Long> counts = new HashMap<>();
+        countColumn(counts, UserStatsMetric.SIGNUPS, "created_at", from);
+        countColumn(counts, UserStatsMetric.LOGINS, "last_login", from);
+        List<Object[]> rows = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> rows.add(new Object[]{key.getMetric().name(),
+                key.getStart().atOffset(ZoneOffset.UTC), count}));
+
+        transaction.executeWithoutResult(status -> {
+            bucketRepository.deleteFrom(from);
+            jdbcTemplate.batchUpdate(INSERT, rows);
+        });
+        caughtUp = true;
+        logger.info("User stats caught up from {} in {} ms ({} buckets)", from,
+                System.currentTimeMillis() - start, rows.size());
+    }
+
+    /**
+     * Add the pending counts to the table and delete the buckets past the retention period.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            Map<UserStatsBucket.Key, Long> deltas = new HashMap<>();
+            pending.forEach((key, adder) -> {
+                long delta = adder.sum();
+                if (delta != 0) {
+                    deltas.put(key, delta);
+                }
+            });
+            boolean prune = System.currentTimeMillis() - prunedAt > PRUNE_INTERVAL_MS;
+            if (deltas.isEmpty() && !prune) {
+                return;
+            }
+            transaction.executeWithoutResult(status -> {
+                deltas.forEach((key, delta) -> {
+                    if (bucketRepository.addToCount(key.getMetric(), key.getStart(), delta) == 0) {
+                        bucketRepository.save(new UserStatsBucket(key.getMetric(), key.getStart(), delta));
+                    }
+                });
+                if (prune) {
+                    bucketRepository.deleteBefore(retentionStart());
+                }
+            });
+            if (prune) {
+                prunedAt = System.currentTimeMillis();
+            }
+            // Events may have counted more meanwhile; only what was written is taken off
+            deltas.forEach((key, delta) -> pending.get(key).add(-delta));
+            // Events only count the current time, so past buckets stay empty once flushed
+            Instant previous = UserStatsBucket.startOf(Instant.now()).minusSeconds(UserStatsBucket.SECONDS);
+            pending.entrySet().removeIf(entry -> entry.getKey().getStart().isBefore(previous)
+                    && entry.getValue().sum() == 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void count(UserStatsMetric metric, Date time) {
+        UserStatsBucket.Key key = new UserStatsBucket.Key(metric, UserStatsBucket.startOf(time.toInstant()));
+        pending.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    // Timestamps of the users table are wall-clock times of the JVM's zone, as written by JPA
+    private void countColumn(Map<UserStatsBucket.Key, Long> counts, UserStatsMetric metric, String column,
+                             Instant from) {
+        jdbcTemplate.query("SELECT " + column + " FROM users WHERE " + column + " >= ? AND " + column + " < ?",
+                rs -> {
+                    Instant start = UserStatsBucket.startOf(rs.getTimestamp(1).toInstant());
+                    counts.merge(new UserStatsBucket.Key(metric, start), 1L, Long::sum);
+                }, Timestamp.from(from), Timestamp.from(startedAt));
+    }
+
+    // Index of the period holding a bucket; buckets never straddle periods
+    private static int period(Instant[] starts, Instant bucketStart) {
+        int index = Arrays.binarySearch(starts, bucketStart);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private void catchUpQuietly() {
+        try {
+            catchUp();
+        } catch (RuntimeException e) {
+            logger.warn("User stats catch-up failed, retrying at the next flush: {}", e.getMessage());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            if (!caughtUp) {
+                catchUp();
+            }
+            flush();
+        } catch (RuntimeException e) {
+            // Keep the schedule going: an exception would cancel the next runs. Pending counts stay for the next try
+            logger.warn("User stats flush failed: {}", e.getMessage());
+        }
+    }
+}
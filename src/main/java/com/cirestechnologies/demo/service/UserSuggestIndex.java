@@ -0,0 +1,576 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.event.UserChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory prefix index of usernames and emails, for autocompletion. Each field is a sorted, front-coded dictionary
+ * held in primitive arrays (one byte array of values and one int array of user ids), so millions of users cost a few
+ * tens of megabytes and a handful of objects for the garbage collector. A lookup is a binary search over the first
+ * value of every block of 16 values and a scan of the values that follow.
+ * <p>
+ * The dictionaries are immutable. Users changed since they were built (through {@link UserChangedEvent}s, each
+ * re-reading the changed user) are kept in small sorted sets that take precedence over them, and are merged into new
+ * dictionaries in the background once there are {@code merge-threshold} of them. Values are compared in lower case.
+ * The index is loaded in the background once the application is ready; until then {@link #suggest} returns
+ * {@code null}. Users written outside the application (the seeder) show up after a restart. User ids must fit in an
+ * int.
+ */
+@Service
+public class UserSuggestIndex {
+    private static final Logger logger = LoggerFactory.getLogger(UserSuggestIndex.class);
+
+    private static final String SELECT = "SELECT id, username, email FROM users ";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${cirestechnologies.demo.suggest.batch-size:100000}")
+    private int batchSize = 100000;
+
+    @Value("${cirestechnologies.demo.suggest.merge-threshold:10000}")
+    private int mergeThreshold = 10000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // By field ordinal; null until the first build completes, then replaced as a whole by builds and merges
+    private volatile Dictionary[] dictionaries;
+    // Terms (by field ordinal, null for none) of the users changed since the dictionaries were built, deleted users
+    // having none, and the same terms in key order per field. Changed under the write lock
+    private final Map<Integer, Term[]> changed = new HashMap<>();
+    private final List<NavigableSet<Term>> changedTerms = new ArrayList<>();
+
+    private final AtomicBoolean merging = new AtomicBoolean();
+    // Serializes the read-then-apply of single users, so the last write to a user is also the last one applied
+    private final Object refreshMonitor = new Object();
+
+    @Autowired
+    public UserSuggestIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (int i = 0; i < Field.values().length; i++) {
+            changedTerms.add(new TreeSet<>());
+        }
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        // The seeder run mode exits right after its runners, it has no use for the index
+        if (!(event.getApplicationContext() instanceof WebApplicationContext)) {
+            return;
+        }
+        Thread thread = new Thread(this::rebuild, "user-suggest-index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isReady() {
+        return dictionaries != null;
+    }
+
+    /**
+     * Load both dictionaries from the users table, in keyset-paginated batches, and swap them in. Lookups keep using
+     * the previous dictionaries meanwhile, and users changed during the build stay in the changed sets, which take
+     * precedence.
+     */
+    public synchronized void rebuild() {
+        try {
+            long start = System.currentTimeMillis();
+
+            List<List<Term>> terms = new ArrayList<>();
+            for (int i = 0; i < Field.values().length; i++) {
+                terms.add(new ArrayList<>());
+            }
+            long[] afterId = {0};
+            int read;
+            do {
+                int[] rows = {0};
+                jdbcTemplate.query(SELECT + "WHERE id > ? ORDER BY id LIMIT ?", rs -> {
+                    Term[] userTerms = terms(rs);
+                    for (int i = 0; i < userTerms.length; i++) {
+                        if (userTerms[i] != null) {
+                            terms.get(i).add(userTerms[i]);
+                        }
+                    }
+                    afterId[0] = rs.getLong(1);
+                    rows[0]++;
+                }, afterId[0], batchSize);
+                read = rows[0];
+            } while (read == batchSize);
+
+            Dictionary[] built = new Dictionary[terms.size()];
+            for (int i = 0; i < built.length; i++) {
+                Term[] fieldTerms = terms.get(i).toArray(new Term[0]);
+                // Let the build garbage go before the next field is sorted
+                terms.set(i, null);
+                // Most of the build time after reading the table
+                Arrays.parallelSort(fieldTerms);
+                built[i] = Dictionary.of(Arrays.asList(fieldTerms));
+            }
+
+            lock.writeLock().lock();
+            try {
+                dictionaries = built;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info("User suggest index built: {} users in {} ms", built[Field.USERNAME.ordinal()].size(),
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            logger.error("User suggest index build failed, suggestions are unavailable: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        int id;
+        try {
+            id = Math.toIntExact(event.userId());
+        } catch (ArithmeticException e) {
+            return;
+        }
+        boolean merge;
+        synchronized (refreshMonitor) {
+            Term[] terms = new Term[Field.values().length];
+            if (event.type() != UserChangedEvent.Type.DELETED) {
+                List<Term[]> rows = jdbcTemplate.query(SELECT + "WHERE id = ?", (rs, rowNum) -> terms(rs), id);
+                if (!rows.isEmpty()) {
+                    terms = rows.get(0);
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                Term[] previous = changed.put(id, terms);
+                for (int i = 0; i < terms.length; i++) {
+                    if (previous != null && previous[i] != null) {
+                        changedTerms.get(i).remove(previous[i]);
+                    }
+                    if (terms[i] != null) {
+                        changedTerms.get(i).add(terms[i]);
+                    }
+                }
+                merge = dictionaries != null && changed.size() >= mergeThreshold;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (merge && merging.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::merge, "user-suggest-merge");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Up to {@code limit} users whose username or email starts with {@code prefix} (ignoring case), by matching value
+     * in alphabetical order, each listed once with its first match (its username when both match). {@code null} while
+     * the index is not loaded.
+     */
+    public List<UserSuggestion> suggest(String prefix, int limit) {
+        String key = key(prefix);
+        lock.readLock().lock();
+        try {
+            Dictionary[] current = dictionaries;
+            if (current == null) {
+                return null;
+            }
+            List<Cursor> cursors = new ArrayList<>(2 * current.length);
+            for (Field field : Field.values()) {
+                cursors.add(new DictionaryCursor(field, current[field.ordinal()], key));
+                cursors.add(new ChangedCursor(field,
+                        changedTerms.get(field.ordinal()).tailSet(new Term(key, key, Integer.MIN_VALUE), true).iterator()));
+            }
+
+            List<UserSuggestion> suggestions = new ArrayList<>(Math.min(limit, 16));
+            Set<Integer> users = new HashSet<>();
+            while (suggestions.size() < limit) {
+                Cursor first = null;
+                for (Cursor cursor : cursors) {
+                    if (cursor.term != null && cursor.term.key().startsWith(key)
+                            && (first == null || cursor.term.compareTo(first.term) < 0)) {
+                        first = cursor;
+                    }
+                }
+                if (first == null) {
+                    break;
+                }
+                if (users.add(first.term.id())) {
+                    suggestions.add(new UserSuggestion(first.term.id(), first.field.param, first.term.value()));
+                }
+                first.advance();
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Users in the changed sets, not merged into the dictionaries yet
+    int pendingChanges() {
+        lock.readLock().lock();
+        try {
+            return changed.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Folds the changed users into new dictionaries, so the changed sets stay small. Users changed again during the
+    // merge stay in the sets
+    private synchronized void merge() {
+        try {
+            long start = System.currentTimeMillis();
+            Dictionary[] base;
+            Map<Integer, Term[]> merged;
+            lock.readLock().lock();
+            try {
+                base = dictionaries;
+                merged = new HashMap<>(changed);
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Dictionary[] rebuilt = new Dictionary[base.length];
+            for (int i = 0; i < base.length; i++) {
+                List<Term> additions = new ArrayList<>(merged.size());
+                for (Term[] terms : merged.values()) {
+                    if (terms[i] != null) {
+                        additions.add(terms[i]);
+                    }
+                }
+                Collections.sort(additions);
+                rebuilt[i] = base[i].merge(merged.keySet(), additions);
+            }
+
+            lock.writeLock().lock();
+            try {
+                dictionaries = rebuilt;
+                for (Map.Entry<Integer, Term[]> entry : merged.entrySet()) {
+                    Term[] terms = entry.getValue();
+                    if (changed.get(entry.getKey()) == terms) {
+                        changed.remove(entry.getKey());
+                        for (int i = 0; i < terms.length; i++) {
+                            if (terms[i] != null) {
+                                changedTerms.get(i).remove(terms[i]);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info("User suggest index merged {} changed users in {} ms", merged.size(),
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            logger.error("User suggest index merge failed: {}", e.getMessage());
+        } finally {
+            merging.set(false);
+        }
+    }
+
+    // Terms by field ordinal of the row (id, username, email)
+    private static Term[] terms(ResultSet rs) throws SQLException {
+        int id = Math.toIntExact(rs.getLong(1));
+        Term[] terms = new Term[Field.values().length];
+        for (Field field : Field.values()) {
+            String value = rs.getString(2 + field.ordinal());
+            terms[field.ordinal()] = value != null ? new Term(key(value), value, id) : null;
+        }
+        return terms;
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private enum Field {
+        USERNAME("username"),
+        EMAIL("email");
+
+        private final String param;
+
+        Field(String param) {
+            this.param = param;
+        }
+    }
+
+    /**
+     * A value of a user, ordered by its lower-case key, then by user id.
+     */
+    private record Term(String key, String value, int id) implements Comparable<Term> {
+        @Override
+        public int compareTo(Term other) {
+            int byKey = key.compareTo(other.key);
+            return byKey != 0 ? byKey : Integer.compare(id, other.id);
+        }
+    }
+
+    /**
+     * The terms of one field from a key on, in order; {@code term} is {@code null} once they run out.
+     */
+    private abstract static class Cursor {
+        private final Field field;
+        protected Term term;
+
+        private Cursor(Field field) {
+            this.field = field;
+        }
+
+        abstract void advance();
+    }
+
+    // Skips the users that are in the changed sets, whose terms there are the current ones
+    private final class DictionaryCursor extends Cursor {
+        private final Dictionary.Scan scan;
+
+        private DictionaryCursor(Field field, Dictionary dictionary, String key) {
+            super(field);
+            scan = dictionary.from(key);
+            do {
+                advance();
+            } while (term != null && term.key().compareTo(key) < 0);
+        }
+
+        @Override
+        void advance() {
+            while (scan.next()) {
+                if (!changed.containsKey(scan.id())) {
+                    term = scan.term();
+                    return;
+                }
+            }
+            term = null;
+        }
+    }
+
+    private static final class ChangedCursor extends Cursor {
+        private final Iterator<Term> terms;
+
+        private ChangedCursor(Field field, Iterator<Term> terms) {
+            super(field);
+            this.terms = terms;
+            advance();
+        }
+
+        @Override
+        void advance() {
+            term = terms.hasNext() ? terms.next() : null;
+        }
+    }
+
+    /**
+     * Sorted values with the id of their user, front-coded in blocks: the first value of a block is stored whole as
+     * {@code varint length, UTF-8 bytes}, the next ones as {@code varint shared, varint suffix length, suffix bytes},
+     * sharing the first {@code shared} bytes of the value before them.
+     */
+    private static final class Dictionary {
+        private static final int BLOCK_SIZE = 16;
+
+        private final byte[] bytes;
+        // Offset in bytes of the first value of every block
+        private final int[] blockOffsets;
+        private final int[] ids;
+
+        private Dictionary(byte[] bytes, int[] blockOffsets, int[] ids) {
+            this.bytes = bytes;
+            this.blockOffsets = blockOffsets;
+            this.ids = ids;
+        }
+
+        private static Dictionary of(List<Term> sorted) {
+            Builder builder = new Builder(sorted.size());
+            for (Term term : sorted) {
+                builder.add(term);
+            }
+            return builder.build();
+        }
+
+        private int size() {
+            return ids.length;
+        }
+
+        // A scan from the last block starting before `key`, the first that may hold values from `key` on
+        private Scan from(String key) {
+            Scan scan = new Scan();
+            int low = 0;
+            int high = blockOffsets.length - 1;
+            int block = 0;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                scan.seek(middle);
+                scan.next();
+                if (key(scan.value()).compareTo(key) < 0) {
+                    block = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            scan.seek(block);
+            return scan;
+        }
+
+        // This dictionary without the values of `replaced` users, plus `additions` (sorted)
+        private Dictionary merge(Set<Integer> replaced, List<Term> additions) {
+            Builder builder = new Builder(size() + additions.size());
+            Scan scan = new Scan();
+            Term next = null;
+            int added = 0;
+            while (true) {
+                while (next == null && scan.next()) {
+                    if (!replaced.contains(scan.id())) {
+                        next = scan.term();
+                    }
+                }
+                if (added < additions.size() && (next == null || additions.get(added).compareTo(next) < 0)) {
+                    builder.add(additions.get(added++));
+                } else if (next != null) {
+                    builder.add(next);
+                    next = null;
+                } else {
+                    return builder.build();
+                }
+            }
+        }
+
+        /**
+         * Decodes the values one after the other, from the start of a block.
+         */
+        private final class Scan {
+            // Index of the current value, -1 before the first
+            private int entry = -1;
+            private int position;
+            private byte[] value = new byte[64];
+            private int length;
+
+            private void seek(int block) {
+                entry = block * BLOCK_SIZE - 1;
+            }
+
+            // Moves to the next value, false at the end
+            private boolean next() {
+                if (entry + 1 == ids.length) {
+                    return false;
+                }
+                entry++;
+                int shared = 0;
+                if (entry % BLOCK_SIZE == 0) {
+                    position = blockOffsets[entry / BLOCK_SIZE];
+                } else {
+                    shared = readVarint();
+                }
+                int suffix = readVarint();
+                if (shared + suffix > value.length) {
+                    value = Arrays.copyOf(value, Math.max(shared + suffix, 2 * value.length));
+                }
+                System.arraycopy(bytes, position, value, shared, suffix);
+                position += suffix;
+                length = shared + suffix;
+                return true;
+            }
+
+            private int id() {
+                return ids[entry];
+            }
+
+            private String value() {
+                return new String(value, 0, length, StandardCharsets.UTF_8);
+            }
+
+            private Term term() {
+                String value = value();
+                return new Term(key(value), value, id());
+            }
+
+            private int readVarint() {
+                int result = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[position++];
+                    result |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        return result;
+                    }
+                }
+            }
+        }
+
+        private static final class Builder {
+            private byte[] bytes;
+            private int length;
+            private final int[] blockOffsets;
+            private final int[] ids;
+            private int size;
+            private byte[] previous = new byte[0];
+
+            // `capacity` is the most values that will be added
+            private Builder(int capacity) {
+                bytes = new byte[Math.max(1024, capacity * 8)];
+                blockOffsets = new int[(capacity + BLOCK_SIZE - 1) / BLOCK_SIZE];
+                ids = new int[capacity];
+            }
+
+            private void add(Term term) {
+                byte[] value = term.value().getBytes(StandardCharsets.UTF_8);
+                int shared = 0;
+                if (size % BLOCK_SIZE == 0) {
+                    blockOffsets[size / BLOCK_SIZE] = length;
+                } else {
+                    int max = Math.min(previous.length, value.length);
+                    while (shared < max && previous[shared] == value[shared]) {
+                        shared++;
+                    }
+                    writeVarint(shared);
+                }
+                writeVarint(value.length - shared);
+                ensureCapacity(value.length - shared);
+                System.arraycopy(value, shared, bytes, length, value.length - shared);
+                length += value.length - shared;
+                ids[size++] = term.id();
+                previous = value;
+            }
+
+            private void writeVarint(int value) {
+                ensureCapacity(5);
+                while ((value & ~0x7f) != 0) {
+                    bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+                    value >>>= 7;
+                }
+                bytes[length++] = (byte) value;
+            }
+
+            private void ensureCapacity(int more) {
+                if (length + more > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(length + more, bytes.length + (bytes.length >> 1)));
+                }
+            }
+
+            private Dictionary build() {
+                return new Dictionary(Arrays.copyOf(bytes, length),
+                        Arrays.copyOf(blockOffsets, (size + BLOCK_SIZE - 1) / BLOCK_SIZE), Arrays.copyOf(ids, size));
+            }
+        }
+    }
+}
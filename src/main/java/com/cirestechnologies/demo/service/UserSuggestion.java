@@ -0,0 +1,8 @@
+package com.cirestechnologies.demo.service;
+
+/**
+ * One result of {@link UserSuggestIndex#suggest}: the user whose {@code field} ({@code username} or {@code email})
+ * starts with the typed prefix, and that field's value.
+ */
+public record UserSuggestion(long id, String field, String value) {
+}
@@ -0,0 +1,29 @@
+-- Schema as previously created by Hibernate (ddl-auto=update). Databases that already have it are baselined at
+-- this version and skip the script.
+CREATE TABLE IF NOT EXISTS roles (
+    id   SERIAL PRIMARY KEY,
+    name VARCHAR(20) CHECK (name IN ('ROLE_USER', 'ROLE_ADMIN'))
+);
+
+CREATE TABLE IF NOT EXISTS users (
+    id           BIGSERIAL PRIMARY KEY,
+    avatar       VARCHAR(255),
+    birth_date   TIMESTAMP(6),
+    city         VARCHAR(255),
+    company      VARCHAR(255),
+    country      VARCHAR(255),
+    created_at   TIMESTAMP(6),
+    email        VARCHAR(255),
+    enabled      BOOLEAN NOT NULL,
+    first_name   VARCHAR(255),
+    job_position VARCHAR(255),
+    last_login   TIMESTAMP(6),
+    last_name    VARCHAR(255),
+    mobile       VARCHAR(255),
+    password     VARCHAR(255),
+    username     VARCHAR(255),
+    role_id      INTEGER,
+    CONSTRAINT ukr43af9ap4edm43mmtq01oddj6 UNIQUE (username),
+    CONSTRAINT uk6dotkott2kjsp8vw4d0m25fb7 UNIQUE (email),
+    CONSTRAINT fkp56c1712k691lhsyewcssf40f FOREIGN KEY (role_id) REFERENCES roles (id)
+);
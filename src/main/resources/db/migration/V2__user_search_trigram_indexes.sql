@@ -0,0 +1,10 @@
+-- Trigram indexes for the admin search (substring match on username, email, first name, last name and company).
+-- Each index matches the lower(column) LIKE :pattern predicate in UserRepository, so a search is a BitmapOr of
+-- five index scans instead of a sequential scan of users.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_users_username_trgm ON users USING gin (lower(username) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_email_trgm ON users USING gin (lower(email) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_first_name_trgm ON users USING gin (lower(first_name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_last_name_trgm ON users USING gin (lower(last_name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_company_trgm ON users USING gin (lower(company) gin_trgm_ops);
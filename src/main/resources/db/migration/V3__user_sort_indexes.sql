@@ -0,0 +1,10 @@
+-- One (column, id) index per sortable column (UserSortField), so offset and keyset pages are read in index order.
+-- id breaks ties between equal sort keys; username and email are unique but get the same shape so that the
+-- (column, id) row comparison of the keyset query is an index condition.
+CREATE INDEX IF NOT EXISTS idx_users_username_id ON users (username, id);
+CREATE INDEX IF NOT EXISTS idx_users_email_id ON users (email, id);
+CREATE INDEX IF NOT EXISTS idx_users_first_name_id ON users (first_name, id);
+CREATE INDEX IF NOT EXISTS idx_users_last_name_id ON users (last_name, id);
+CREATE INDEX IF NOT EXISTS idx_users_company_id ON users (company, id);
+CREATE INDEX IF NOT EXISTS idx_users_created_at_id ON users (created_at, id);
+CREATE INDEX IF NOT EXISTS idx_users_last_login_id ON users (last_login, id);
@@ -0,0 +1,4 @@
+-- Optimistic-locking version of each user (User#version), bumped by every update through JPA. It identifies the state
+-- of a user in ETags, so conditional GETs can be answered without loading the row. Existing rows start at 0; on
+-- PostgreSQL 11+ adding a column with a constant default does not rewrite the table.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
@@ -0,0 +1,8 @@
+-- Signups and logins per quarter of an hour (UserStatsBucket), for the time series of /api/stats/timeseries. Kept
+-- current by the application and pruned to the retention period, so it stays a few thousand rows per metric.
+CREATE TABLE IF NOT EXISTS user_stats_buckets (
+    metric       VARCHAR(16) NOT NULL CHECK (metric IN ('SIGNUPS', 'LOGINS')),
+    bucket_start TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    count        BIGINT NOT NULL,
+    PRIMARY KEY (metric, bucket_start)
+);
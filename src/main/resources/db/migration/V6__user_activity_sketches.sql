@@ -0,0 +1,6 @@
+-- Users active per day (UserActivitySketch): a deflated HyperLogLog sketch of their ids, under 8 KB a day.
+-- Sketches of any range of days merge into an estimate of the distinct users active over it (DAU, WAU, MAU).
+CREATE TABLE IF NOT EXISTS user_activity_sketches (
+    activity_day DATE PRIMARY KEY,
+    registers    BYTEA NOT NULL
+);
@@ -0,0 +1,15 @@
+-- Users and roles take their ids from their sequences through Hibernate's pooled-lo optimizer (User#id, Role#id)
+-- instead of the column defaults: one nextval reserves a block of 50 ids, so inserts no longer need the generated key
+-- back and go out in JDBC batches. The sequences step by the block size, starting past both the largest id and the
+-- last value handed out, so no block overlaps an existing row. Inserts wait for the migration, so an instance still
+-- running the previous version can't take an id in between. The column defaults stay: inserts that leave the id out
+-- (outside the application) still get a fresh one.
+LOCK TABLE users, roles IN SHARE ROW EXCLUSIVE MODE;
+
+ALTER SEQUENCE users_id_seq INCREMENT BY 50;
+SELECT setval('users_id_seq',
+              GREATEST((SELECT COALESCE(max(id), 0) FROM users), (SELECT last_value FROM users_id_seq)) + 1, false);
+
+ALTER SEQUENCE roles_id_seq INCREMENT BY 50;
+SELECT setval('roles_id_seq',
+              GREATEST((SELECT COALESCE(max(id), 0) FROM roles), (SELECT last_value FROM roles_id_seq)) + 1, false);
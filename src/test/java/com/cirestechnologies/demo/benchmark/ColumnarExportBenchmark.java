@@ -0,0 +1,144 @@
+package com.cirestechnologies.demo.benchmark;
+
+import com.cirestechnologies.demo.export.ExportFormat;
+import com.cirestechnologies.demo.export.UserExportWriter;
+import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.model.Role;
+import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.payload.response.UserView;
+import com.cirestechnologies.demo.repository.RoleRepository;
+import com.cirestechnologies.demo.service.FakeDataService;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares export size and time of CSV and Arrow IPC, raw and gzip-compressed, on generated users held in memory
+ * (so the database is not part of the measurement). Run with
+ * {@code mvn test -Pbenchmark -Dtest=ColumnarExportBenchmark} and override the size with {@code -Dbenchmark.users=...}.
+ */
+@Tag("benchmark")
+class ColumnarExportBenchmark {
+
+    private static final int USERS = Integer.getInteger("benchmark.users", 200_000);
+    private static final int ROUNDS = 3;
+
+    @Test
+    void csvVersusArrow() throws IOException {
+        List<List<UserView>> csvChunks = generate(ExportFormat.CSV.getBatchSize());
+        List<List<UserView>> arrowChunks = rechunk(csvChunks, ExportFormat.ARROW.getBatchSize());
+
+        // Warm up both writers before measuring
+        for (int i = 0; i < 2; i++) {
+            export(ExportFormat.CSV, csvChunks, false);
+            export(ExportFormat.ARROW, arrowChunks, false);
+        }
+
+        Result csv = measure(ExportFormat.CSV, csvChunks, false);
+        Result csvGzip = measure(ExportFormat.CSV, csvChunks, true);
+        Result arrow = measure(ExportFormat.ARROW, arrowChunks, false);
+        Result arrowGzip = measure(ExportFormat.ARROW, arrowChunks, true);
+
+        assertEquals(USERS, readArrowRows(export(ExportFormat.ARROW, arrowChunks, false)));
+
+        System.out.printf("Export of %,d users:%n", USERS);
+        print("csv", csv, csv);
+        print("csv.gz", csvGzip, csv);
+        print("arrows", arrow, csv);
+        print("arrows.gz", arrowGzip, csv);
+    }
+
+    private static List<List<UserView>> generate(int chunkSize) {
+        RoleRepository roleRepository = mock(RoleRepository.class);
+        when(roleRepository.findByName(any(ERole.class)))
+                .thenAnswer(invocation -> Optional.of(new Role(invocation.getArgument(0))));
+        FakeDataService fakeDataService = new FakeDataService(roleRepository, new BCryptPasswordEncoder());
+
+        List<List<UserView>> chunks = new ArrayList<>();
+        long[] nextId = {1};
+        Date createdAt = new Date();
+        fakeDataService.generateUsers(USERS, USERS / 20, 42L, chunkSize, chunk -> {
+            List<UserView> views = new ArrayList<>(chunk.size());
+            for (User user : chunk) {
+                views.add(new UserView(nextId[0]++, user.getUsername(), user.getEmail(), user.getFirstName(),
+                        user.getLastName(), user.getBirthDate(), user.getCity(), user.getCountry(), user.getCompany(),
+                        user.getJobPosition(), user.getMobile(), user.getAvatar(), user.getRole().getName(), true,
+                        createdAt, null, 0L));
+            }
+            chunks.add(views);
+        });
+        return chunks;
+    }
+
+    private static List<List<UserView>> rechunk(List<List<UserView>> chunks, int chunkSize) {
+        List<UserView> all = new ArrayList<>(USERS);
+        chunks.forEach(all::addAll);
+        List<List<UserView>> result = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += chunkSize) {
+            result.add(all.subList(i, Math.min(all.size(), i + chunkSize)));
+        }
+        return result;
+    }
+
+    private static Result measure(ExportFormat format, List<List<UserView>> chunks, boolean gzip) throws IOException {
+        long best = Long.MAX_VALUE;
+        int size = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            size = export(format, chunks, gzip).length;
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return new Result(size, best / 1e6);
+    }
+
+    private static byte[] export(ExportFormat format, List<List<UserView>> chunks, boolean gzip) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(USERS * 200);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes, 64 * 1024) : bytes) {
+            try (UserExportWriter writer = format.newWriter(out)) {
+                writer.start();
+                for (List<UserView> chunk : chunks) {
+                    writer.writeBatch(chunk);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long readArrowRows(byte[] stream) throws IOException {
+        long rows = 0;
+        try (RootAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(stream), allocator,
+                     CommonsCompressionFactory.INSTANCE)) {
+            while (reader.loadNextBatch()) {
+                rows += reader.getVectorSchemaRoot().getRowCount();
+            }
+        }
+        return rows;
+    }
+
+    private static void print(String name, Result result, Result baseline) {
+        System.out.printf("  %-10s %,12d bytes (%5.1f%% of csv) %8.1f ms%n",
+                name, result.bytes(), result.bytes() * 100.0 / baseline.bytes(), result.millis());
+    }
+
+    private record Result(long bytes, double millis) {
+    }
+}
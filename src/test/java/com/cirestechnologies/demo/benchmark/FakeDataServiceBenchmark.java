@@ -0,0 +1,49 @@
+package com.cirestechnologies.demo.benchmark;
+
+import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.model.Role;
+import com.cirestechnologies.demo.repository.RoleRepository;
+import com.cirestechnologies.demo.service.FakeDataService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures fake users generated per second. Run with {@code mvn test -Pbenchmark -Dtest=FakeDataServiceBenchmark}
+ * and override the size with {@code -Dbenchmark.users=...}.
+ */
+@Tag("benchmark")
+class FakeDataServiceBenchmark {
+
+    private static final long USERS = Long.getLong("benchmark.users", 1_000_000L);
+
+    @Test
+    void usersPerSecond() {
+        RoleRepository roleRepository = mock(RoleRepository.class);
+        when(roleRepository.findByName(any(ERole.class)))
+                .thenAnswer(invocation -> Optional.of(new Role(invocation.getArgument(0))));
+
+        FakeDataService fakeDataService = new FakeDataService(roleRepository, new BCryptPasswordEncoder());
+
+        // Warm up the per-thread Fakers and the JIT before measuring
+        fakeDataService.generateUsers(50_000, 0, 1L, FakeDataService.DEFAULT_CHUNK_SIZE, chunk -> { });
+
+        AtomicLong generated = new AtomicLong();
+        long start = System.nanoTime();
+        fakeDataService.generateUsers(USERS, USERS / 10, 42L, FakeDataService.DEFAULT_CHUNK_SIZE,
+                chunk -> generated.addAndGet(chunk.size()));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(USERS, generated.get());
+        System.out.printf("FakeDataService: %,d users in %.2f s = %,.0f users/s on %d cores%n",
+                USERS, seconds, USERS / seconds, Runtime.getRuntime().availableProcessors());
+    }
+}
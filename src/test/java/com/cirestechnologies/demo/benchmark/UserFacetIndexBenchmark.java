@@ -0,0 +1,112 @@
+package com.cirestechnologies.demo.benchmark;
+
+import com.cirestechnologies.demo.repository.UserFacet;
+import com.cirestechnologies.demo.repository.UserFacetFilter;
+import com.cirestechnologies.demo.service.UserFacetIndex;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * p50/p99 latency of facet filters ({@link UserFacetIndex#match}) and facet counts ({@link UserFacetIndex#counts}),
+ * with the index loaded from an already seeded PostgreSQL database, e.g. after {@code java -jar app.jar --seed=1000000}:
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=UserFacetIndexBenchmark -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/demo_cirestechnologies
+ * </pre>
+ * Override the credentials with {@code -Dbenchmark.jdbc.user/password} and the runs per filter with
+ * {@code -Dbenchmark.facets.iterations}.
+ */
+@Tag("benchmark")
+class UserFacetIndexBenchmark {
+
+    private static final String URL = System.getProperty("benchmark.jdbc.url");
+    private static final String USER = System.getProperty("benchmark.jdbc.user", "postgres");
+    private static final String PASSWORD = System.getProperty("benchmark.jdbc.password", "postgres");
+    private static final int ITERATIONS = Integer.getInteger("benchmark.facets.iterations", 500);
+
+    @Test
+    void matchAndCounts() {
+        assumeTrue(URL != null, "Set -Dbenchmark.jdbc.url to run against a seeded database");
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(URL, USER, PASSWORD));
+        UserFacetIndex index = new UserFacetIndex(jdbcTemplate);
+        long start = System.nanoTime();
+        index.rebuild();
+        assertTrue(index.isReady());
+        System.out.printf("Index of %,d users built in %.0f ms%n", index.match(UserFacetFilter.NONE).getLongCardinality(),
+                (System.nanoTime() - start) / 1e6);
+
+        // The most common values, so the filters are not trivially empty
+        List<String> countries = jdbcTemplate.queryForList(
+                "SELECT country FROM users GROUP BY country ORDER BY count(*) DESC LIMIT 3", String.class);
+        String company = jdbcTemplate.queryForObject(
+                "SELECT company FROM users GROUP BY company ORDER BY count(*) DESC LIMIT 1", String.class);
+
+        Map<String, UserFacetFilter> filters = new LinkedHashMap<>();
+        filters.put("none", UserFacetFilter.NONE);
+        filters.put("role", filter("role", List.of("ROLE_ADMIN")));
+        filters.put("country", filter("country", countries.subList(0, 1)));
+        filters.put("3 countries + role", with(filter("country", countries), "role", "ROLE_ADMIN"));
+        filters.put("company + enabled", with(filter("company", List.of(company)), "enabled", "true"));
+
+        System.out.printf("%d runs per filter:%n", ITERATIONS);
+        filters.forEach((name, filter) -> {
+            if (!filter.isEmpty()) {
+                print("match " + name, measure(() -> index.match(filter)));
+            }
+            print("counts " + name, measure(() -> index.counts(filter, 20)));
+        });
+    }
+
+    private static UserFacetFilter filter(String param, List<String> values) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.put(param, values);
+        return UserFacetFilter.fromParams(params);
+    }
+
+    private static UserFacetFilter with(UserFacetFilter filter, String param, String value) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        for (UserFacet facet : filter.facets()) {
+            params.put(facet.getParam(), new ArrayList<>(filter.values(facet)));
+        }
+        params.add(param, value);
+        return UserFacetFilter.fromParams(params);
+    }
+
+    private static double[] measure(Runnable run) {
+        // Warm up
+        for (int i = 0; i < ITERATIONS / 4; i++) {
+            run.run();
+        }
+        double[] micros = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            run.run();
+            micros[i] = (System.nanoTime() - start) / 1e3;
+        }
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    private static void print(String name, double[] sortedMicros) {
+        System.out.printf("  %-28s p50 %9.1f us   p99 %9.1f us%n", name,
+                percentile(sortedMicros, 0.50), percentile(sortedMicros, 0.99));
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
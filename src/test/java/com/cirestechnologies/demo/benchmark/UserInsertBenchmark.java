@@ -0,0 +1,194 @@
+package com.cirestechnologies.demo.benchmark;
+
+import com.cirestechnologies.demo.model.User;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Users inserted per second with the statements Hibernate sends for each id strategy of {@link User}:
+ * <ul>
+ *     <li>identity: one {@code INSERT ... RETURNING id} round trip per user, as Hibernate can't batch inserts whose
+ *     key comes back from the database</li>
+ *     <li>pooled-lo sequence: one {@code nextval} per {@link User#ID_ALLOCATION_SIZE} users and JDBC batches of as
+ *     many inserts, sent one by one by the driver</li>
+ *     <li>the same with {@code reWriteBatchedInserts}, which turns each batch into multi-row INSERTs</li>
+ * </ul>
+ * Each strategy inserts into a temporary copy of {@code users} with all its indexes, committing every
+ * {@code benchmark.inserts.chunk} users like the batch import. Run against a PostgreSQL database migrated to V7:
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=UserInsertBenchmark -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/demo_cirestechnologies
+ * </pre>
+ * Override the credentials with {@code -Dbenchmark.jdbc.user/password} and the number of users with
+ * {@code -Dbenchmark.inserts.users}. Round trips cost more over a network than on localhost, so the gap grows there.
+ */
+@Tag("benchmark")
+class UserInsertBenchmark {
+
+    private static final String URL = System.getProperty("benchmark.jdbc.url");
+    private static final String USER = System.getProperty("benchmark.jdbc.user", "postgres");
+    private static final String PASSWORD = System.getProperty("benchmark.jdbc.password", "postgres");
+    private static final int USERS = Integer.getInteger("benchmark.inserts.users", 20_000);
+    private static final int CHUNK = Integer.getInteger("benchmark.inserts.chunk", 500);
+
+    private static final String COLUMNS = "username, email, password, first_name, last_name, birth_date, city, "
+            + "country, company, job_position, mobile, avatar, role_id, enabled, created_at, version";
+    private static final String VALUES = "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?";
+
+    private long nextUser;
+
+    @Test
+    void identityVersusPooledSequence() throws SQLException {
+        assumeTrue(URL != null, "Set -Dbenchmark.jdbc.url to run against a database migrated to V7");
+
+        try (Connection plain = DriverManager.getConnection(URL, USER, PASSWORD);
+             Connection rewriting = DriverManager.getConnection(
+                     URL + (URL.contains("?") ? "&" : "?") + "reWriteBatchedInserts=true", USER, PASSWORD)) {
+            int roleId = roleId(plain);
+            for (Connection connection : new Connection[]{plain, rewriting}) {
+                createTable(connection);
+            }
+
+            // Warm up the JIT and the server's caches before measuring
+            insertIdentity(plain, roleId, USERS / 10);
+            insertPooled(plain, roleId, USERS / 10);
+            insertPooled(rewriting, roleId, USERS / 10);
+
+            report("identity, row by row", USERS, insertIdentity(plain, roleId, USERS));
+            report("pooled-lo sequence, batches of " + User.ID_ALLOCATION_SIZE, USERS,
+                    insertPooled(plain, roleId, USERS));
+            report("pooled-lo sequence, batches of " + User.ID_ALLOCATION_SIZE + ", reWriteBatchedInserts", USERS,
+                    insertPooled(rewriting, roleId, USERS));
+        }
+    }
+
+    private double insertIdentity(Connection connection, int roleId, int users) throws SQLException {
+        truncate(connection);
+        long start = System.nanoTime();
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO bench_users (" + COLUMNS + ") VALUES (" + VALUES + ")", new String[]{"id"})) {
+            for (int i = 0; i < users; i++) {
+                bind(insert, roleId);
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                }
+                if ((i + 1) % CHUNK == 0) {
+                    connection.commit();
+                }
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertEquals(users, count(connection));
+        return seconds;
+    }
+
+    private double insertPooled(Connection connection, int roleId, int users) throws SQLException {
+        truncate(connection);
+        long start = System.nanoTime();
+        connection.setAutoCommit(false);
+        try (PreparedStatement nextBlock = connection.prepareStatement("SELECT nextval('bench_users_id_seq')");
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO bench_users (" + COLUMNS + ", id) VALUES (" + VALUES + ", ?)")) {
+            long id = 0;
+            long blockEnd = 0;
+            for (int i = 0; i < users; i++) {
+                if (id == blockEnd) {
+                    try (ResultSet block = nextBlock.executeQuery()) {
+                        block.next();
+                        id = block.getLong(1);
+                        blockEnd = id + User.ID_ALLOCATION_SIZE;
+                    }
+                }
+                bind(insert, roleId);
+                insert.setLong(17, id++);
+                insert.addBatch();
+                // Hibernate sends a batch when it is full, and what is left at the flush before each commit
+                boolean commit = (i + 1) % CHUNK == 0 || i + 1 == users;
+                if ((i + 1) % User.ID_ALLOCATION_SIZE == 0 || commit) {
+                    insert.executeBatch();
+                }
+                if (commit) {
+                    connection.commit();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertEquals(users, count(connection));
+        return seconds;
+    }
+
+    private void bind(PreparedStatement insert, int roleId) throws SQLException {
+        long user = nextUser++;
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        insert.setString(1, "bench.user." + user);
+        insert.setString(2, "bench.user." + user + "@example.com");
+        insert.setString(3, "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z7ZQ6d8eZqUJ0sX1oqZ6y2a.");
+        insert.setString(4, "Bench");
+        insert.setString(5, "User " + user);
+        insert.setTimestamp(6, now);
+        insert.setString(7, "Casablanca");
+        insert.setString(8, "Morocco");
+        insert.setString(9, "Cires Technologies");
+        insert.setString(10, "Engineer");
+        insert.setString(11, "+212600000000");
+        insert.setString(12, "https://example.com/avatar.png");
+        insert.setInt(13, roleId);
+        insert.setBoolean(14, true);
+        insert.setTimestamp(15, now);
+        insert.setLong(16, 0);
+    }
+
+    // Session-local copies on each connection, with the indexes of users and both kinds of id
+    private static void createTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMPORARY TABLE bench_users (LIKE users INCLUDING INDEXES)");
+            statement.execute("CREATE TEMPORARY SEQUENCE bench_users_identity_seq");
+            statement.execute("ALTER TABLE bench_users ALTER COLUMN id SET DEFAULT nextval('bench_users_identity_seq')");
+            statement.execute("CREATE TEMPORARY SEQUENCE bench_users_id_seq INCREMENT BY " + User.ID_ALLOCATION_SIZE);
+        }
+    }
+
+    private static void truncate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE bench_users");
+        }
+    }
+
+    private static long count(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM bench_users")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static int roleId(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id FROM roles WHERE name = 'ROLE_USER'")) {
+            assumeTrue(resultSet.next(), "The database has no ROLE_USER role");
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static void report(String strategy, int users, double seconds) {
+        System.out.printf("%-60s %,d users in %.2f s = %,.0f users/s%n", strategy + ":", users, seconds,
+                users / seconds);
+    }
+}
@@ -0,0 +1,151 @@
+package com.cirestechnologies.demo.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * p50/p99 latency of one admin search (first page of 10 sorted by username, plus the count query) with the original
+ * {@code LOWER(col) LIKE LOWER(CONCAT('%', :search, '%'))} query and with the trigram-indexed one.
+ * <p>
+ * Runs the SQL Hibernate generated for both repository queries against an already seeded PostgreSQL database
+ * (migrated to V2). GIN indexes are only used through bitmap scans, so the original query runs with
+ * {@code enable_bitmapscan} off to get the plan it had before the trigram indexes existed. Seed with e.g.
+ * {@code java -jar app.jar --seed=1000000}, then:
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=UserSearchBenchmark -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/demo_cirestechnologies
+ * </pre>
+ * Override the credentials with {@code -Dbenchmark.jdbc.user/password}, the searched terms with
+ * {@code -Dbenchmark.search.terms=a,b,c} and the runs per term with {@code -Dbenchmark.search.iterations}.
+ */
+@Tag("benchmark")
+class UserSearchBenchmark {
+
+    private static final String URL = System.getProperty("benchmark.jdbc.url");
+    private static final String USER = System.getProperty("benchmark.jdbc.user", "postgres");
+    private static final String PASSWORD = System.getProperty("benchmark.jdbc.password", "postgres");
+    private static final List<String> TERMS = Arrays.asList(System.getProperty("benchmark.search.terms",
+            "john,smith,garcia,ritchie,llc,admin,keebler,zzqx,anderson.1,hotmail").split(","));
+    private static final int ITERATIONS = Integer.getInteger("benchmark.search.iterations", 5);
+
+    private static final String LIKE_PREDICATE =
+            "lower(u1_0.username) like lower(('%'||?||'%')) escape '' " +
+            "or lower(u1_0.email) like lower(('%'||?||'%')) escape '' " +
+            "or lower(u1_0.first_name) like lower(('%'||?||'%')) escape '' " +
+            "or lower(u1_0.last_name) like lower(('%'||?||'%')) escape '' " +
+            "or lower(u1_0.company) like lower(('%'||?||'%')) escape ''";
+
+    private static final String TRIGRAM_PREDICATE =
+            "(lower(u1_0.username) like ? escape '\\' " +
+            "or lower(u1_0.email) like ? escape '\\' " +
+            "or lower(u1_0.first_name) like ? escape '\\' " +
+            "or lower(u1_0.last_name) like ? escape '\\' " +
+            "or lower(u1_0.company) like ? escape '\\')";
+
+    @Test
+    void likeVersusTrigram() throws SQLException {
+        assumeTrue(URL != null, "Set -Dbenchmark.jdbc.url to run against a seeded database");
+
+        try (Connection connection = DriverManager.getConnection(URL, USER, PASSWORD)) {
+            long users;
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT count(*) FROM users")) {
+                rs.next();
+                users = rs.getLong(1);
+            }
+
+            // Warm up the buffer cache for both plans
+            setBitmapScans(connection, false);
+            run(connection, LIKE_PREDICATE, false, 1);
+            double[] like = run(connection, LIKE_PREDICATE, false, ITERATIONS);
+
+            setBitmapScans(connection, true);
+            run(connection, TRIGRAM_PREDICATE, true, 1);
+            double[] trigram = run(connection, TRIGRAM_PREDICATE, true, ITERATIONS);
+
+            System.out.printf("Search over %,d users, %d terms x %d runs (page + count):%n", users, TERMS.size(), ITERATIONS);
+            print("like", like);
+            print("trigram", trigram);
+        }
+    }
+
+    private static double[] run(Connection connection, String predicate, boolean pattern, int iterations)
+            throws SQLException {
+        String page = "select u1_0.id,u1_0.avatar,u1_0.birth_date,u1_0.city,u1_0.company,u1_0.country," +
+                "u1_0.created_at,u1_0.email,u1_0.enabled,u1_0.first_name,u1_0.job_position,u1_0.last_login," +
+                "u1_0.last_name,u1_0.mobile,u1_0.password,u1_0.role_id,u1_0.username from users u1_0 where " +
+                predicate + " order by u1_0.username offset ? rows fetch first ? rows only";
+        String count = "select count(u1_0.id) from users u1_0 where " + predicate;
+
+        List<Double> samples = new ArrayList<>();
+        try (PreparedStatement pageStatement = connection.prepareStatement(page);
+             PreparedStatement countStatement = connection.prepareStatement(count)) {
+            for (int i = 0; i < iterations; i++) {
+                for (String term : TERMS) {
+                    String value = pattern ? likePattern(term) : term;
+                    for (int p = 1; p <= 5; p++) {
+                        pageStatement.setString(p, value);
+                        countStatement.setString(p, value);
+                    }
+                    pageStatement.setInt(6, 0);
+                    pageStatement.setInt(7, 10);
+
+                    long start = System.nanoTime();
+                    drain(pageStatement.executeQuery());
+                    drain(countStatement.executeQuery());
+                    samples.add((System.nanoTime() - start) / 1e6);
+                }
+            }
+        }
+        return samples.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+    }
+
+    private static void setBitmapScans(Connection connection, boolean enabled) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET enable_bitmapscan = " + (enabled ? "on" : "off"));
+        }
+    }
+
+    private static void drain(ResultSet rs) throws SQLException {
+        try (rs) {
+            while (rs.next()) {
+                rs.getObject(1);
+            }
+        }
+    }
+
+    // Same escaping as UserService#likePattern
+    private static String likePattern(String search) {
+        String term = search.toLowerCase(Locale.ROOT);
+        StringBuilder pattern = new StringBuilder("%");
+        for (char c : term.toCharArray()) {
+            if (c == '\\' || c == '%' || c == '_') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    private static void print(String name, double[] sortedMillis) {
+        System.out.printf("  %-8s p50 %9.2f ms   p99 %9.2f ms   max %9.2f ms%n", name,
+                percentile(sortedMillis, 0.50), percentile(sortedMillis, 0.99), sortedMillis[sortedMillis.length - 1]);
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
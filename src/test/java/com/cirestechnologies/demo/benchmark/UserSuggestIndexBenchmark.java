@@ -0,0 +1,93 @@
+package com.cirestechnologies.demo.benchmark;
+
+import com.cirestechnologies.demo.service.UserSuggestIndex;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * p50/p99 latency of the top 10 suggestions ({@link UserSuggestIndex#suggest}) for prefixes of 1 to 8 characters of
+ * random usernames and emails, with the index loaded from an already seeded PostgreSQL database, e.g. after
+ * {@code java -jar app.jar --seed=5000000}:
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=UserSuggestIndexBenchmark -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/demo_cirestechnologies
+ * </pre>
+ * Override the credentials with {@code -Dbenchmark.jdbc.user/password} and the number of prefixes with
+ * {@code -Dbenchmark.suggest.prefixes}.
+ */
+@Tag("benchmark")
+class UserSuggestIndexBenchmark {
+
+    private static final String URL = System.getProperty("benchmark.jdbc.url");
+    private static final String USER = System.getProperty("benchmark.jdbc.user", "postgres");
+    private static final String PASSWORD = System.getProperty("benchmark.jdbc.password", "postgres");
+    private static final int PREFIXES = Integer.getInteger("benchmark.suggest.prefixes", 20000);
+
+    @Test
+    void suggest() {
+        assumeTrue(URL != null, "Set -Dbenchmark.jdbc.url to run against a seeded database");
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(URL, USER, PASSWORD));
+        UserSuggestIndex index = new UserSuggestIndex(jdbcTemplate);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        index.rebuild();
+        assertTrue(index.isReady());
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        System.gc();
+        System.out.printf("Index built in %.0f ms, %d MB of heap%n", buildMillis,
+                (runtime.totalMemory() - runtime.freeMemory() - heapBefore) >> 20);
+
+        List<String> values = jdbcTemplate.queryForList(
+                "SELECT username FROM users TABLESAMPLE SYSTEM (1) LIMIT ? / 2", String.class, PREFIXES);
+        values.addAll(jdbcTemplate.queryForList(
+                "SELECT email FROM users TABLESAMPLE SYSTEM (1) LIMIT ? / 2", String.class, PREFIXES));
+
+        System.out.printf("%,d random usernames and emails per prefix length:%n", values.size());
+        for (int length : new int[]{1, 2, 3, 5, 8}) {
+            List<String> prefixes = new ArrayList<>(values.size());
+            for (String value : values) {
+                prefixes.add(value.substring(0, Math.min(length, value.length())));
+            }
+            print("prefix of " + length, measure(index, prefixes));
+        }
+        print("no match", measure(index, List.of("zzzzzzzz", "~", "0000")));
+    }
+
+    private static double[] measure(UserSuggestIndex index, List<String> prefixes) {
+        // Warm up
+        for (String prefix : prefixes) {
+            index.suggest(prefix, 10);
+        }
+        int runs = Math.max(prefixes.size(), 1000);
+        double[] micros = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            String prefix = prefixes.get(i % prefixes.size());
+            long start = System.nanoTime();
+            index.suggest(prefix, 10);
+            micros[i] = (System.nanoTime() - start) / 1e3;
+        }
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    private static void print(String name, double[] sortedMicros) {
+        System.out.printf("  %-12s p50 %7.1f us   p99 %7.1f us%n", name,
+                percentile(sortedMicros, 0.50), percentile(sortedMicros, 0.99));
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
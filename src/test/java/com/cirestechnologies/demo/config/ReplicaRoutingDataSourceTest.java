@@ -0,0 +1,116 @@
+package com.cirestechnologies.demo.config;
+
+import com.cirestechnologies.demo.service.RecentWriters;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Routing of {@link ReplicaRoutingDataSource}, behind the lazy proxy of {@link ReplicaDataSourceConfig}, over three
+ * in-memory H2 databases standing in for a primary and two replicas, each holding its own name in a one-row table.
+ */
+class ReplicaRoutingDataSourceTest {
+    private static final long READ_YOUR_WRITES_MS = 300;
+
+    private RecentWriters recentWriters;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnlyTransaction;
+    private TransactionTemplate writeTransaction;
+
+    @BeforeEach
+    void setUp() {
+        recentWriters = new RecentWriters("jdbc:h2:mem:replica-1", READ_YOUR_WRITES_MS);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(database("primary"),
+                List.of(database("replica-1"), database("replica-2")), recentWriters));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void clearUser() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToEachReplicaInTurn() {
+        assertEquals("replica-1", readOnlyTransaction.execute(status -> server()));
+        assertEquals("replica-2", readOnlyTransaction.execute(status -> server()));
+        assertEquals("replica-1", readOnlyTransaction.execute(status -> server()));
+    }
+
+    @Test
+    void everythingElseGoesToThePrimary() {
+        assertEquals("primary", writeTransaction.execute(status -> server()));
+        assertEquals("primary", server());
+    }
+
+    @Test
+    void writerReadsFromThePrimaryUntilTheWindowIsOver() throws InterruptedException {
+        actAs("alice");
+        recentWriters.recordWrite();
+        assertTrue(recentWriters.readsMayLag());
+        assertEquals("primary", readOnlyTransaction.execute(status -> server()));
+
+        // Other users keep reading from the replicas
+        actAs("bob");
+        assertEquals("replica-1", readOnlyTransaction.execute(status -> server()));
+
+        Thread.sleep(READ_YOUR_WRITES_MS * 2);
+        actAs("alice");
+        assertFalse(recentWriters.readsMayLag());
+        assertEquals("replica-2", readOnlyTransaction.execute(status -> server()));
+    }
+
+    @Test
+    void anonymousWritesOnlyMakeReadsLag() {
+        recentWriters.recordWrite();
+        assertTrue(recentWriters.readsMayLag());
+        assertEquals("replica-1", readOnlyTransaction.execute(status -> server()));
+    }
+
+    @Test
+    void nothingIsTrackedWithoutReplicas() {
+        RecentWriters disabled = new RecentWriters("", READ_YOUR_WRITES_MS);
+        actAs("alice");
+        disabled.recordWrite();
+        assertFalse(disabled.isCurrentUserRecentWriter());
+        assertFalse(disabled.readsMayLag());
+    }
+
+    private String server() {
+        return jdbcTemplate.queryForObject("SELECT name FROM server", String.class);
+    }
+
+    private static void actAs(String username) {
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                username, null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS server (name VARCHAR(20))");
+        jdbcTemplate.update("DELETE FROM server");
+        jdbcTemplate.update("INSERT INTO server (name) VALUES (?)", name);
+        return dataSource;
+    }
+}
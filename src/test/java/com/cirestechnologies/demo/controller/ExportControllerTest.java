@@ -0,0 +1,182 @@
+package com.cirestechnologies.demo.controller;
+
+import com.cirestechnologies.demo.export.ExportJob;
+import com.cirestechnologies.demo.export.ExportJobService;
+import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.model.Role;
+import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.repository.RoleRepository;
+import com.cirestechnologies.demo.repository.UserRepository;
+import com.cirestechnologies.demo.service.UserService;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Export jobs: an export is reused until a user changes, a superseded artifact is deleted, and downloads honour
+ * Range and If-Range. MockMvc has no sendfile, so downloads are copied with {@code transferTo}. Runs against an
+ * in-memory H2 database with the schema generated from the entities.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:export-controller;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "cirestechnologies.demo.export.dir=${java.io.tmpdir}/user-exports-test",
+        "cirestechnologies.demo.export.delete-delay-ms=0"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@WithUserDetails("admin")
+class ExportControllerTest {
+    private static final long EXPORT_TIMEOUT_MS = 10000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @BeforeAll
+    void createUsers() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            users.add(user("exported" + i));
+        }
+        userRepository.saveAll(users);
+    }
+
+    @Test
+    void exportIsReusedUntilAUserChanges() throws Exception {
+        String first = submit("exported");
+        ExportJob firstJob = awaitCompleted(first);
+        assertEquals(first, submit("EXPORTED "));
+
+        userService.save(user("exported-later"));
+        String second = submit("exported");
+        assertNotEquals(first, second);
+        awaitCompleted(second);
+        assertEquals(second, submit("exported"));
+
+        // The first export is superseded: gone once the second one finished, and its artifact with it
+        long deadline = System.currentTimeMillis() + EXPORT_TIMEOUT_MS;
+        while (exportJobService.findJob(first).isPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        mockMvc.perform(get("/api/users/export/jobs/{id}", first)).andExpect(status().isNotFound());
+        assertFalse(Files.exists(firstJob.getFile()));
+    }
+
+    @Test
+    void downloadHonoursRangeAndIfRange() throws Exception {
+        String id = submit("exported1");
+        ExportJob job = awaitCompleted(id);
+        byte[] file = Files.readAllBytes(job.getFile());
+        int length = file.length;
+        assertTrue(length > 20);
+        String url = "/api/users/export/jobs/" + id + "/download";
+        String etag = "\"" + id + "\"";
+
+        byte[] whole = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(file, whole);
+
+        byte[] head = mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=0-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-9/" + length))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(Arrays.copyOfRange(file, 0, 10), head);
+
+        byte[] tail = mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=-5").header(HttpHeaders.IF_RANGE, etag))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + (length - 5) + "-" + (length - 1) + "/" + length))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(Arrays.copyOfRange(file, length - 5, length), tail);
+
+        // Another representation: the range no longer applies, so the whole file is sent
+        byte[] changed = mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=0-9")
+                        .header(HttpHeaders.IF_RANGE, "\"another\""))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(file, changed);
+
+        mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=" + length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + length));
+    }
+
+    private String submit(String search) throws Exception {
+        String body = mockMvc.perform(post("/api/users/export/jobs").param("search", search).param("format", "csv"))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(body, "$.id");
+    }
+
+    private ExportJob awaitCompleted(String id) throws InterruptedException {
+        ExportJob job = exportJobService.findJob(id).orElseThrow();
+        long deadline = System.currentTimeMillis() + EXPORT_TIMEOUT_MS;
+        while (job.getStatus() != ExportJob.Status.COMPLETED && job.getStatus() != ExportJob.Status.FAILED
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus(), job.getError());
+        assertTrue(Files.exists(job.getFile()));
+        return job;
+    }
+
+    private User user(String username) {
+        Role userRole = roleRepository.findByName(ERole.ROLE_USER).orElseThrow();
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword("not-a-real-hash");
+        user.setFirstName("Exported");
+        user.setLastName(username);
+        user.setBirthDate(new Date());
+        user.setCity("Rabat");
+        user.setCountry("Morocco");
+        user.setCompany("Cires");
+        user.setJobPosition("Tester");
+        user.setMobile("+212 000000000");
+        user.setAvatar("avatar");
+        user.setRole(userRole);
+        return user;
+    }
+}
@@ -0,0 +1,154 @@
+package com.cirestechnologies.demo.controller;
+
+import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.model.Role;
+import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.repository.RoleRepository;
+import com.cirestechnologies.demo.repository.UserCursor;
+import com.cirestechnologies.demo.repository.UserRepository;
+import com.cirestechnologies.demo.repository.UserSortField;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Keyset pagination walked to the end and back with next and prev cursors, sorted by {@code lastLogin}: a nullable
+ * column with NULLs and duplicate values, where the id alone breaks ties. Every user must come up exactly once, in the
+ * order of the sort. Runs against an in-memory H2 database with the schema generated from the entities.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-cursor-pagination;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@WithUserDetails("admin")
+class UserCursorPaginationTest {
+    private static final int USERS = 23;
+    private static final int PAGE_SIZE = 4;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private final List<User> users = new ArrayList<>();
+
+    @BeforeAll
+    void createUsers() {
+        Role userRole = roleRepository.findByName(ERole.ROLE_USER).orElseThrow();
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUsername(String.format("paged%02d", i));
+            user.setEmail(String.format("paged%02d@example.com", i));
+            user.setPassword("not-a-real-hash");
+            user.setFirstName("Paged");
+            user.setLastName("User");
+            user.setBirthDate(new Date());
+            user.setCity("Rabat");
+            user.setCountry("Morocco");
+            user.setCompany("Cires");
+            user.setJobPosition("Tester");
+            user.setMobile("+212 000000000");
+            user.setAvatar("avatar");
+            user.setRole(userRole);
+            // Every third user never logged in, the others share three login times
+            user.setLastLogin(i % 3 == 0 ? null : new Date(1_700_000_000_000L + (i % 4) * 60_000L));
+            users.add(user);
+        }
+        userRepository.saveAll(users);
+    }
+
+    @Test
+    void ascendingWalkReadsEveryUserOnceBothWays() throws Exception {
+        // Ascending: nulls after every value
+        Comparator<User> order = Comparator.comparing(User::getLastLogin, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(User::getId);
+        assertWalk("asc", order);
+    }
+
+    @Test
+    void descendingWalkReadsEveryUserOnceBothWays() throws Exception {
+        // Descending: nulls before every value
+        Comparator<User> order = Comparator.comparing(User::getLastLogin, Comparator.nullsFirst(Comparator.reverseOrder()))
+                .thenComparing(User::getId, Comparator.reverseOrder());
+        assertWalk("desc", order);
+    }
+
+    @Test
+    void nullKeyForANonNullableFieldIsRejected() throws Exception {
+        String cursor = new UserCursor(UserSortField.USERNAME, false, false, null, users.get(0).getId()).encode();
+        mockMvc.perform(page("username", "asc", cursor))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Error: Invalid cursor"));
+    }
+
+    private void assertWalk(String sortDir, Comparator<User> order) throws Exception {
+        List<Long> expected = users.stream().sorted(order).map(User::getId).collect(Collectors.toList());
+
+        List<Long> forward = new ArrayList<>();
+        String cursor = "";
+        String lastPrev = null;
+        while (cursor != null) {
+            String body = mockMvc.perform(page("lastLogin", sortDir, cursor))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            forward.addAll(ids(body));
+            lastPrev = JsonPath.read(body, "$.prevCursor");
+            cursor = JsonPath.read(body, "$.nextCursor");
+        }
+        assertEquals(expected, forward);
+
+        // Back from the last page: every page before it, each one prepended
+        int lastPageSize = (USERS - 1) % PAGE_SIZE + 1;
+        List<Long> backward = new ArrayList<>(forward.subList(USERS - lastPageSize, USERS));
+        cursor = lastPrev;
+        while (cursor != null) {
+            String body = mockMvc.perform(page("lastLogin", sortDir, cursor))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            backward.addAll(0, ids(body));
+            cursor = JsonPath.read(body, "$.prevCursor");
+        }
+        assertEquals(expected, backward);
+    }
+
+    private static MockHttpServletRequestBuilder page(String sortBy, String sortDir, String cursor) {
+        return get("/api/users")
+                .param("search", "paged")
+                .param("sortBy", sortBy)
+                .param("sortDir", sortDir)
+                .param("size", Integer.toString(PAGE_SIZE))
+                .param("cursor", cursor);
+    }
+
+    private static List<Long> ids(String body) {
+        List<Number> ids = JsonPath.read(body, "$.users[*].id");
+        return ids.stream().map(Number::longValue).collect(Collectors.toList());
+    }
+}
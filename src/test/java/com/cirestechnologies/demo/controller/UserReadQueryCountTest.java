@@ -0,0 +1,444 @@
+package com.cirestechnologies.demo.controller;
+
+import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.model.Role;
+import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.repository.RoleRepository;
+import com.cirestechnologies.demo.repository.UserRepository;
+import com.cirestechnologies.demo.service.ActiveUserService;
+import com.cirestechnologies.demo.service.UserBreakdownService;
+import com.cirestechnologies.demo.service.UserFacetIndex;
+import com.cirestechnologies.demo.service.UserService;
+import com.cirestechnologies.demo.service.UserStatsCounters;
+import com.cirestechnologies.demo.service.UserStatsPublisher;
+import com.cirestechnologies.demo.service.UserStatsRollup;
+import com.cirestechnologies.demo.service.UserSuggestIndex;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Counts the SQL statements each user read endpoint runs, so a lazy role fetch per listed user (N+1) shows up as a
+ * failure, and checks that conditional GETs of unchanged resources are answered from versions alone, that facet filters
+ * and counts come from the facet index, suggestions from the suggest index, repeated searches from the page cache,
+ * users by username from the entity cache, user stats (polled or streamed) from counters, time series from the rollup
+ * table, active users from sketches and breakdowns from their last refresh. Runs against an in-memory H2 database with
+ * the schema generated from the entities.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-read-query-count;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // Statistics are global: keep background flushes out of the counted requests
+        "cirestechnologies.demo.stats.rollup.flush-interval-ms=3600000",
+        "cirestechnologies.demo.stats.active-users.flush-interval-ms=3600000",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=warn"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserReadQueryCountTest {
+
+    private static final int USERS = 50;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserFacetIndex userFacetIndex;
+
+    @Autowired
+    private UserSuggestIndex userSuggestIndex;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserStatsCounters userStatsCounters;
+
+    @Autowired
+    private UserStatsPublisher userStatsPublisher;
+
+    @Autowired
+    private UserStatsRollup userStatsRollup;
+
+    @Autowired
+    private ActiveUserService activeUserService;
+
+    @Autowired
+    private UserBreakdownService userBreakdownService;
+
+    private Statistics statistics;
+    private Long someUserId;
+
+    @BeforeAll
+    void createUsers() {
+        Role userRole = roleRepository.findByName(ERole.ROLE_USER).orElseThrow();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUsername("reader" + i);
+            user.setEmail("reader" + i + "@example.com");
+            user.setPassword("not-a-real-hash");
+            user.setFirstName("Reader");
+            user.setLastName("Number" + i);
+            user.setBirthDate(new Date());
+            user.setCity("Rabat");
+            user.setCountry("Morocco");
+            user.setCompany("Cires");
+            user.setJobPosition("Tester");
+            user.setMobile("+212 000000000");
+            user.setAvatar("avatar");
+            user.setRole(userRole);
+            users.add(user);
+        }
+        someUserId = userRepository.saveAll(users).get(USERS / 2).getId();
+        // Saved through the repository, so no events: reload the indexes with them
+        userFacetIndex.rebuild();
+        userSuggestIndex.rebuild();
+        userStatsCounters.reconcile();
+        userStatsRollup.catchUp();
+        userBreakdownService.refresh();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @BeforeEach
+    void resetStatistics() {
+        statistics.clear();
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void listingRunsOneQueryWithoutCount() throws Exception {
+        mockMvc.perform(get("/api/users").param("size", "40").param("count", "none"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(40)))
+                .andExpect(jsonPath("$.users[0].role.name").value("ROLE_ADMIN"))
+                .andExpect(jsonPath("$.users[0].password").doesNotExist());
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void sparseListingSerializesOnlyRequestedFields() throws Exception {
+        mockMvc.perform(get("/api/users").param("size", "40").param("count", "none").param("fields", "email,username"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(40)))
+                .andExpect(jsonPath("$.users[1].username").value("reader0"))
+                .andExpect(jsonPath("$.users[1].email").value("reader0@example.com"))
+                .andExpect(jsonPath("$.users[1].id").doesNotExist())
+                .andExpect(jsonPath("$.users[1].role").doesNotExist());
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void searchListingRunsPageAndCountQueries() throws Exception {
+        mockMvc.perform(get("/api/users").param("size", "10").param("search", "reader").param("count", "exact"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(10)))
+                .andExpect(jsonPath("$.totalItems").value(USERS));
+        assertStatements(2);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void versionIsNotARequestableField() throws Exception {
+        mockMvc.perform(get("/api/users").param("fields", "username,version"))
+                .andExpect(status().isBadRequest());
+        assertStatements(0);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void streamedListingRunsOneQuery() throws Exception {
+        mockMvc.perform(get("/api/users").param("size", "40").param("count", "none").param("stream", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(40)))
+                .andExpect(jsonPath("$.users[0].role.name").value("ROLE_ADMIN"))
+                .andExpect(jsonPath("$.users[1].username").value("reader0"))
+                .andExpect(jsonPath("$.users[1].password").doesNotExist())
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.totalItems").value(nullValue()));
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void cursorListingRunsOneQuery() throws Exception {
+        mockMvc.perform(get("/api/users").param("size", "40").param("cursor", "").param("sortBy", "lastName"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(40)))
+                .andExpect(jsonPath("$.prevCursor").value(nullValue()));
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void userByIdRunsOneQuery() throws Exception {
+        mockMvc.perform(get("/api/users/id/{id}", someUserId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.role.name").value("ROLE_USER"))
+                .andExpect(jsonPath("$.password").doesNotExist());
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void userByUsernameRunsOneQueryThenComesFromTheEntityCache() throws Exception {
+        entityManagerFactory.getCache().evict(User.class);
+        mockMvc.perform(get("/api/users/{username}", "reader3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value("reader3"));
+        assertStatements(1);
+        statistics.clear();
+
+        mockMvc.perform(get("/api/users/{username}", "reader3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value("reader3"));
+        assertStatements(0);
+    }
+
+    @Test
+    @WithUserDetails("reader7")
+    void myProfileRunsOneQuery() throws Exception {
+        mockMvc.perform(get("/api/users/me"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value("reader7"))
+                .andExpect(jsonPath("$.role.name").value("ROLE_USER"));
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("reader7")
+    void unchangedProfileIsNotModifiedAfterVersionLookup() throws Exception {
+        String etag = mockMvc.perform(get("/api/users/me"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        statistics.clear();
+
+        mockMvc.perform(get("/api/users/me").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void unchangedListingIsNotModifiedWithoutQueries() throws Exception {
+        String etag = mockMvc.perform(get("/api/users").param("size", "5"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        statistics.clear();
+
+        mockMvc.perform(get("/api/users").param("size", "5").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        assertStatements(0);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void facetListingCountsFromIndex() throws Exception {
+        mockMvc.perform(get("/api/users").param("size", "10").param("count", "exact")
+                        .param("country", "Morocco").param("role", "user"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(10)))
+                .andExpect(jsonPath("$.users[0].country").value("Morocco"))
+                .andExpect(jsonPath("$.totalItems").value(USERS))
+                .andExpect(jsonPath("$.totalItemsExact").value(true));
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void facetCountsRunNoQueries() throws Exception {
+        mockMvc.perform(get("/api/users/facets").param("company", "Cires"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalItems").value(USERS))
+                .andExpect(jsonPath("$.facets.role[0].value").value("ROLE_USER"))
+                .andExpect(jsonPath("$.facets.role[0].count").value(USERS))
+                .andExpect(jsonPath("$.facets.company[0].value").value("Cires"));
+        assertStatements(0);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void suggestionsRunNoQueries() throws Exception {
+        // reader1 and reader10..18; each user is listed once although its email matches too
+        mockMvc.perform(get("/api/users/suggest").param("prefix", "Reader1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.suggestions", hasSize(10)))
+                .andExpect(jsonPath("$.suggestions[0].value").value("reader1"))
+                .andExpect(jsonPath("$.suggestions[0].field").value("username"))
+                .andExpect(jsonPath("$.suggestions[1].value").value("reader10"))
+                .andExpect(jsonPath("$.suggestions[9].value").value("reader18"));
+        assertStatements(0);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void repeatedSearchIsServedFromPageCacheUntilAWrite() throws Exception {
+        mockMvc.perform(get("/api/users").param("size", "5").param("search", "reader4").param("count", "exact"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalItems").value(11));
+        assertStatements(2);
+
+        // The search term is normalized
+        statistics.clear();
+        mockMvc.perform(get("/api/users").param("size", "5").param("search", "READER4").param("count", "exact"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(5)))
+                .andExpect(jsonPath("$.totalItems").value(11));
+        assertStatements(0);
+
+        userService.save(userRepository.findById(someUserId).orElseThrow());
+        statistics.clear();
+        mockMvc.perform(get("/api/users").param("size", "5").param("search", "reader4").param("count", "exact"))
+                .andExpect(status().isOk());
+        assertStatements(2);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void userStatsRunNoQueriesAndFollowRoleChanges() throws Exception {
+        // The readers and the admin created at startup
+        long admins = 1;
+        mockMvc.perform(get("/api/stats/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalUsers").value(USERS + admins))
+                .andExpect(jsonPath("$.totalAdmins").value(admins))
+                .andExpect(jsonPath("$.totalRegularUsers").value(USERS))
+                .andExpect(jsonPath("$.newUsersToday").value(USERS + admins));
+        assertStatements(0);
+
+        User user = userRepository.findById(someUserId).orElseThrow();
+        user.setRole(roleRepository.findByName(ERole.ROLE_ADMIN).orElseThrow());
+        user = userService.save(user);
+        try {
+            mockMvc.perform(get("/api/stats/users"))
+                    .andExpect(jsonPath("$.totalUsers").value(USERS + admins))
+                    .andExpect(jsonPath("$.totalAdmins").value(admins + 1))
+                    .andExpect(jsonPath("$.totalRegularUsers").value(USERS - 1));
+        } finally {
+            user.setRole(roleRepository.findByName(ERole.ROLE_USER).orElseThrow());
+            userService.save(user);
+        }
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void statsStreamSendsAllStatsThenChanges() throws Exception {
+        long admins = 1;
+        MvcResult result = mockMvc.perform(get("/api/stats/users/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals("event:stats\ndata:{\"totalUsers\":" + (USERS + admins) + ",\"totalAdmins\":" + admins
+                        + ",\"totalRegularUsers\":" + USERS + ",\"newUsersToday\":" + (USERS + admins) + "}\n\n",
+                result.getResponse().getContentAsString());
+        assertStatements(0);
+
+        User user = userRepository.findById(someUserId).orElseThrow();
+        user.setRole(roleRepository.findByName(ERole.ROLE_ADMIN).orElseThrow());
+        user = userService.save(user);
+        try {
+            userStatsPublisher.push();
+            assertThat(result.getResponse().getContentAsString(), endsWith("event:stats\ndata:{\"totalAdmins\":"
+                    + (admins + 1) + ",\"totalRegularUsers\":" + (USERS - 1) + "}\n\n"));
+        } finally {
+            user.setRole(roleRepository.findByName(ERole.ROLE_USER).orElseThrow());
+            userService.save(user);
+        }
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void timeSeriesRunsOneQuery() throws Exception {
+        // A point per day from a week ago to today
+        mockMvc.perform(get("/api/stats/timeseries").param("metric", "signups").param("zone", "Asia/Kolkata"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.granularity").value("day"))
+                .andExpect(jsonPath("$.points", hasSize(8)))
+                .andExpect(jsonPath("$.points[0].start").value(endsWith("T00:00:00+05:30")));
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void activeUsersRunOneQuery() throws Exception {
+        for (int pass = 0; pass < 2; pass++) {
+            for (long id = 1; id <= USERS; id++) {
+                activeUserService.record(id);
+            }
+        }
+        // Few enough for linear counting, and no two of these ids share a register: the estimate is exact
+        mockMvc.perform(get("/api/stats/active-users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.dau").value(USERS))
+                .andExpect(jsonPath("$.mau").value(USERS));
+        assertStatements(1);
+    }
+
+    @Test
+    @WithUserDetails("admin")
+    void breakdownsRunNoQueries() throws Exception {
+        // The readers and the admin created at startup
+        mockMvc.perform(get("/api/stats/breakdown").param("dimension", "jobPosition").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.values", hasSize(1)))
+                .andExpect(jsonPath("$.values[0].value").value("Tester"))
+                .andExpect(jsonPath("$.values[0].count").value(USERS))
+                .andExpect(jsonPath("$.otherUsers").value(1))
+                .andExpect(jsonPath("$.distinctValues").value(2))
+                .andExpect(jsonPath("$.refreshedAt").exists());
+        mockMvc.perform(get("/api/stats/breakdown").param("dimension", "ageBand"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.values", hasSize(7)))
+                .andExpect(jsonPath("$.values[0].value").value("under 18"))
+                .andExpect(jsonPath("$.values[0].count").value(USERS + 1));
+        assertStatements(0);
+    }
+
+    private void assertStatements(long expected) {
+        assertEquals(expected, statistics.getPrepareStatementCount(),
+                () -> "SQL statements: " + String.join(" | ", statistics.getQueries()));
+    }
+}
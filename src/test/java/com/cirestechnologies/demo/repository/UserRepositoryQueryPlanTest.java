@@ -0,0 +1,294 @@
+package com.cirestechnologies.demo.repository;
+
+import com.cirestechnologies.demo.payload.response.UserField;
+import com.cirestechnologies.demo.payload.response.UserFieldSet;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Explains every query of {@link UserRepository} (derived, JPQL and the listing queries of
+ * {@link UserRepositoryImpl}) on the PostgreSQL database of {@code application.properties}, migrated by Flyway, and
+ * fails if any of them reads {@code users} with a sequential scan. Statements are captured as Hibernate sends them,
+ * parameters included, and explained with the same values. Statements without a WHERE clause read the whole table
+ * whatever the indexes and are left out.
+ * <p>
+ * Plans depend on the size of the table. With at least {@value #LARGE_TABLE} users (seed them with
+ * {@code --seed=...}) they are the plans production gets. Below that a sequential scan is the cheapest plan anyway, so
+ * the queries are explained with {@code enable_seqscan} off: a sequential scan left in the plan means that no index
+ * can serve the query.
+ */
+@SpringBootTest
+@Import(UserRepositoryQueryPlanTest.CapturingDataSourceConfig.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserRepositoryQueryPlanTest {
+
+    private static final long LARGE_TABLE = 100_000;
+    private static final String SEARCH_PATTERN = "%smith%";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // Statements sent by the test thread while a query under test runs; the background loaders use their own threads
+    private static final List<CapturedStatement> captured = Collections.synchronizedList(new ArrayList<>());
+    private static volatile Thread capturing;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private boolean largeTable;
+    private long userId;
+    private String username;
+    private String email;
+    private String country;
+    private String company;
+
+    @BeforeAll
+    void sampleUser() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        largeTable = jdbcTemplate.queryForObject("SELECT count(*) FROM users", Long.class) >= LARGE_TABLE;
+        jdbcTemplate.query("SELECT id, username, email, country, company FROM users ORDER BY id DESC LIMIT 1", rs -> {
+            userId = rs.getLong(1);
+            username = rs.getString(2);
+            email = rs.getString(3);
+            country = rs.getString(4);
+            company = rs.getString(5);
+        });
+    }
+
+    @TestFactory
+    Stream<DynamicTest> noSequentialScanOfUsers() {
+        UserFilter search = UserFilter.search(SEARCH_PATTERN);
+        UserFilter admins = facetFilter("role", "ROLE_ADMIN");
+        UserFilter disabled = facetFilter("enabled", "false");
+        UserFilter inCountry = facetFilter("country", country);
+        UserFilter inCompany = facetFilter("company", company);
+        UserFilter resolvedIds = new UserFilter(null, UserFacetFilter.NONE, List.of(userId, userId - 1), 2);
+        UserFieldSet fields = UserFieldSet.of(EnumSet.of(UserField.USERNAME, UserField.EMAIL));
+        PageRequest byUsername = PageRequest.of(0, 20, Sort.by("username"));
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        queries.put("findByUsername", () -> userRepository.findByUsername(username));
+        queries.put("findByEmail", () -> userRepository.findByEmail(email));
+        queries.put("existsByUsername", () -> userRepository.existsByUsername(username));
+        queries.put("existsByEmail", () -> userRepository.existsByEmail(email));
+        queries.put("findAll", () -> userRepository.findAll(byUsername));
+        queries.put("countByPattern", () -> userRepository.countByPattern(SEARCH_PATTERN));
+        queries.put("findStatsKeyById", () -> userRepository.findStatsKeyById(userId));
+        queries.put("findById", () -> userRepository.findById(userId));
+        queries.put("findViewById", () -> userRepository.findViewById(userId));
+        queries.put("findViewByUsername", () -> userRepository.findViewByUsername(username));
+        queries.put("findVersionById", () -> userRepository.findVersionById(userId));
+        queries.put("findVersionByUsername", () -> userRepository.findVersionByUsername(username));
+        queries.put("findViewsAfter", () -> userRepository.findViewsAfter(userId / 2, Limit.of(1000)));
+        queries.put("searchViewsByPatternAfter",
+                () -> userRepository.searchViewsByPatternAfter(SEARCH_PATTERN, 0, Limit.of(1000)));
+        for (UserSortField field : UserSortField.values()) {
+            queries.put("findPage by " + field.getProperty(),
+                    () -> userRepository.findPage(field, false, null, UserFilter.NONE, 20));
+            queries.put("findPage by " + field.getProperty() + " descending",
+                    () -> userRepository.findPage(field, true, null, UserFilter.NONE, 20));
+        }
+        queries.put("findPage after a cursor", () -> userRepository.findPage(UserSortField.LAST_NAME, false,
+                new UserCursor(UserSortField.LAST_NAME, false, false, "M", userId), UserFilter.NONE, 20));
+        queries.put("findPage of a search", () -> userRepository.findPage(UserSortField.ID, false, null, search, 20));
+        queries.put("findRowPage", () -> userRepository.findRowPage(fields, UserSortField.USERNAME, false, null,
+                UserFilter.NONE, 20));
+        queries.put("findViewSlice of a search", () -> userRepository.findViewSlice(search, byUsername));
+        queries.put("findViewSlice of admins", () -> userRepository.findViewSlice(admins, byUsername));
+        queries.put("findViewSlice of disabled users", () -> userRepository.findViewSlice(disabled, byUsername));
+        queries.put("findViewSlice of resolved ids", () -> userRepository.findViewSlice(resolvedIds, byUsername));
+        queries.put("findRowSlice of a company", () -> userRepository.findRowSlice(fields, inCompany, byUsername));
+        queries.put("streamViewSlice of a search", () -> transaction.executeWithoutResult(status ->
+                userRepository.streamViewSlice(search, byUsername, 250, user -> { })));
+        queries.put("countMatching of a search", () -> userRepository.countMatching(search));
+        queries.put("countMatching of a company", () -> userRepository.countMatching(inCompany));
+        queries.put("countMatching of a country", () -> userRepository.countMatching(inCountry));
+        queries.put("countMatching of disabled users", () -> userRepository.countMatching(disabled));
+        queries.put("countMatchingUpTo of a search", () -> userRepository.countMatchingUpTo(search, 10000));
+        queries.put("countMatchingUpTo of admins", () -> userRepository.countMatchingUpTo(admins, 10000));
+        queries.put("findRowByUsername", () -> userRepository.findRowByUsername(fields, username));
+
+        return queries.entrySet().stream().map(query -> DynamicTest.dynamicTest(query.getKey(),
+                () -> assertNoSequentialScan(query.getValue())));
+    }
+
+    private void assertNoSequentialScan(Runnable query) throws Exception {
+        // Lookups the second-level cache can answer would send no statement
+        entityManagerFactory.getCache().evictAll();
+        captured.clear();
+        capturing = Thread.currentThread();
+        try {
+            query.run();
+        } finally {
+            capturing = null;
+        }
+        assertFalse(captured.isEmpty(), "No statement was captured");
+
+        for (CapturedStatement statement : new ArrayList<>(captured)) {
+            if (!statement.sql().toLowerCase(Locale.ROOT).contains(" where ")) {
+                continue;
+            }
+            JsonNode plan = explain(statement);
+            if (hasSequentialScanOfUsers(plan)) {
+                fail("Sequential scan of users" + (largeTable ? "" : " with enable_seqscan off") + " for:\n"
+                        + statement.sql() + "\n" + plan.toPrettyString());
+            }
+        }
+    }
+
+    private JsonNode explain(CapturedStatement statement) throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement settings = connection.createStatement()) {
+                settings.execute("SET enable_seqscan = " + (largeTable ? "on" : "off"));
+            }
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + statement.sql())) {
+                for (CapturedStatement.Parameter parameter : statement.parameters()) {
+                    parameter.setter().invoke(explain, parameter.args());
+                }
+                try (ResultSet resultSet = explain.executeQuery()) {
+                    resultSet.next();
+                    return objectMapper.readTree(resultSet.getString(1)).get(0).get("Plan");
+                }
+            } finally {
+                try (Statement settings = connection.createStatement()) {
+                    settings.execute("RESET enable_seqscan");
+                }
+            }
+        }
+    }
+
+    private static boolean hasSequentialScanOfUsers(JsonNode node) {
+        if ("Seq Scan".equals(node.path("Node Type").asText()) && "users".equals(node.path("Relation Name").asText())) {
+            return true;
+        }
+        for (JsonNode child : node.path("Plans")) {
+            if (hasSequentialScanOfUsers(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static UserFilter facetFilter(String param, String value) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add(param, value);
+        return new UserFilter(null, UserFacetFilter.fromParams(params), null, -1);
+    }
+
+    private record CapturedStatement(String sql, List<Parameter> parameters) {
+        private record Parameter(Method setter, Object[] args) {
+        }
+    }
+
+    /**
+     * Wraps the data source so that the prepared statements executed by the {@link #capturing} thread are recorded
+     * with the calls that bound their parameters.
+     */
+    @TestConfiguration
+    static class CapturingDataSourceConfig {
+        @Bean
+        static BeanPostProcessor capturingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource
+                            ? proxy(DataSource.class, dataSource, (target, method, args) -> {
+                                Object result = invoke(target, method, args);
+                                return result instanceof Connection connection
+                                        ? proxy(Connection.class, connection, CapturingDataSourceConfig::connection)
+                                        : result;
+                            })
+                            : bean;
+                }
+            };
+        }
+
+        private static Object connection(Connection target, Method method, Object[] args) throws Throwable {
+            Object result = invoke(target, method, args);
+            if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                String sql = (String) args[0];
+                List<CapturedStatement.Parameter> parameters = new ArrayList<>();
+                return proxy(PreparedStatement.class, statement, (delegate, call, callArgs) -> {
+                    String name = call.getName();
+                    if (name.startsWith("set") && callArgs != null && callArgs.length >= 2
+                            && callArgs[0] instanceof Integer) {
+                        parameters.add(new CapturedStatement.Parameter(call, callArgs.clone()));
+                    } else if (name.equals("clearParameters")) {
+                        parameters.clear();
+                    } else if (capturing == Thread.currentThread() && (name.equals("executeQuery") || name.equals("execute"))
+                            && (callArgs == null || callArgs.length == 0)) {
+                        captured.add(new CapturedStatement(sql, List.copyOf(parameters)));
+                    }
+                    return invoke(delegate, call, callArgs);
+                });
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, T target, TargetHandler<T> handler) {
+            InvocationHandler invocationHandler = (proxy, method, args) -> handler.invoke(target, method, args);
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocationHandler);
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private interface TargetHandler<T> {
+            Object invoke(T target, Method method, Object[] args) throws Throwable;
+        }
+    }
+}
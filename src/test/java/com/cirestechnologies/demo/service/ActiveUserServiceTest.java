@@ -0,0 +1,117 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.repository.UserActivitySketchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Flushing the sketches of {@link ActiveUserService} to {@code user_activity_sketches} and reading them back from
+ * another instance, which holds nothing in memory, the way instances sharing the database do. Runs against an
+ * in-memory H2 database with the schema generated from the entities.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:active-user-service;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "cirestechnologies.demo.stats.active-users.flush-interval-ms=3600000"
+})
+class ActiveUserServiceTest {
+
+    @Autowired
+    private UserActivitySketchRepository sketchRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private LocalDate today;
+
+    @BeforeEach
+    void clearSketches() {
+        sketchRepository.deleteAll();
+        today = LocalDate.now();
+    }
+
+    @Test
+    void sketchSurvivesItsByteRoundTrip() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long id = 1; id <= 20000; id++) {
+            sketch.add(id);
+        }
+        byte[] bytes = sketch.toBytes();
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+
+        assertEquals(sketch.estimate(), restored.estimate());
+        assertArrayEquals(bytes, restored.toBytes());
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void flushedSketchIsReadBackByAnotherInstance() {
+        ActiveUserService writer = newInstance();
+        record(writer, 1, 5000);
+        writer.flush();
+        // Flushing again merges the same registers: nothing changes
+        record(writer, 1, 5000);
+        writer.flush();
+
+        assertWithinError(5000, newInstance().estimate(today, today));
+    }
+
+    @Test
+    void instancesSharingTheDatabaseAddUp() throws Exception {
+        ActiveUserService first = newInstance();
+        ActiveUserService second = newInstance();
+        record(first, 1, 1000);
+        first.flush();
+
+        // Both merge into the stored row at once: the row lock keeps either from overwriting the other's registers
+        record(first, 1001, 4000);
+        record(second, 3001, 8000);
+        CountDownLatch start = new CountDownLatch(1);
+        CompletableFuture<Void> firstFlush = CompletableFuture.runAsync(() -> flushAfter(start, first));
+        CompletableFuture<Void> secondFlush = CompletableFuture.runAsync(() -> flushAfter(start, second));
+        start.countDown();
+        CompletableFuture.allOf(firstFlush, secondFlush).get();
+
+        assertWithinError(8000, newInstance().estimate(today, today));
+    }
+
+    private ActiveUserService newInstance() {
+        return new ActiveUserService(sketchRepository, transactionManager);
+    }
+
+    private static void record(ActiveUserService service, long fromId, long toId) {
+        for (long id = fromId; id <= toId; id++) {
+            service.record(id);
+        }
+    }
+
+    private static void flushAfter(CountDownLatch start, ActiveUserService service) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        service.flush();
+    }
+
+    // The hash is fixed, so estimates are repeatable; four standard errors is what any set of ids may need
+    private static void assertWithinError(long expected, long estimate) {
+        double error = 4 * HyperLogLog.RELATIVE_STANDARD_ERROR * expected;
+        assertEquals(expected, estimate, error, "estimate " + estimate + " of " + expected);
+    }
+}
@@ -0,0 +1,111 @@
+package com.cirestechnologies.demo.service;
+
+import com.cirestechnologies.demo.model.ERole;
+import com.cirestechnologies.demo.model.Role;
+import com.cirestechnologies.demo.model.User;
+import com.cirestechnologies.demo.repository.RoleRepository;
+import com.cirestechnologies.demo.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The background merge of {@link UserSuggestIndex}: users created, changed and deleted through {@link UserService}
+ * after the index was built are folded into new dictionaries once there are {@code merge-threshold} of them, and
+ * suggestions read from the merged dictionaries alone. Runs against an in-memory H2 database with the schema generated
+ * from the entities.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-suggest-index;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "cirestechnologies.demo.suggest.merge-threshold=5"
+})
+class UserSuggestIndexTest {
+    private static final long MERGE_TIMEOUT_MS = 10000;
+
+    @Autowired
+    private UserSuggestIndex userSuggestIndex;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Test
+    void changedUsersAreMergedIntoTheDictionaries() throws InterruptedException {
+        // Saved through the repository, so no events: they are in the dictionaries built next
+        List<User> initial = new ArrayList<>();
+        for (String username : List.of("sugg00", "sugg01", "sugg02", "sugg03", "sugg04", "sugg05", "sugg06")) {
+            initial.add(user(username));
+        }
+        Map<String, Long> ids = userRepository.saveAll(initial).stream()
+                .collect(Collectors.toMap(User::getUsername, User::getId));
+        userSuggestIndex.rebuild();
+        assertEquals(0, userSuggestIndex.pendingChanges());
+
+        // Five changes, the last of which starts the merge: additions sorting between and after the
+        // dictionary's values, a changed email and a deletion
+        userService.save(user("sugg035"));
+        userService.save(user("sugg055"));
+        userService.save(user("sugg10"));
+        User changed = userRepository.findById(ids.get("sugg04")).orElseThrow();
+        changed.setEmail("renamed.sugg04@example.com");
+        userService.save(changed);
+        userService.deleteById(ids.get("sugg06"));
+
+        long deadline = System.currentTimeMillis() + MERGE_TIMEOUT_MS;
+        while (userSuggestIndex.pendingChanges() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, userSuggestIndex.pendingChanges());
+
+        assertEquals(List.of("sugg00", "sugg01", "sugg02", "sugg03", "sugg035", "sugg04", "sugg05", "sugg055",
+                "sugg10"), values(userSuggestIndex.suggest("SUGG", 20)));
+        assertTrue(userSuggestIndex.suggest("mail.sugg04", 5).isEmpty());
+        List<UserSuggestion> renamed = userSuggestIndex.suggest("renamed.", 5);
+        assertEquals(List.of("renamed.sugg04@example.com"), values(renamed));
+        assertEquals((long) ids.get("sugg04"), renamed.get(0).id());
+        assertTrue(userSuggestIndex.suggest("mail.sugg06", 5).isEmpty());
+        assertEquals(List.of("mail.sugg00@example.com", "mail.sugg01@example.com"),
+                values(userSuggestIndex.suggest("mail.sugg0", 2)));
+    }
+
+    private User user(String username) {
+        Role userRole = roleRepository.findByName(ERole.ROLE_USER).orElseThrow();
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail("mail." + username + "@example.com");
+        user.setPassword("not-a-real-hash");
+        user.setFirstName("Suggested");
+        user.setLastName(username);
+        user.setBirthDate(new Date());
+        user.setCity("Rabat");
+        user.setCountry("Morocco");
+        user.setCompany("Cires");
+        user.setJobPosition("Tester");
+        user.setMobile("+212 000000000");
+        user.setAvatar("avatar");
+        user.setRole(userRole);
+        return user;
+    }
+
+    private static List<String> values(List<UserSuggestion> suggestions) {
+        return suggestions.stream().map(UserSuggestion::value).collect(Collectors.toList());
+    }
+}